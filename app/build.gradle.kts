@@ -42,16 +42,17 @@ android {
     }
     buildFeatures {
         viewBinding = true
+        buildConfig = true // BuildConfig.DEBUG keeps the performance log out of release builds
     }
 }
 
 dependencies {
 
+    implementation(project(":core"))
     implementation(libs.appcompat)
     implementation(libs.material)
     implementation(libs.constraintlayout)
     testImplementation(libs.junit)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
-    implementation("com.github.chrisbanes:PhotoView:2.3.0")
 }
\ No newline at end of file
@@ -7,6 +7,7 @@
 
 #include "prettify.h"
 
+#include <stdexcept>
 #include <unordered_map>
 
 // ======== DEFINITIONS ======= //
@@ -0,0 +1,318 @@
+/********************************************
+ * Copyright (c) 2026 Shun/翔海 (@shun4midx) *
+ * Project: Taipei-MRT-Scheduler            *
+ * File Type: C++ file                      *
+ * File: connection_scan.cpp                *
+ ****************************************** */
+
+#include "connection_scan.h"
+#include "scratch.h"
+#include "trace.h"
+
+#include <algorithm>
+#include <climits>
+#include <stdexcept>
+
+// ======== DEFINITIONS ======== //
+enum LabelKind {UNREACHED, SOURCE, RIDE, TRANSFER, BR_RIDE};
+
+typedef struct scanlabel {
+    int arr;
+    LabelKind kind;
+    int from; // station id before this one (TRANSFER/BR_RIDE)
+    int enter_conn; // connection boarded (RIDE)
+} ScanLabel;
+
+// One scan's working vectors, kept per thread between queries (see scratch.h)
+typedef struct scanscratch {
+    std::vector<ScanLabel> labels; // station id -> best so far
+    std::vector<int> trip_enter; // trip -> connection boarded with, TRIP_CLOSED once it runs into a closed station
+    std::vector<char> visit_closed; // station id -> in closures.no_visit
+    std::vector<int> stack; // relaxFrom's stations left to relax
+} ScanScratch;
+
+static const int TRIP_CLOSED = -2;
+static const int CANCEL_CHECK_MASK = 4095; // A cancel is looked for every 4096 connections, a fraction of a millisecond apart
+
+// ======== HELPERS ======== //
+static bool boardClosed(int id, const JourneyClosures& closures) {
+    return std::find(closures.no_board.begin(), closures.no_board.end(), id) != closures.no_board.end();
+}
+
+static bool transferClosed(int from, int to, const JourneyClosures& closures) {
+    for (const auto& [f, t] : closures.no_transfer) {
+        if (f == from && t == to) {
+            return true;
+        }
+    }
+
+    return false;
+}
+
+// Footpath-style edges out of a station whose arrival just improved: interchanges, and BR rides since BR only has a headway
+static void relaxFrom(int id, const TransitNetwork& net, int day_type, const JourneyClosures& closures, ScanScratch& scratch) {
+    const std::vector<char>& visit_closed = scratch.visit_closed;
+    std::vector<ScanLabel>& labels = scratch.labels;
+    std::vector<int>& stack = scratch.stack;
+
+    stack.assign(1, id);
+
+    while (!stack.empty()) {
+        int curr = stack.back();
+        stack.pop_back();
+
+        int now = labels[curr].arr;
+
+        for (const auto& [to, mins] : net.transfers[curr]) {
+            if (visit_closed[to] || transferClosed(curr, to, closures) || now + mins >= labels[to].arr) {
+                continue;
+            }
+
+            labels[to] = ScanLabel{now + mins, TRANSFER, curr, -1};
+            stack.push_back(to);
+        }
+
+        Station stn = stationFromId(curr);
+        if (stn.line != BR || labels[curr].kind == BR_RIDE || boardClosed(curr, closures)) { // Staying on is always better than re-boarding BR
+            continue;
+        }
+
+        // Ride outwards both ways, stopping at the first closed station
+        for (int step : {-1, +1}) {
+            for (int num = stn.stn_num + step; validStation(BR, num); num += step) {
+                Station next{BR, num};
+                int to = stationId(next);
+
+                if (visit_closed[to]) {
+                    break;
+                }
+
+                try {
+                    Time dep = nextTrainTime(stn, day_type, now, next);
+                    if (dep.hr < 0) { // No more trains
+                        continue;
+                    }
+
+                    int arr = timeToMins(dep) + getLineDuration(stn, next);
+                    if (arr >= labels[to].arr) {
+                        continue;
+                    }
+
+                    labels[to] = ScanLabel{arr, BR_RIDE, curr, -1};
+                    stack.push_back(to);
+                } catch (const std::exception& e) {
+                    // Past the last approximated train
+                }
+            }
+        }
+    }
+}
+
+// Labels every station from src_id into scratch.labels. dst_id < 0 scans to the end of the day instead of stopping once dst_id can't improve
+static void scanConnections(const TransitNetwork& net, int src_id, int dst_id, int dep_mins, int day_type, const JourneyClosures& closures, ScanScratch& scratch) {
+    StageTimer timer(TRACE_SCAN);
+
+    int n = stationCount();
+    std::vector<ScanLabel>& labels = scratch.labels;
+    std::vector<int>& trip_enter = scratch.trip_enter;
+    std::vector<char>& visit_closed = scratch.visit_closed;
+
+    labels.assign(n, ScanLabel{INT_MAX, UNREACHED, -1, -1});
+    trip_enter.assign(net.trip_count, -1);
+
+    visit_closed.assign(n, 0);
+    for (int id : closures.no_visit) {
+        visit_closed[id] = 1;
+    }
+
+    labels[src_id] = ScanLabel{dep_mins, SOURCE, -1, -1};
+    relaxFrom(src_id, net, day_type, closures, scratch);
+
+    const std::vector<Connection>& conns = net.connections;
+    uint64_t generation = routingGeneration();
+
+    auto first = std::lower_bound(conns.begin(), conns.end(), dep_mins, [](const Connection& c, int value) {
+        return (int)c.dep < value;
+    });
+
+    for (int i = (int)(first - conns.begin()); i < (int)conns.size(); ++i) {
+        const Connection& c = conns[i];
+
+        if (dst_id >= 0 && (int)c.dep >= labels[dst_id].arr) { // Nothing later can arrive earlier
+            break;
+        }
+
+        if ((i & CANCEL_CHECK_MASK) == 0 && routingGeneration() != generation) { // Cancelled, the half-done labels are thrown away with the query
+            break;
+        }
+
+        if (trip_enter[c.trip] == TRIP_CLOSED) {
+            continue;
+        }
+
+        if (trip_enter[c.trip] < 0) {
+            if (net.trip_board[c.trip] != c.from || labels[c.from].arr > c.dep || boardClosed(c.from, closures)) {
+                continue;
+            }
+
+            trip_enter[c.trip] = i;
+        }
+
+        if (visit_closed[c.to]) { // Can't ride through it either
+            trip_enter[c.trip] = TRIP_CLOSED;
+            continue;
+        }
+
+        if ((int)c.arr < labels[c.to].arr) {
+            labels[c.to] = ScanLabel{c.arr, RIDE, -1, trip_enter[c.trip]};
+            relaxFrom(c.to, net, day_type, closures, scratch);
+        }
+    }
+}
+
+// ======== QUERY ======== //
+Path earliestArrivalPath(const TransitNetwork& net, const Station& src, const Station& dst, int dep_mins, int day_type, const JourneyClosures& closures) {
+    int src_id = stationId(src);
+    int dst_id = stationId(dst);
+
+    if (src_id < 0 || dst_id < 0) {
+        throw std::invalid_argument("earliestArrivalPath: invalid src/dst station");
+    }
+
+    int n = stationCount();
+
+    Scratch<ScanScratch> scratch;
+    scanConnections(net, src_id, dst_id, dep_mins, day_type, closures, *scratch);
+
+    const std::vector<ScanLabel>& labels = scratch->labels;
+    const std::vector<Connection>& conns = net.connections;
+
+    if (labels[dst_id].kind == UNREACHED) {
+        return {};
+    }
+
+    // Walk the labels back to src
+    Path rev = {dst};
+
+    for (int curr = dst_id, steps = 0; curr != src_id; ++steps) {
+        if (steps > 2 * n) {
+            throw std::runtime_error("earliestArrivalPath: broken journey labels");
+        }
+
+        const ScanLabel& label = labels[curr];
+        curr = label.kind == RIDE ? conns[label.enter_conn].from : label.from;
+
+        rev.push_back(stationFromId(curr));
+    }
+
+    return Path(rev.rbegin(), rev.rend());
+}
+
+std::vector<int> earliestArrivals(const TransitNetwork& net, const Station& src, int dep_mins, int day_type, const JourneyClosures& closures) {
+    int src_id = stationId(src);
+
+    if (src_id < 0) {
+        throw std::invalid_argument("earliestArrivals: invalid src station");
+    }
+
+    Scratch<ScanScratch> scratch;
+    scanConnections(net, src_id, -1, dep_mins, day_type, closures, *scratch);
+
+    const std::vector<ScanLabel>& labels = scratch->labels;
+
+    std::vector<int> arrivals(labels.size());
+    for (int id = 0; id < labels.size(); ++id) {
+        arrivals[id] = labels[id].kind == UNREACHED ? -1 : labels[id].arr;
+    }
+
+    return arrivals;
+}
+
+std::vector<RoutedPath> routeConnectionScan(const Station& src, const Station& dst, Time curr_time, int day_type, int k) {
+    if (!validStation(src) || !validStation(dst)) {
+        throw std::invalid_argument("routeConnectionScan: invalid src/dst station");
+    }
+    if (day_type <= 0 || day_type > 7) {
+        throw std::invalid_argument("routeConnectionScan: invalid day_type");
+    }
+    if (curr_time.hr < 0 || curr_time.min < 0) {
+        throw std::invalid_argument("routeConnectionScan: invalid curr_time");
+    }
+
+    if (sameStation(src, dst) || k <= 0) {
+        return {};
+    }
+
+    std::shared_ptr<const TransitNetwork> net = transitNetwork(day_type);
+    int dep_mins = timeToMins(curr_time);
+    uint64_t generation = routingGeneration();
+
+    Path best = earliestArrivalPath(*net, src, dst, dep_mins, day_type);
+    if (best.empty()) {
+        return {};
+    }
+
+    std::vector<Path> paths = {best};
+
+    // Alternatives: close each interchange/boarding of the optimum in turn and rescan
+    for (int i = 0; i + 1 < best.size() && k > 1; ++i) {
+        if (routingGeneration() != generation) { // Superseded, no point in another full scan
+            break;
+        }
+
+        JourneyClosures closures;
+
+        if (best[i].line != best[i + 1].line) {
+            closures.no_transfer.push_back({stationId(best[i]), stationId(best[i + 1])});
+        } else {
+            closures.no_board.push_back(stationId(best[i]));
+        }
+
+        Path alt = earliestArrivalPath(*net, src, dst, dep_mins, day_type, closures);
+        if (alt.empty()) {
+            continue;
+        }
+
+        bool seen = false;
+        for (const Path& p : paths) {
+            if (samePath(p, alt)) {
+                seen = true;
+                break;
+            }
+        }
+
+        if (!seen) {
+            paths.push_back(alt);
+        }
+    }
+
+    RouteConstraints c;
+    c.minimize_time = true;
+    c.minimize_interchanges = true;
+
+    std::vector<RoutedPath> routed;
+
+    for (const Path& p : paths) {
+        try {
+            RoutedPath rp;
+            rp.path = p;
+            rp.times = pathETA(p, curr_time, day_type);
+            rp.total_mins = timeToMins(rp.times.back().first) - dep_mins;
+            rp.interchange_count = countInterchanges(p);
+
+            routed.push_back(rp);
+        } catch (...) {
+            // Timetable drift made a leg miss its train -> skip
+        }
+    }
+
+    std::stable_sort(routed.begin(), routed.end(), [&](const RoutedPath& a, const RoutedPath& b) {
+        return betterThan(a, b, c);
+    });
+
+    if (routed.size() > k) {
+        routed.resize(k);
+    }
+
+    return routed;
+}
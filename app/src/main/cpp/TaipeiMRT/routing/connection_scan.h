@@ -0,0 +1,28 @@
+/********************************************
+ * Copyright (c) 2026 Shun/翔海 (@shun4midx) *
+ * Project: Taipei-MRT-Scheduler            *
+ * File Type: C++ Header file               *
+ * File: connection_scan.h                  *
+ ****************************************** */
+
+#pragma once
+
+#include "network.h"
+#include "routing.h"
+
+#include <utility>
+#include <vector>
+
+// Connection Scan Algorithm: one pass over the time-sorted connections gives the exact earliest arrival
+// Transfers and the BR line (headway only, see nextTrainTime) are relaxed as soon as a station's arrival improves, which keeps the scan exact
+
+// ======== QUERY ======== //
+// Earliest arrival path as its leg boundaries (every boarding, alighting and transfer station), {} if dst can't be reached
+Path earliestArrivalPath(const TransitNetwork& net, const Station& src, const Station& dst, int dep_mins, int day_type, const JourneyClosures& closures = {});
+
+// Earliest arrival (mins since midnight) at every station id from src in one scan, -1 where it can't be reached. src itself gets dep_mins
+std::vector<int> earliestArrivals(const TransitNetwork& net, const Station& src, int dep_mins, int day_type, const JourneyClosures& closures = {});
+
+// Optimum first, then alternatives that each close one interchange or boarding of the optimum. Times come from pathETA like routeEngine
+// One full scan per alternative, so several times RAPTOR's cost. Kept for comparing engines, routeDefault uses RAPTOR unless asked for this
+std::vector<RoutedPath> routeConnectionScan(const Station& src, const Station& dst, Time curr_time, int day_type, int k);
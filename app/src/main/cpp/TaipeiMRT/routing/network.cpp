@@ -0,0 +1,220 @@
+/********************************************
+ * Copyright (c) 2026 Shun/翔海 (@shun4midx) *
+ * Project: Taipei-MRT-Scheduler            *
+ * File Type: C++ file                      *
+ * File: network.cpp                        *
+ ****************************************** */
+
+#include "network.h"
+
+#include <algorithm>
+#include <memory>
+#include <mutex>
+#include <stdexcept>
+#include <unordered_map>
+
+// ======== DEFINITIONS ======== //
+static const int MAX_STN_NUM = 100; // Station numbers go up to O54
+
+typedef struct stationidtable {
+    std::vector<Station> stations; // id -> Station
+    std::vector<int> ids; // line * MAX_STN_NUM + stn_num -> id (-1 if invalid)
+} StationIdTable;
+
+static const StationIdTable& stationIdTable() {
+    static const StationIdTable table = [] {
+        StationIdTable t;
+        t.ids.assign((Y + 1) * MAX_STN_NUM, -1);
+
+        for (int line = R; line <= Y; ++line) {
+            for (int num = 0; num < MAX_STN_NUM; ++num) {
+                if (validStation(line, num)) {
+                    t.ids[line * MAX_STN_NUM + num] = (int)t.stations.size();
+                    t.stations.push_back(Station{static_cast<Line>(line), num});
+                }
+            }
+        }
+
+        return t;
+    }();
+
+    return table;
+}
+
+// ======== STATION IDS ======== //
+int stationCount() {
+    return (int)stationIdTable().stations.size();
+}
+
+int stationId(const Station& stn) {
+    if (stn.line < R || stn.line > Y || stn.stn_num < 0 || stn.stn_num >= MAX_STN_NUM) {
+        return -1;
+    }
+
+    return stationIdTable().ids[stn.line * MAX_STN_NUM + stn.stn_num];
+}
+
+Station stationFromId(int id) {
+    const StationIdTable& t = stationIdTable();
+
+    if (id < 0 || id >= (int)t.stations.size()) {
+        throw std::invalid_argument("Invalid station id: " + std::to_string(id));
+    }
+
+    return t.stations[id];
+}
+
+// ======== BUILDING ======== //
+Station nextStationTowards(const Station& stn, const Station& train_dest) {
+    if (stn.line != train_dest.line || stn.stn_num == train_dest.stn_num) {
+        return INVALID_STATION;
+    }
+
+    Station next = stn;
+
+    if (train_dest.stn_num > stn.stn_num) { // Increasing
+        if (stn.line == O && stn.stn_num == 12 && train_dest.stn_num >= 50) { // Luzhou branch
+            next.stn_num = 50;
+        } else {
+            next.stn_num = stn.stn_num + 1;
+        }
+    } else { // Decreasing
+        if (stn.line == O && stn.stn_num == 50) {
+            next.stn_num = 12;
+        } else {
+            next.stn_num = stn.stn_num - 1;
+        }
+    }
+
+    if (stationId(next) < 0 || !oneTrainReachDest(stn, next, train_dest)) {
+        return INVALID_STATION;
+    }
+
+    return next;
+}
+
+std::vector<std::vector<std::pair<int, int>>> buildTransferTable() {
+    int n = stationCount();
+    std::vector<std::vector<std::pair<int, int>>> transfers(n);
+
+    for (int id = 0; id < n; ++id) {
+        for (const auto& [to, mins] : getTransfers(stationFromId(id))) {
+            int to_id = stationId(to);
+            if (to_id >= 0) {
+                transfers[id].push_back({to_id, mins});
+            }
+        }
+    }
+
+    return transfers;
+}
+
+std::pair<int, int> stationHop(int id, const Station& train_dest) {
+    // Hops only depend on (station, train destination), and there are few destinations per line, so look each one up once
+    static std::mutex hops_mutex;
+    static std::unordered_map<long long, std::pair<int, int>> hops; // (station id, dest) -> {next station id, mins}
+
+    long long key = (long long)id * (Y + 1) * MAX_STN_NUM + train_dest.line * MAX_STN_NUM + train_dest.stn_num;
+
+    std::lock_guard<std::mutex> lock(hops_mutex);
+
+    auto it = hops.find(key);
+    if (it != hops.end()) {
+        return it->second;
+    }
+
+    Station stn = stationFromId(id);
+    Station next = nextStationTowards(stn, train_dest);
+    std::pair<int, int> h = {-1, 0};
+
+    if (stationId(next) >= 0) {
+        h = {stationId(next), getLineDuration(stn, next)};
+    }
+
+    hops[key] = h;
+    return h;
+}
+
+TransitNetwork buildTransitNetwork(int day_type) {
+    if (day_type <= 0 || day_type > 7) {
+        throw std::invalid_argument("Invalid day_type: " + std::to_string(day_type));
+    }
+
+    TransitNetwork net;
+    net.day_group = day_type <= 5 ? 0 : day_type - 5;
+    net.trip_count = 0;
+
+    int n = stationCount();
+    net.transfers = buildTransferTable();
+
+    for (int id = 0; id < n; ++id) {
+        Station stn = stationFromId(id);
+
+        if (stn.line == BR) { // No timetable, routed by headway instead
+            continue;
+        }
+
+        for (const Train& t : loadStationSchedule(stn, day_type)) {
+            if (t.time < 0 || stationHop(id, t.train_dest).first < 0) { // Terminating here, or a row we can't place
+                continue;
+            }
+
+            int trip = net.trip_count++;
+            net.trip_board.push_back((uint16_t)id);
+
+            // Ride it to the end, arriving at each station when pathETA says a passenger boarding here would
+            int curr = id;
+            int dep = t.time;
+
+            for (std::pair<int, int> h = stationHop(curr, t.train_dest); h.first >= 0 && dep + h.second <= UINT16_MAX; h = stationHop(curr, t.train_dest)) {
+                net.connections.push_back(Connection{(uint16_t)curr, (uint16_t)h.first, (uint16_t)dep, (uint16_t)(dep + h.second), trip});
+
+                curr = h.first;
+                dep += h.second;
+            }
+        }
+    }
+
+    // A trip's hops have strictly increasing dep, so they stay in order
+    std::sort(net.connections.begin(), net.connections.end(), [](const Connection& a, const Connection& b) {
+        return a.dep < b.dep;
+    });
+
+    return net;
+}
+
+static std::mutex TRANSIT_NETWORK_MUTEX;
+static std::shared_ptr<const TransitNetwork> TRANSIT_NETWORKS[MAX_ENGINE_CONTEXTS + 1][3]; // By engineSlot(), then day group
+
+std::shared_ptr<const TransitNetwork> transitNetwork(int day_type) {
+    if (day_type <= 0 || day_type > 7) {
+        throw std::invalid_argument("Invalid day_type: " + std::to_string(day_type));
+    }
+
+    int group = day_type <= 5 ? 0 : day_type - 5;
+    std::shared_ptr<const TransitNetwork>* slot = TRANSIT_NETWORKS[engineSlot()];
+
+    std::shared_ptr<const TransitNetwork> net = std::atomic_load(&slot[group]); // Already built: no lock, so concurrent queries don't queue up here
+    if (net) {
+        return net;
+    }
+
+    // Building takes a moment, but only happens once per context and day group, so holding the lock is fine
+    std::lock_guard<std::mutex> lock(TRANSIT_NETWORK_MUTEX);
+
+    if (!slot[group]) {
+        std::atomic_store(&slot[group], std::make_shared<const TransitNetwork>(buildTransitNetwork(day_type)));
+    }
+
+    return slot[group];
+}
+
+void clearTransitNetworks() {
+    std::lock_guard<std::mutex> lock(TRANSIT_NETWORK_MUTEX);
+
+    for (auto& slot : TRANSIT_NETWORKS) {
+        for (auto& net : slot) {
+            std::atomic_store(&net, std::shared_ptr<const TransitNetwork>());
+        }
+    }
+}
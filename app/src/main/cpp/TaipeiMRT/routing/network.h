@@ -0,0 +1,59 @@
+/********************************************
+ * Copyright (c) 2026 Shun/翔海 (@shun4midx) *
+ * Project: Taipei-MRT-Scheduler            *
+ * File Type: C++ Header file               *
+ * File: network.h                          *
+ ****************************************** */
+
+#pragma once
+
+#include "../utils/utils.h"
+
+#include <cstdint>
+#include <memory>
+#include <utility>
+#include <vector>
+
+// Timetables flattened into one time-sorted connection array per day group, for the scan-based routers
+// Every timetable row is its own trip, timed with LINE_DURATION from where it's boarded, so scans see exactly what pathETA computes
+
+// ======== STRUCTS ======== //
+typedef struct connection {
+    uint16_t from; // station id
+    uint16_t to; // station id
+    uint16_t dep; // minutes since midnight (can exceed 1440)
+    uint16_t arr; // Boarding time + getLineDuration(boarding station, to), same as pathETA
+    int trip;
+} Connection;
+
+typedef struct transitnetwork {
+    int day_group; // 0: 12345, 1: 6, 2: 7
+    std::vector<Connection> connections; // sorted by dep
+    int trip_count;
+    std::vector<uint16_t> trip_board; // trip -> the only station id it can be boarded at
+    std::vector<std::vector<std::pair<int, int>>> transfers; // station id -> {station id, mins}
+} TransitNetwork;
+
+typedef struct journeyclosures {
+    std::vector<int> no_board; // station ids where no train may be boarded
+    std::vector<std::pair<int, int>> no_transfer; // {from station id, to station id}
+    std::vector<int> no_visit; // station ids a journey may not pass through at all (avoided stations/lines)
+} JourneyClosures;
+
+// ======== STATION IDS ======== //
+// Dense ids 0..stationCount()-1 over every valid station code, ordered by line then stn_num
+int stationCount();
+int stationId(const Station& stn); // -1 if invalid
+Station stationFromId(int id);
+
+// ======== BUILDING ======== //
+Station nextStationTowards(const Station& stn, const Station& train_dest); // Next stop of a train at stn heading to train_dest, INVALID_STATION if none
+
+std::vector<std::vector<std::pair<int, int>>> buildTransferTable(); // station id -> {station id, mins}, from getTransfers
+std::pair<int, int> stationHop(int id, const Station& train_dest); // {next station id, mins} for a train at station id heading to train_dest, {-1, 0} if none
+
+TransitNetwork buildTransitNetwork(int day_type); // BR has no timetable, so it has no connections (see connection_scan.cpp)
+
+// Built once per currentEngine() and day group, and shared. Safe to call from several threads at once
+std::shared_ptr<const TransitNetwork> transitNetwork(int day_type);
+void clearTransitNetworks();
@@ -0,0 +1,715 @@
+/********************************************
+ * Copyright (c) 2026 Shun/翔海 (@shun4midx) *
+ * Project: Taipei-MRT-Scheduler            *
+ * File Type: C++ file                      *
+ * File: raptor.cpp                         *
+ ****************************************** */
+
+#include "raptor.h"
+#include "scratch.h"
+#include "trace.h"
+
+#include <algorithm>
+#include <climits>
+#include <functional>
+#include <map>
+#include <memory>
+#include <mutex>
+#include <stdexcept>
+
+// ======== DEFINITIONS ======== //
+const int RAPTOR_MAX_ROUNDS = 8; // Nobody wants more interchanges than this, whatever max_interchanges says
+
+enum BoardKind {NOT_BOARDABLE, SOURCE, REBOARD, TRANSFER};
+
+typedef struct boardlabel { // Ready to board at a station in some round
+    int time;
+    BoardKind kind;
+    int from; // TRANSFER: station id we walked from
+    bool from_source; // TRANSFER: walked from src itself rather than from a ride in the previous round
+} BoardLabel;
+
+typedef struct ridelabel { // Got off a train at a station in some round
+    int arr;
+    int board; // station id the train was boarded at, same round
+} RideLabel;
+
+// Kept per thread between queries (see scratch.h), so only the first query on a thread allocates. Vectors can hold more rounds than this query uses
+typedef struct raptorscan {
+    int rounds;
+    std::vector<std::vector<BoardLabel>> board; // round -> station id
+    std::vector<std::vector<RideLabel>> ride;
+    // round -> station id -> earliest using at most that many interchanges. Kept apart since getting off a train and being ready to board (after a walk) aren't comparable:
+    // boarding another train from the first takes an interchange, walking on from the second isn't allowed
+    std::vector<std::vector<int>> board_by;
+    std::vector<std::vector<int>> ride_by;
+
+    // scanRounds' own, reset on every call
+    std::vector<char> visit_closed, board_closed, in_marked, in_ride;
+    std::vector<int> marked_board, marked_ride;
+} RaptorScan;
+
+// ======== BUILDING ======== //
+RaptorNetwork buildRaptorNetwork(int day_type) {
+    if (day_type <= 0 || day_type > 7) {
+        throw std::invalid_argument("Invalid day_type: " + std::to_string(day_type));
+    }
+
+    RaptorNetwork net;
+    net.day_group = day_type <= 5 ? 0 : day_type - 5;
+
+    int n = stationCount();
+    net.transfers = buildTransferTable();
+    net.routes_from.assign(n, {});
+
+    for (int id = 0; id < n; ++id) {
+        Station stn = stationFromId(id);
+
+        if (stn.line == BR) { // No timetable, routed by headway instead
+            continue;
+        }
+
+        // One route per train destination, already in time order
+        std::map<int, std::pair<Station, std::vector<uint16_t>>> by_dest;
+
+        for (const Train& t : loadStationSchedule(stn, day_type)) {
+            if (t.time < 0 || t.time > UINT16_MAX || stationHop(id, t.train_dest).first < 0) { // Terminating here, or a row we can't place
+                continue;
+            }
+
+            auto& entry = by_dest[t.train_dest.line * 1000 + t.train_dest.stn_num];
+            entry.first = t.train_dest;
+            entry.second.push_back((uint16_t)t.time);
+        }
+
+        for (const auto& [key, entry] : by_dest) {
+            RaptorRoute route;
+            route.board = (uint16_t)id;
+            route.first_stop = (int)net.stops.size();
+            route.first_dep = (int)net.deps.size();
+            route.dep_count = (int)entry.second.size();
+
+            int curr = id;
+            int offset = 0;
+
+            for (std::pair<int, int> h = stationHop(curr, entry.first); h.first >= 0; h = stationHop(curr, entry.first)) {
+                curr = h.first;
+                offset += h.second;
+
+                net.stops.push_back((uint16_t)curr);
+                net.offsets.push_back((uint16_t)offset);
+            }
+
+            route.stop_count = (int)net.stops.size() - route.first_stop;
+            net.deps.insert(net.deps.end(), entry.second.begin(), entry.second.end());
+
+            net.routes_from[id].push_back((int)net.routes.size());
+            net.routes.push_back(route);
+        }
+    }
+
+    return net;
+}
+
+static std::mutex RAPTOR_NETWORK_MUTEX;
+static std::shared_ptr<const RaptorNetwork> RAPTOR_NETWORKS[MAX_ENGINE_CONTEXTS + 1][3]; // By engineSlot(), then day group
+
+std::shared_ptr<const RaptorNetwork> raptorNetwork(int day_type) {
+    if (day_type <= 0 || day_type > 7) {
+        throw std::invalid_argument("Invalid day_type: " + std::to_string(day_type));
+    }
+
+    int group = day_type <= 5 ? 0 : day_type - 5;
+    std::shared_ptr<const RaptorNetwork>* slot = RAPTOR_NETWORKS[engineSlot()];
+
+    std::shared_ptr<const RaptorNetwork> net = std::atomic_load(&slot[group]); // Already built: no lock, so concurrent queries don't queue up here
+    if (net) {
+        return net;
+    }
+
+    std::lock_guard<std::mutex> lock(RAPTOR_NETWORK_MUTEX);
+
+    if (!slot[group]) {
+        std::atomic_store(&slot[group], std::make_shared<const RaptorNetwork>(buildRaptorNetwork(day_type)));
+    }
+
+    return slot[group];
+}
+
+void clearRaptorNetworks() {
+    std::lock_guard<std::mutex> lock(RAPTOR_NETWORK_MUTEX);
+
+    for (auto& slot : RAPTOR_NETWORKS) {
+        for (auto& net : slot) {
+            std::atomic_store(&net, std::shared_ptr<const RaptorNetwork>());
+        }
+    }
+}
+
+// ======== QUERY ======== //
+static Path tracePath(int round, int dst_id, bool ended_by_ride, int src_id, const std::vector<std::vector<BoardLabel>>& board, const std::vector<std::vector<RideLabel>>& ride) {
+    Path rev;
+
+    auto push = [&](int id) {
+        Station stn = stationFromId(id);
+        if (rev.empty() || !sameStation(rev.back(), stn)) {
+            rev.push_back(stn);
+        }
+    };
+
+    int k = round;
+    int curr = dst_id;
+    bool at_ride = ended_by_ride;
+
+    while (true) {
+        push(curr);
+
+        if (at_ride) {
+            curr = ride[k][curr].board;
+            at_ride = false;
+            continue;
+        }
+
+        const BoardLabel& label = board[k][curr];
+
+        if (label.kind == SOURCE) {
+            break;
+        } else if (label.kind == REBOARD) {
+            --k;
+            at_ride = true;
+        } else if (label.kind == TRANSFER) {
+            --k;
+            at_ride = !label.from_source;
+            curr = label.from;
+        } else {
+            throw std::runtime_error("paretoJourneys: broken journey labels");
+        }
+
+        if (k < 0) {
+            throw std::runtime_error("paretoJourneys: broken journey labels");
+        }
+    }
+
+    if (rev.empty() || !sameStation(rev.back(), stationFromId(src_id))) {
+        throw std::runtime_error("paretoJourneys: journey doesn't start at src");
+    }
+
+    return Path(rev.rbegin(), rev.rend());
+}
+
+static void resetScan(RaptorScan& scan, int rounds) {
+    int n = stationCount();
+
+    scan.rounds = rounds;
+
+    if ((int)scan.board.size() < rounds) { // Never shrunk, a later query with fewer rounds just leaves the rest alone
+        scan.board.resize(rounds);
+        scan.ride.resize(rounds);
+        scan.board_by.resize(rounds);
+        scan.ride_by.resize(rounds);
+    }
+
+    for (int k = 0; k < rounds; ++k) {
+        scan.board[k].assign(n, BoardLabel{INT_MAX, NOT_BOARDABLE, -1, false});
+        scan.ride[k].assign(n, RideLabel{INT_MAX, -1});
+        scan.board_by[k].assign(n, INT_MAX);
+        scan.ride_by[k].assign(n, INT_MAX);
+    }
+}
+
+// Earliest at the station at all, using at most k interchanges
+static int arrivalBy(const RaptorScan& scan, int k, int id) {
+    return std::min(scan.board_by[k][id], scan.ride_by[k][id]);
+}
+
+// Runs the rounds of a resetScan'd scan from src_id, calling on_round(k) after each. dst_id < 0 labels every station instead of pruning against dst
+// Labels left from a later dep_mins stay valid bounds, so scanning earlier and earlier departures into the same scan only touches what improves (rRAPTOR)
+// latest_dep: the first train must leave src (or the station walked to from it, by as many mins later) by then, INT_MAX for any. BR has no trains to hold to it, only a headway wait
+template <typename OnRound>
+static void scanRounds(const RaptorNetwork& net, int src_id, int dst_id, int dep_mins, int latest_dep, int day_type, const JourneyClosures& closures, RaptorScan& scan, OnRound on_round) {
+    StageTimer timer(TRACE_SCAN);
+
+    int n = stationCount();
+    int rounds = scan.rounds;
+
+    std::vector<char>& visit_closed = scan.visit_closed;
+    std::vector<char>& board_closed = scan.board_closed;
+
+    visit_closed.assign(n, 0);
+    board_closed.assign(n, 0);
+    for (int id : closures.no_visit) {
+        visit_closed[id] = 1;
+    }
+    for (int id : closures.no_board) {
+        board_closed[id] = 1;
+    }
+
+    auto transferClosed = [&](int from, int to) {
+        for (const auto& [f, t] : closures.no_transfer) {
+            if (f == from && t == to) {
+                return true;
+            }
+        }
+        return false;
+    };
+
+    std::vector<std::vector<BoardLabel>>& board = scan.board;
+    std::vector<std::vector<RideLabel>>& ride = scan.ride;
+
+    auto improve = [&](std::vector<std::vector<int>>& by, int k, int id, int t) {
+        for (int r = k; r < rounds && t < by[r][id]; ++r) {
+            by[r][id] = t;
+        }
+    };
+
+    auto bound = [&](int k) {
+        return dst_id < 0 ? INT_MAX : arrivalBy(scan, k, dst_id);
+    };
+
+    std::vector<int>& marked_board = scan.marked_board;
+    std::vector<int>& marked_ride = scan.marked_ride;
+    std::vector<char>& in_marked = scan.in_marked;
+    std::vector<char>& in_ride = scan.in_ride;
+
+    marked_board.assign(1, src_id);
+    marked_ride.clear();
+    in_marked.assign(n, 0);
+
+    uint64_t generation = routingGeneration();
+
+    board[0][src_id] = BoardLabel{dep_mins, SOURCE, -1, false};
+    improve(scan.board_by, 0, src_id, dep_mins);
+
+    for (int k = 0; k < rounds; ++k) {
+        if (k > 0 && routingGeneration() != generation) { // Cancelled, the rounds left are never labelled and the caller's result is thrown away
+            break;
+        }
+
+        // Interchanges into this round: board again where the last round got off, or walk to another line
+        if (k > 0) {
+            marked_board.clear();
+            std::fill(in_marked.begin(), in_marked.end(), 0);
+
+            auto walkFrom = [&](int from, int now, bool from_source) {
+                for (const auto& [to, mins] : net.transfers[from]) {
+                    int t = now + mins;
+
+                    if (visit_closed[to] || transferClosed(from, to) || t >= std::min(scan.board_by[k][to], bound(k))) {
+                        continue;
+                    }
+
+                    board[k][to] = BoardLabel{t, TRANSFER, from, from_source};
+                    improve(scan.board_by, k, to, t);
+
+                    if (!in_marked[to]) {
+                        in_marked[to] = 1;
+                        marked_board.push_back(to);
+                    }
+                }
+            };
+
+            if (k == 1) {
+                walkFrom(src_id, dep_mins, true);
+            }
+
+            for (int s : marked_ride) {
+                int now = ride[k - 1][s].arr;
+
+                if (now < std::min(scan.board_by[k][s], bound(k))) {
+                    board[k][s] = BoardLabel{now, REBOARD, -1, false};
+                    improve(scan.board_by, k, s, now);
+
+                    if (!in_marked[s]) {
+                        in_marked[s] = 1;
+                        marked_board.push_back(s);
+                    }
+                }
+
+                walkFrom(s, now, false);
+            }
+        }
+
+        // Ride every train out of the boardable stations
+        marked_ride.clear();
+        in_ride.assign(n, 0);
+
+        auto arriveBy = [&](int stop, int arr, int from) {
+            if (arr >= std::min(scan.ride_by[k][stop], bound(k))) {
+                return;
+            }
+
+            ride[k][stop] = RideLabel{arr, from};
+            improve(scan.ride_by, k, stop, arr);
+
+            if (!in_ride[stop]) {
+                in_ride[stop] = 1;
+                marked_ride.push_back(stop);
+            }
+        };
+
+        for (int s : marked_board) {
+            if (board_closed[s]) {
+                continue;
+            }
+
+            int now = board[k][s].time;
+
+            int limit = INT_MAX;
+            if (latest_dep != INT_MAX && (board[k][s].kind == SOURCE || (board[k][s].kind == TRANSFER && board[k][s].from_source))) {
+                limit = latest_dep + (now - dep_mins);
+            }
+
+            for (int r : net.routes_from[s]) {
+                const RaptorRoute& route = net.routes[r];
+
+                auto first = net.deps.begin() + route.first_dep;
+                auto last = first + route.dep_count;
+                auto it = std::lower_bound(first, last, now);
+
+                if (it == last || *it > limit) { // No more trains on this route today (or in the window)
+                    continue;
+                }
+
+                for (int j = 0; j < route.stop_count; ++j) {
+                    int stop = net.stops[route.first_stop + j];
+
+                    if (visit_closed[stop]) { // Can't ride through it
+                        break;
+                    }
+
+                    arriveBy(stop, *it + net.offsets[route.first_stop + j], s);
+                }
+            }
+
+            // BR: headway only, same approximation as nextTrainTime
+            Station stn = stationFromId(s);
+            if (stn.line != BR) {
+                continue;
+            }
+
+            for (int step : {-1, +1}) {
+                for (int num = stn.stn_num + step; validStation(BR, num); num += step) {
+                    Station next{BR, num};
+                    int to = stationId(next);
+
+                    if (visit_closed[to]) {
+                        break;
+                    }
+
+                    try {
+                        Time dep = nextTrainTime(stn, day_type, now, next);
+                        if (dep.hr >= 0) {
+                            arriveBy(to, timeToMins(dep) + getLineDuration(stn, next), s);
+                        }
+                    } catch (const std::exception& e) {
+                        // Past the last approximated train
+                    }
+                }
+            }
+        }
+
+        on_round(k);
+
+        if (marked_ride.empty() && (k > 0 || net.transfers[src_id].empty())) { // Nothing left to interchange from
+            break;
+        }
+    }
+}
+
+std::vector<ParetoJourney> paretoJourneys(const RaptorNetwork& net, const Station& src, const Station& dst, int dep_mins, int day_type, int max_interchanges, const JourneyClosures& closures) {
+    int src_id = stationId(src);
+    int dst_id = stationId(dst);
+
+    if (src_id < 0 || dst_id < 0) {
+        throw std::invalid_argument("paretoJourneys: invalid src/dst station");
+    }
+
+    if (src_id == dst_id) {
+        return {};
+    }
+
+    int rounds = std::min(std::max(max_interchanges, 0), RAPTOR_MAX_ROUNDS) + 1;
+
+    Scratch<RaptorScan> held;
+    RaptorScan& scan = *held;
+    resetScan(scan, rounds);
+
+    std::vector<ParetoJourney> journeys;
+
+    scanRounds(net, src_id, dst_id, dep_mins, INT_MAX, day_type, closures, scan, [&](int k) {
+        // Record dst if this round beat every round before it
+        int by_ride = scan.ride[k][dst_id].arr;
+        int by_walk = scan.board[k][dst_id].kind == TRANSFER ? scan.board[k][dst_id].time : INT_MAX;
+        int arr = std::min(by_ride, by_walk);
+
+        if (arr != INT_MAX && (journeys.empty() || arr < journeys.back().arr)) {
+            journeys.push_back(ParetoJourney{tracePath(k, dst_id, by_ride <= by_walk, src_id, scan.board, scan.ride), arr, k});
+        }
+    });
+
+    return journeys;
+}
+
+std::vector<ReachLabel> isochrone(const RaptorNetwork& net, const Station& src, int dep_mins, int day_type, int max_interchanges, const JourneyClosures& closures) {
+    int src_id = stationId(src);
+
+    if (src_id < 0) {
+        throw std::invalid_argument("isochrone: invalid src station");
+    }
+
+    int rounds = std::min(std::max(max_interchanges, 0), RAPTOR_MAX_ROUNDS) + 1;
+
+    Scratch<RaptorScan> held;
+    RaptorScan& scan = *held;
+    resetScan(scan, rounds);
+    scanRounds(net, src_id, -1, dep_mins, INT_MAX, day_type, closures, scan, [](int) {});
+
+    std::vector<ReachLabel> labels(stationCount(), ReachLabel{-1, -1});
+
+    for (int id = 0; id < labels.size(); ++id) {
+        int best = arrivalBy(scan, rounds - 1, id);
+
+        for (int k = 0; k < rounds && best != INT_MAX; ++k) {
+            if (arrivalBy(scan, k, id) == best) { // Fewest interchanges reaching it that early
+                labels[id] = ReachLabel{best, k};
+                break;
+            }
+        }
+    }
+
+    return labels;
+}
+
+std::vector<ProfileJourney> profileJourneys(const RaptorNetwork& net, const Station& src, const Station& dst, int from_mins, int to_mins, int day_type, int max_interchanges, const JourneyClosures& closures) {
+    int src_id = stationId(src);
+    int dst_id = stationId(dst);
+
+    if (src_id < 0 || dst_id < 0) {
+        throw std::invalid_argument("profileJourneys: invalid src/dst station");
+    }
+
+    if (src_id == dst_id || to_mins < from_mins) {
+        return {};
+    }
+
+    // Only leaving when a train does can be optimal: boarding at src, or at a station walked to from src
+    // BR (headway only, a train's time depends on where it's headed) and walking straight to dst can start any minute
+    std::vector<int> deps;
+
+    auto addDeps = [&](int id, int walk) {
+        if (id == dst_id || stationFromId(id).line == BR) {
+            for (int t = from_mins; t <= to_mins; ++t) {
+                deps.push_back(t);
+            }
+            return;
+        }
+
+        for (int r : net.routes_from[id]) {
+            const RaptorRoute& route = net.routes[r];
+
+            auto first = net.deps.begin() + route.first_dep;
+            auto last = first + route.dep_count;
+
+            for (auto it = std::lower_bound(first, last, from_mins + walk); it != last && *it <= to_mins + walk; ++it) {
+                deps.push_back(*it - walk);
+            }
+        }
+    };
+
+    addDeps(src_id, 0);
+    for (const auto& [to, mins] : net.transfers[src_id]) {
+        addDeps(to, mins);
+    }
+
+    std::sort(deps.begin(), deps.end(), std::greater<int>());
+    deps.erase(std::unique(deps.begin(), deps.end()), deps.end());
+
+    int rounds = std::min(std::max(max_interchanges, 0), RAPTOR_MAX_ROUNDS) + 1;
+
+    Scratch<RaptorScan> held;
+    RaptorScan& scan = *held;
+    resetScan(scan, rounds);
+
+    std::vector<ProfileJourney> journeys;
+    std::vector<int> before(rounds);
+    uint64_t generation = routingGeneration();
+
+    // Latest departure first: whatever a departure reaches no faster than a later one (with no more interchanges) is dominated, and the shared labels prune it
+    // No first train after to_mins, or a departure near the end could wait past the window and dominate options inside it
+    for (int dep : deps) {
+        if (routingGeneration() != generation) { // Superseded, the rest of the window isn't wanted
+            break;
+        }
+
+        for (int k = 0; k < rounds; ++k) {
+            before[k] = arrivalBy(scan, k, dst_id);
+        }
+
+        scanRounds(net, src_id, dst_id, dep, to_mins, day_type, closures, scan, [&](int k) {
+            // Record dst if this round beat every later departure and every round before it
+            int arr = arrivalBy(scan, k, dst_id);
+
+            if (arr >= before[k] || (k > 0 && arr >= arrivalBy(scan, k - 1, dst_id))) {
+                return;
+            }
+
+            int by_ride = scan.ride[k][dst_id].arr;
+            int by_walk = scan.board[k][dst_id].kind == TRANSFER ? scan.board[k][dst_id].time : INT_MAX;
+
+            journeys.push_back(ProfileJourney{tracePath(k, dst_id, by_ride <= by_walk, src_id, scan.board, scan.ride), dep, arr, k});
+        });
+    }
+
+    std::sort(journeys.begin(), journeys.end(), [](const ProfileJourney& a, const ProfileJourney& b) {
+        return a.dep != b.dep ? a.dep < b.dep : a.rounds < b.rounds;
+    });
+
+    return journeys;
+}
+
+std::vector<RoutedPath> routeProfile(const Station& src, const Station& dst, int from_mins, int to_mins, int day_type) {
+    if (!validStation(src) || !validStation(dst)) {
+        throw std::invalid_argument("routeProfile: invalid src/dst station");
+    }
+    if (day_type <= 0 || day_type > 7) {
+        throw std::invalid_argument("routeProfile: invalid day_type");
+    }
+    if (from_mins < 0) {
+        throw std::invalid_argument("routeProfile: invalid from_mins");
+    }
+
+    std::vector<RoutedPath> routed;
+
+    for (const ProfileJourney& j : profileJourneys(*raptorNetwork(day_type), src, dst, from_mins, to_mins, day_type, RAPTOR_MAX_ROUNDS)) {
+        try {
+            RoutedPath rp;
+            rp.path = j.path;
+            rp.times = pathETA(j.path, Time{j.dep / 60, j.dep % 60}, day_type);
+            rp.total_mins = timeToMins(rp.times.back().first) - j.dep;
+            rp.interchange_count = countInterchanges(j.path);
+
+            routed.push_back(rp);
+        } catch (...) {
+            // Same as routeRaptor, never return a journey we can't time
+        }
+    }
+
+    return routed;
+}
+
+std::vector<RoutedPath> routeRaptor(const Station& src, const Station& dst, Time curr_time, int day_type, const RouteConstraints& constraints, int k) {
+    if (!validStation(src) || !validStation(dst)) {
+        throw std::invalid_argument("routeRaptor: invalid src/dst station");
+    }
+    if (day_type <= 0 || day_type > 7) {
+        throw std::invalid_argument("routeRaptor: invalid day_type");
+    }
+    if (curr_time.hr < 0 || curr_time.min < 0) {
+        throw std::invalid_argument("routeRaptor: invalid curr_time");
+    }
+    if (!constraints.must_stations.empty() || !constraints.must_lines.empty()) {
+        throw std::invalid_argument("routeRaptor: must_stations/must_lines are not supported");
+    }
+
+    if (sameStation(src, dst) || k <= 0) {
+        return {};
+    }
+
+    // Avoided stations (every code of the physical station) and lines can't be passed through
+    JourneyClosures closures;
+    for (const Station& stn : constraints.avoid_stations) {
+        for (const Station& alt : getEquivalentStations(stn)) {
+            closures.no_visit.push_back(stationId(alt));
+        }
+    }
+    for (int id = 0; id < stationCount(); ++id) {
+        Line line = stationFromId(id).line;
+        if (std::find(constraints.avoid_lines.begin(), constraints.avoid_lines.end(), line) != constraints.avoid_lines.end()) {
+            closures.no_visit.push_back(id);
+        }
+    }
+
+    int src_id = stationId(src);
+    int dst_id = stationId(dst);
+    for (int id : closures.no_visit) {
+        if (id == src_id || id == dst_id) {
+            return {};
+        }
+    }
+
+    std::shared_ptr<const RaptorNetwork> net = raptorNetwork(day_type);
+    int dep_mins = timeToMins(curr_time);
+    uint64_t generation = routingGeneration();
+
+    auto evaluate = [&](const std::vector<ParetoJourney>& journeys, std::vector<RoutedPath>& routed) {
+        for (const ParetoJourney& j : journeys) {
+            bool seen = false;
+            for (const RoutedPath& rp : routed) {
+                if (samePath(rp.path, j.path)) {
+                    seen = true;
+                    break;
+                }
+            }
+
+            if (seen) {
+                continue;
+            }
+
+            try {
+                RoutedPath rp;
+                rp.path = j.path;
+                rp.times = pathETA(j.path, curr_time, day_type);
+                rp.total_mins = timeToMins(rp.times.back().first) - dep_mins;
+                rp.interchange_count = countInterchanges(j.path);
+
+                routed.push_back(rp);
+            } catch (...) {
+                // Shouldn't happen since the network is timed like pathETA, but never return a route we can't time
+            }
+        }
+    };
+
+    auto rank = [&](std::vector<RoutedPath>& routed) {
+        std::stable_sort(routed.begin(), routed.end(), [&](const RoutedPath& a, const RoutedPath& b) {
+            return betterThan(a, b, constraints);
+        });
+    };
+
+    std::vector<RoutedPath> routed;
+    evaluate(paretoJourneys(*net, src, dst, dep_mins, day_type, constraints.max_interchanges, closures), routed);
+
+    if (routed.empty()) {
+        return {};
+    }
+
+    rank(routed);
+
+    // Top up with alternatives: close each interchange/boarding of the best in turn and search again
+    if (routed.size() < k) {
+        Path best = routed.front().path;
+
+        for (int i = 0; i + 1 < best.size(); ++i) {
+            if (routingGeneration() != generation) { // Superseded, no point in another search
+                break;
+            }
+
+            JourneyClosures alt = closures;
+
+            if (best[i].line != best[i + 1].line) {
+                alt.no_transfer.push_back({stationId(best[i]), stationId(best[i + 1])});
+            } else {
+                alt.no_board.push_back(stationId(best[i]));
+            }
+
+            evaluate(paretoJourneys(*net, src, dst, dep_mins, day_type, constraints.max_interchanges, alt), routed);
+        }
+
+        rank(routed);
+    }
+
+    if (routed.size() > k) {
+        routed.resize(k);
+    }
+
+    return routed;
+}
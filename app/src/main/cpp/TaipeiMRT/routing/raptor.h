@@ -0,0 +1,83 @@
+/********************************************
+ * Copyright (c) 2026 Shun/翔海 (@shun4midx) *
+ * Project: Taipei-MRT-Scheduler            *
+ * File Type: C++ Header file               *
+ * File: raptor.h                           *
+ ****************************************** */
+
+#pragma once
+
+#include "network.h"
+#include "routing.h"
+
+#include <cstdint>
+#include <memory>
+#include <vector>
+
+// RAPTOR: round k holds the earliest arrivals using exactly k interchanges, so one query gives the whole (arrival, interchanges) Pareto set
+// An interchange is a transfer or boarding again after getting off (which is how an O12 branch switch looks), same as countInterchanges
+
+// ======== STRUCTS ======== //
+// Trains from one station to one destination, boarded only there (like a connection_scan trip), so they never overtake each other
+typedef struct raptorroute {
+    uint16_t board; // station id
+    int first_stop; // into RaptorNetwork::stops/offsets
+    int stop_count;
+    int first_dep; // into RaptorNetwork::deps
+    int dep_count;
+} RaptorRoute;
+
+typedef struct raptornetwork {
+    int day_group; // 0: 12345, 1: 6, 2: 7
+    std::vector<RaptorRoute> routes;
+    std::vector<uint16_t> stops; // station ids after the boarding station, in riding order
+    std::vector<uint16_t> offsets; // mins from boarding to each stop, LINE_DURATION like pathETA
+    std::vector<uint16_t> deps; // sorted departure times of each route
+    std::vector<std::vector<int>> routes_from; // station id -> route indices
+    std::vector<std::vector<std::pair<int, int>>> transfers; // station id -> {station id, mins}
+} RaptorNetwork;
+
+typedef struct paretojourney {
+    Path path; // leg boundaries, like earliestArrivalPath
+    int arr; // mins since midnight
+    int rounds; // interchanges
+} ParetoJourney;
+
+typedef struct profilejourney {
+    Path path;
+    int dep; // mins since midnight, leaving src
+    int arr;
+    int rounds; // interchanges
+} ProfileJourney;
+
+typedef struct reachlabel {
+    int arr; // mins since midnight, -1 if unreachable
+    int interchanges; // fewest interchanges reaching it by arr, -1 if unreachable
+} ReachLabel;
+
+// ======== DEFINITIONS ======== //
+extern const int RAPTOR_MAX_ROUNDS;
+
+// ======== BUILDING ======== //
+RaptorNetwork buildRaptorNetwork(int day_type);
+
+// Built once per currentEngine() and day group, and shared. Safe to call from several threads at once
+std::shared_ptr<const RaptorNetwork> raptorNetwork(int day_type);
+void clearRaptorNetworks();
+
+// ======== QUERY ======== //
+// Every journey that no other journey beats on both arrival and interchanges, fewest interchanges first
+std::vector<ParetoJourney> paretoJourneys(const RaptorNetwork& net, const Station& src, const Station& dst, int dep_mins, int day_type, int max_interchanges, const JourneyClosures& closures = {});
+
+// Earliest arrival at every station id from src in one scan (no target to prune against), for "where can I get within N minutes"
+std::vector<ReachLabel> isochrone(const RaptorNetwork& net, const Station& src, int dep_mins, int day_type, int max_interchanges = RAPTOR_MAX_ROUNDS, const JourneyClosures& closures = {});
+
+// Every journey leaving src in [from_mins, to_mins] that no other beats on departure (later), arrival and interchanges, by departure then interchanges
+// One rRAPTOR profile scan: departures latest first into shared labels, rather than a paretoJourneys per minute
+std::vector<ProfileJourney> profileJourneys(const RaptorNetwork& net, const Station& src, const Station& dst, int from_mins, int to_mins, int day_type, int max_interchanges, const JourneyClosures& closures = {});
+
+// profileJourneys timed with pathETA from each departure, in the same order
+std::vector<RoutedPath> routeProfile(const Station& src, const Station& dst, int from_mins, int to_mins, int day_type);
+
+// Pareto set ranked with betterThan, topped up to k with rescans that close one interchange or boarding of the best. must_stations/must_lines are not supported
+std::vector<RoutedPath> routeRaptor(const Station& src, const Station& dst, Time curr_time, int day_type, const RouteConstraints& constraints, int k);
@@ -6,7 +6,16 @@
  ****************************************** */
 
 #include "routing.h"
-#include <queue>
+#include "connection_scan.h"
+#include "raptor.h"
+#include "network.h"
+#include "worker_pool.h"
+#include "engine_context.h"
+#include "scratch.h"
+#include "trace.h"
+#include <algorithm>
+#include <atomic>
+#include <unordered_map>
 #include <unordered_set>
 #include <iostream>
 
@@ -79,6 +88,30 @@ std::string hashPath(const Path& p) {
     return hash;
 }
 
+uint64_t pathFingerprint(const Path& p) {
+    uint64_t hash = 14695981039346656037ULL;
+
+    for (const Station& s : p) {
+        hash = (hash ^ (uint64_t)stationKey(s)) * 1099511628211ULL;
+    }
+
+    return hash;
+}
+
+bool samePath(const Path& a, const Path& b) {
+    if (a.size() != b.size()) {
+        return false;
+    }
+
+    for (int i = 0; i < a.size(); ++i) {
+        if (!sameStation(a[i], b[i])) {
+            return false;
+        }
+    }
+
+    return true;
+}
+
 bool isCheckpoint(const Station& s, const RouteConstraints& c) {
     for (const Station& ms : c.must_stations) {
         if (sameStation(s, ms)) {
@@ -206,188 +239,257 @@ bool betterThan(const RoutedPath& a, const RoutedPath& b, const RouteConstraints
 // Generate all paths without schedules, with avoid constraints applied
 // must_stations can be handled by concatenation later and must_lines is global and filtered later
 
-std::vector<Path> candidatePaths(const Station& src, const Station& dst, int max_paths, int max_interchanges, const RouteConstraints& constraints) {
-    if (!validStation(src) || !validStation(dst)) {
-        throw std::invalid_argument("candidatePaths: invalid src/dst station");
-    }
+// Same-line neighbours (-1, +1, then O12 -> O50) followed by interchanges, in the order the search expands them. Fixed, so built once
+static const std::vector<std::vector<std::pair<int, bool>>>& candidateNeighbors() { // station id -> {station id, is interchange}
+    static const std::vector<std::vector<std::pair<int, bool>>> neighbors = [] {
+        int n = stationCount();
+        std::vector<std::vector<std::pair<int, bool>>> nb(n);
 
-    if (max_paths <= 0 || max_interchanges < 0) {
-        return {};
-    }
+        for (int id = 0; id < n; ++id) {
+            Station stn = stationFromId(id);
 
-    // BFS-like exploration, prunes forbidden nodes & cycles
-    std::queue<CandState> q;
-    std::vector<Path> results;
+            for (int delta : {-1, +1}) {
+                Station next{stn.line, stn.stn_num + delta};
 
-    if (forbiddenStation(src, constraints) || forbiddenStation(dst, constraints)) {
-        return {};
+                if (stn.line == O && stn.stn_num == 50 && delta == -1) {
+                    next.stn_num = 12; // O edge case
+                }
+
+                if (stationId(next) >= 0) {
+                    nb[id].push_back({stationId(next), false});
+                }
+            }
+
+            if (sameStation(stn, Station{O, 12})) {
+                nb[id].push_back({stationId(Station{O, 50}), false});
+            }
+
+            for (const auto& [to, _mins] : getTransfers(stn)) {
+                if (stationId(to) >= 0) {
+                    nb[id].push_back({stationId(to), true});
+                }
+            }
+        }
+
+        return nb;
+    }();
+
+    return neighbors;
+}
+
+// BFS state kept between calls, so widening the budget carries on from where the last call stopped instead of starting over
+// Lives in per-thread scratch (see scratch.h), so the arena and best_flat keep their capacity from one query to the next
+typedef struct candidatesearch {
+    std::vector<CandNode> arena; // Every state ever queued, FIFO order, so it doubles as the queue
+    int head = 0;
+    std::vector<int> results; // arena indices of accepted dst states
+
+    std::vector<char> blocked; // station id -> forbidden
+    std::vector<int> checkpoint_index; // station id -> must_stations index, -1 if none
+    int checkpoint_count = 0;
+
+    std::vector<uint16_t> best_flat; // state -> best interchange count + 1, 0 if unseen (few checkpoints)
+    std::unordered_map<long long, int> best_map; // same, for many checkpoints
+} CandidateSearch;
+
+static const int FLAT_CHECKPOINT_LIMIT = 4; // 2^4 masks * 64 line masks per station keeps best_flat small
+
+static void startCandidateSearch(CandidateSearch& search, const Station& src, const RouteConstraints& constraints) {
+    int n = stationCount();
+
+    search.arena.clear();
+    search.arena.reserve(1024);
+    search.head = 0;
+    search.results.clear();
+
+    search.blocked.assign(n, 0);
+    for (int id = 0; id < n; ++id) {
+        search.blocked[id] = forbiddenStation(stationFromId(id), constraints);
     }
 
     // ===== checkpoint indexing =====
-    std::unordered_map<int,int> checkpoint_index;
-    for (int i = 0; i < constraints.must_stations.size(); ++i) {
-        checkpoint_index[stationKey(constraints.must_stations[i])] = i;
+    search.checkpoint_count = (int)constraints.must_stations.size();
+    search.checkpoint_index.assign(n, -1);
+    for (int i = 0; i < search.checkpoint_count; ++i) {
+        int id = stationId(constraints.must_stations[i]);
+        if (id >= 0) {
+            search.checkpoint_index[id] = i;
+        }
     }
 
-    int start_mask = 0;
-    int src_key = stationKey(src);
-
-    if (checkpoint_index.count(src_key)) {
-        start_mask |= (1 << checkpoint_index[src_key]);
+    search.best_flat.clear();
+    search.best_map.clear();
+    if (search.checkpoint_count <= FLAT_CHECKPOINT_LIMIT) {
+        search.best_flat.assign((size_t)n << (search.checkpoint_count + 6), 0);
+    } else {
+        search.best_map.reserve(4096);
     }
 
-    int start_line_mask = (1 << src.line);
-    q.push({src, {src}, 0, start_mask, start_line_mask});
+    int src_id = stationId(src);
+    int start_mask = search.checkpoint_index[src_id] >= 0 ? (1 << search.checkpoint_index[src_id]) : 0;
 
-    std::unordered_map<long long, int> best_seen;
+    search.arena.push_back(CandNode{(uint16_t)src_id, (uint8_t)(1 << src.line), 0, start_mask, -1});
+}
 
-    while (!q.empty()) {
-        CandState curr = q.front();
-        q.pop();
+// Runs the BFS until there are max_paths results or nothing left to expand
+static void extendCandidateSearch(CandidateSearch& search, const Station& dst, int max_paths, int max_interchanges, const RouteConstraints& constraints) {
+    const std::vector<std::vector<std::pair<int, bool>>>& neighbors = candidateNeighbors();
+
+    int dst_id = stationId(dst);
+    int full_mask = (1 << search.checkpoint_count) - 1;
+    bool flat = !search.best_flat.empty();
+
+    int must_line_mask = 0;
+    for (Line l : constraints.must_lines) {
+        must_line_mask |= (1 << l);
+    }
+
+    while (search.head < (int)search.arena.size() && (int)search.results.size() < max_paths) {
+        int curr_idx = search.head++;
+        CandNode curr = search.arena[curr_idx]; // Copy, pushing below may reallocate
 
         if (curr.interchange_count > max_interchanges) {
             continue;
         }
 
-        if (sameStation(curr.stn, dst)) {
-            if ((int)results.size() >= max_paths) {
-                continue;
-            }
-
-            bool checkpoints_ok = curr.checkpoint_mask == (1 << constraints.must_stations.size()) - 1;
-
-            bool lines_ok = true;
-            for (Line l : constraints.must_lines) {
-                if (!(curr.line_mask & (1 << l))) {
-                    lines_ok = false;
-                    break;
-                }
-            }
+        if (curr.stn == dst_id) {
+            bool checkpoints_ok = curr.checkpoint_mask == full_mask;
+            bool lines_ok = (curr.line_mask & must_line_mask) == must_line_mask;
 
             if (checkpoints_ok && lines_ok) {
-                results.push_back(curr.path);
-            }
-
-            if (results.size() >= max_paths) {
-                continue;
+                search.results.push_back(curr_idx);
             }
 
             continue;
         }
 
-        long long state_key = ((long long)stationKey(curr.stn) << 40) | ((long long)curr.checkpoint_mask << 20) | curr.line_mask;
+        // Store best interchange only
+        if (flat) {
+            uint16_t& best = search.best_flat[(((size_t)curr.stn << search.checkpoint_count | curr.checkpoint_mask) << 6) | curr.line_mask];
 
-        auto it = best_seen.find(state_key);
-        if (it != best_seen.end()) {
-            int best_inter = it->second;
-            if (best_inter <= curr.interchange_count) {
+            if (best != 0 && best - 1 <= curr.interchange_count) {
                 continue;
             }
-        }
 
-        // Store best interchange only
-        best_seen[state_key] = curr.interchange_count;
-
-        // Same line neighbors: +/- station number
-        for (int delta: {-1, +1}) {
-            Station next{curr.stn.line, curr.stn.stn_num + delta};
+            best = (uint16_t)(curr.interchange_count + 1);
+        } else {
+            long long state_key = ((long long)curr.stn << 40) | ((long long)curr.checkpoint_mask << 20) | curr.line_mask;
 
-            if (curr.stn.line == O && curr.stn.stn_num == 50 && delta == -1) {
-                next.stn_num = 12; // O edge case
+            auto it = search.best_map.find(state_key);
+            if (it != search.best_map.end() && it->second <= curr.interchange_count) {
+                continue;
             }
 
-            if (!validStation(next) || forbiddenStation(next, constraints)) {
+            search.best_map[state_key] = curr.interchange_count;
+        }
+
+        for (const auto& [next, interchange] : neighbors[curr.stn]) {
+            if (search.blocked[next]) {
                 continue;
             }
 
-            // Avoid cycles
             int new_checkpoint_mask = curr.checkpoint_mask;
-            int next_key = stationKey(next);
-            if (checkpoint_index.count(next_key)) {
-                new_checkpoint_mask |= (1 << checkpoint_index[next_key]);
+            if (search.checkpoint_index[next] >= 0) {
+                new_checkpoint_mask |= (1 << search.checkpoint_index[next]);
             }
 
-            int new_line_mask = curr.line_mask;
-            new_line_mask |= (1 << next.line);
+            uint8_t new_line_mask = curr.line_mask | (uint8_t)(1 << stationFromId(next).line);
 
-            Path np = curr.path;
-            np.push_back(next);
-            q.push({next, np, curr.interchange_count, new_checkpoint_mask, new_line_mask});
+            search.arena.push_back(CandNode{(uint16_t)next, new_line_mask, curr.interchange_count + (interchange ? 1 : 0), new_checkpoint_mask, curr_idx});
         }
+    }
+}
 
-        // Edge case for O line
-        if (sameStation(curr.stn, Station{O, 12})) {
-            Station next{O, 50};
-            if (!validStation(next) || forbiddenStation(next, constraints)) {
-                continue;
-            }
+static Path candidatePath(const CandidateSearch& search, int idx) {
+    Path rev;
 
-            int new_line_mask = curr.line_mask | (1 << next.line);
+    for (; idx >= 0; idx = search.arena[idx].parent) {
+        rev.push_back(stationFromId(search.arena[idx].stn));
+    }
 
-            int new_checkpoint_mask = curr.checkpoint_mask;
-            int next_key = stationKey(next);
-            if (checkpoint_index.count(next_key)) {
-                new_checkpoint_mask |= (1 << checkpoint_index[next_key]);
-            }
+    return Path(rev.rbegin(), rev.rend());
+}
 
-            Path np = curr.path;
-            np.push_back(next);
-            q.push({next, np, curr.interchange_count, new_checkpoint_mask, new_line_mask});
-        }
+std::vector<Path> candidatePaths(const Station& src, const Station& dst, int max_paths, int max_interchanges, const RouteConstraints& constraints) {
+    if (!validStation(src) || !validStation(dst)) {
+        throw std::invalid_argument("candidatePaths: invalid src/dst station");
+    }
 
-        // Interchange neighbors
-        try {
-            auto transfers = getTransfers(curr.stn);
+    if (max_paths <= 0 || max_interchanges < 0) {
+        return {};
+    }
 
-            for (const auto& [to, _mins] : transfers) {
-                if (!validStation(to) || forbiddenStation(to, constraints)) {
-                    continue;
-                }
+    if (forbiddenStation(src, constraints) || forbiddenStation(dst, constraints)) {
+        return {};
+    }
 
-                // Avoid cycles
-                int new_checkpoint_mask = curr.checkpoint_mask;
-                int next_key = stationKey(to);
-                if (checkpoint_index.count(next_key)) {
-                    new_checkpoint_mask |= (1 << checkpoint_index[next_key]);
-                }
+    // BFS-like exploration over a parent-pointer arena, prunes forbidden nodes and states already reached with fewer interchanges
+    Scratch<CandidateSearch> held;
+    CandidateSearch& search = *held;
+    startCandidateSearch(search, src, constraints);
+    extendCandidateSearch(search, dst, max_paths, max_interchanges, constraints);
 
-                int new_line_mask = curr.line_mask | (1 << to.line);
+    std::vector<Path> results;
+    results.reserve(search.results.size());
 
-                Path np = curr.path;
-                np.push_back(to);
-                q.push({to, np, curr.interchange_count + 1, new_checkpoint_mask, new_line_mask});
-           }
-        } catch (...) {
-            // No transfers or invalid transfer table -> ignore
-        }
+    for (int idx : search.results) {
+        results.push_back(candidatePath(search, idx));
     }
 
     return results;
 }
 
 // ======== LAYER 2: REAL LIFE PATH ======== //
-// Default: top 3 by time (tie break by interchanges), fixed candidate budget
-std::vector<RoutedPath> routeDefault(const Station& src, const Station& dst, Time curr_time, int day_type, int k) {
+// Default: top 3 by time (tie break by interchanges), exact through RAPTOR unless algorithm says otherwise
+std::vector<RoutedPath> routeDefault(const Station& src, const Station& dst, Time curr_time, int day_type, int k, RouteAlgorithm algorithm) {
     RouteConstraints c;
     c.minimize_time = true;
     c.minimize_interchanges = true;
     c.max_interchanges = 4;
 
-    return routeEngine(src, dst, curr_time, day_type, c, k, 6, 6);;
+    uint64_t generation = routingGeneration();
+
+    if (algorithm != CANDIDATE_SEARCH) {
+        try {
+            RouteConstraints exact = c;
+            exact.max_interchanges = RAPTOR_MAX_ROUNDS; // The cap is for the candidate budget: RAPTOR counts boarding again as a round, so 4 could miss what CONNECTION_SCAN finds
+            std::vector<RoutedPath> routed = algorithm == RAPTOR ? routeRaptor(src, dst, curr_time, day_type, exact, k) : routeConnectionScan(src, dst, curr_time, day_type, k);
+            if (!routed.empty() || routingGeneration() != generation) { // Cancelled: empty because it stopped early, not worth a candidate search
+                return routed;
+            }
+        } catch (...) {
+            // Timetables couldn't be loaded etc. -> candidate search below
+        }
+    }
+
+    return routeEngine(src, dst, curr_time, day_type, c, k, 6, 6);
 }
 
 // Least interchange: top 3 by interchanges (tie-break by time), fixed candidate budget
-std::vector<RoutedPath> routeLeastInterchange(const Station& src, const Station& dst, Time curr_time, int day_type, int k) {
+std::vector<RoutedPath> routeLeastInterchange(const Station& src, const Station& dst, Time curr_time, int day_type, int k, RouteAlgorithm algorithm) {
     RouteConstraints c;
     c.minimize_time = false;
     c.minimize_interchanges = true;
     c.max_interchanges = 4;
 
+    uint64_t generation = routingGeneration();
+
+    if (algorithm != CANDIDATE_SEARCH) {
+        try {
+            std::vector<RoutedPath> routed = routeRaptor(src, dst, curr_time, day_type, c, k);
+            if (!routed.empty() || routingGeneration() != generation) { // Cancelled: empty because it stopped early, not worth a candidate search
+                return routed;
+            }
+        } catch (...) {
+            // Timetables couldn't be loaded etc. -> candidate search below
+        }
+    }
+
     return routeEngine(src, dst, curr_time, day_type, c, k, 6, 6);
 }
 
 // Custom: supports must/avoid, uses adaptive widening if needed
-std::vector<RoutedPath> routeCustom(const Station& src, const Station& dst, Time curr_time, int day_type, const RouteConstraints& constraints, int k) {
+std::vector<RoutedPath> routeCustom(const Station& src, const Station& dst, Time curr_time, int day_type, const RouteConstraints& constraints, int k, RouteAlgorithm algorithm) {
     if (sameStation(src, dst)) {
         return {{
                         .path = {src},
@@ -397,11 +499,39 @@ std::vector<RoutedPath> routeCustom(const Station& src, const Station& dst, Time
                 }};
     }
 
+    // Avoids and ranking only: one RAPTOR query covers every interchange count
+    uint64_t generation = routingGeneration();
+
+    if (algorithm != CANDIDATE_SEARCH && constraints.must_stations.empty() && constraints.must_lines.empty()) {
+        try {
+            std::vector<RoutedPath> routed = routeRaptor(src, dst, curr_time, day_type, constraints, k);
+            if (!routed.empty() || routingGeneration() != generation) { // Cancelled: empty because it stopped early, not worth a candidate search
+                return routed;
+            }
+        } catch (...) {
+            // Timetables couldn't be loaded etc. -> candidate search below
+        }
+    }
+
     // With bitmask-based candidatePaths, no segmentation needed.
     return routeEngine(src, dst, curr_time, day_type,constraints, k, 6, 100);
 }
 
+// ======== CANCELLATION ======== //
+void cancelRouting() {
+    currentEngineState()->routing_generation.fetch_add(1, std::memory_order_relaxed);
+}
+
+uint64_t routingGeneration() {
+    return currentEngineState()->routing_generation.load(std::memory_order_relaxed);
+}
+
 // ======== CORE ========= //
+typedef struct rankedpath {
+    RoutedPath rp;
+    int seq; // Candidate order
+} RankedPath;
+
 std::vector<RoutedPath> routeEngine(const Station& src, const Station& dst, Time curr_time, int day_type, const RouteConstraints& constraints, int k, int initial_budget, int hard_cap) { // Takes all candidates, evaluates them wrt real time, filter must_lines, then rank
     if (!validStation(src) || !validStation(dst)) {
         throw std::invalid_argument("routeEngine: invalid src/dst station");
@@ -421,8 +551,7 @@ std::vector<RoutedPath> routeEngine(const Station& src, const Station& dst, Time
         }
     }
 
-    std::vector<RoutedPath> routed;
-    std::unordered_set<std::string> seen_paths; // avoid re-evaluating duplicates across budgets
+    std::unordered_set<uint64_t> seen_paths; // avoid re-evaluating duplicates across budgets
 
     // If src/dst themselves forbidden, no solution.
     if (forbiddenStation(src, c) || forbiddenStation(dst, c)) {
@@ -432,83 +561,158 @@ std::vector<RoutedPath> routeEngine(const Station& src, const Station& dst, Time
     int budget = std::max(1, initial_budget);
     int cap = std::max(budget, hard_cap);
 
+    // One search for every budget: each wider budget only adds results after the previous ones
+    Scratch<CandidateSearch> held;
+    CandidateSearch& search = *held;
+    startCandidateSearch(search, src, c);
+    int evaluated = 0;
+
+    // Pool of the best `keep` so far as a heap, worst on top. seq (candidate order) breaks betterThan ties, so the threads never change the answer
+    auto ranksBefore = [&](const RankedPath& a, const RankedPath& b) {
+        if (betterThan(a.rp, b.rp, c)) {
+            return true;
+        }
+        return !betterThan(b.rp, a.rp, c) && a.seq < b.seq;
+    };
+
+    int keep = std::max(k * 10, 30); // keep pool small (SUPER important)
+    std::vector<RankedPath> pool;
+    pool.reserve(keep + 1);
+
+    std::vector<Path> batch;
+    std::vector<RoutedPath> timed;
+    std::vector<char> ok;
+    int next_seq = 0;
+    uint64_t generation = routingGeneration();
+
     for (; budget <= cap; budget *= 2) {
-        auto candidates = candidatePaths(src, dst, budget, c.max_interchanges, c);
+        if (routingGeneration() != generation) { // Superseded, nobody is waiting for a wider search
+            break;
+        }
 
-        for (Path& p : candidates) {
-            std::string key = hashPath(p);
-            if (seen_paths.count(key)) {
-                continue;
+        if (budget > std::max(1, initial_budget)) {
+            traceCount(TRACE_BUDGET_DOUBLINGS);
+        }
+
+        batch.clear();
+        {
+            StageTimer timer(TRACE_CANDIDATES);
+
+            if (c.max_interchanges >= 0) {
+                extendCandidateSearch(search, dst, budget, c.max_interchanges, c);
             }
-            seen_paths.insert(key);
 
-            try {
+            traceCount(TRACE_CANDIDATES_GENERATED, (int)search.results.size() - evaluated);
+
+            for (; evaluated < (int)search.results.size(); ++evaluated) {
+                Path p = candidatePath(search, search.results[evaluated]);
+
+                if (seen_paths.insert(pathFingerprint(p)).second) {
+                    batch.push_back(std::move(p));
+                }
+            }
+        }
+
+        // Each candidate is timed on its own, so they fan out across the pool into their own slots
+        timed.assign(batch.size(), RoutedPath{});
+        ok.assign(batch.size(), 0);
+
+        {
+            StageTimer timer(TRACE_PATH_ETA);
+
+            parallelFor((int)batch.size(), [&](int i) {
+                PathTimes times;
+
                 // p = simplifyPath(p, constraints);
 
-                PathTimes times = pathETA(p, curr_time, day_type);
+                if (tryPathETA(batch[i], curr_time, day_type, &times) != ETA_OK) { // invalid at this time / schedule / etc -> skip
+                    return;
+                }
 
-                // total_mins from query time to final arrival time (times.back().first)
-                int total_mins = timeToMins(times.back().first) - timeToMins(curr_time);
+                // Enforce must_lines (global path property) *after* evaluation
+                for (Line l : c.must_lines) {
+                    if (!usesLine(batch[i], l)) {
+                        return;
+                    }
+                }
 
-                RoutedPath rp;
-                rp.path = p;
-                rp.times = times;
-                rp.total_mins = total_mins;
-                rp.interchange_count = countInterchanges(p);
+                RoutedPath& rp = timed[i];
+                rp.path = std::move(batch[i]);
+                rp.times = std::move(times);
+                rp.total_mins = timeToMins(rp.times.back().first) - timeToMins(curr_time); // from query time to final arrival time (times.back().first)
+                rp.interchange_count = countInterchanges(rp.path);
+                ok[i] = 1;
+            });
+        }
+
+        int accepted = (int)std::count(ok.begin(), ok.end(), 1);
+        traceCount(TRACE_CANDIDATES_EVALUATED, (int)batch.size());
+        traceCount(TRACE_CANDIDATES_REJECTED, (int)batch.size() - accepted);
+
+        {
+            StageTimer timer(TRACE_RANKING);
+
+            // Merge in candidate order, replacing the worst of a full pool
+            for (int i = 0; i < (int)timed.size(); ++i) {
+                if (!ok[i]) {
+                    continue;
+                }
+
+                RankedPath ranked{std::move(timed[i]), next_seq + i};
 
-                routed.push_back(rp);
-            } catch (...) {
-                // invalid at this time / schedule / etc -> skip
+                if ((int)pool.size() < keep) {
+                    pool.push_back(std::move(ranked));
+                    std::push_heap(pool.begin(), pool.end(), ranksBefore);
+                } else if (ranksBefore(ranked, pool.front())) {
+                    std::pop_heap(pool.begin(), pool.end(), ranksBefore);
+                    pool.back() = std::move(ranked);
+                    std::push_heap(pool.begin(), pool.end(), ranksBefore);
+                }
             }
         }
-
-        // Enforce must_lines (global path property) *after* evaluation
-        if (!c.must_lines.empty()) {
-            routed.erase(
-                    std::remove_if(routed.begin(), routed.end(),
-                                   [&](const RoutedPath& rp) {
-                                       for (Line l : c.must_lines) {
-                                           if (!usesLine(rp.path, l)) return true;
-                                       }
-                                       return false;
-                                   }
-                    ),
-                    routed.end()
-            );
-        }
-
-        // Rank current pool
-        std::sort(routed.begin(), routed.end(),
-                  [&](const RoutedPath& a, const RoutedPath& b) {
-                      return betterThan(a, b, c);
-                  }
-        );
-
-        // keep pool small (SUPER important)
-        int keep = std::max(k * 10, 30); // tune
-        if ((int)routed.size() > keep) routed.resize(keep);
+        next_seq += (int)timed.size();
 
         // now break early
-        if ((int)routed.size() >= k) {
+        if ((int)pool.size() >= k) {
             break;
         }
     }
 
-    for (auto& rp : routed) {
-        rp.path = simplifyPath(rp.path, c);
-        rp.times = pathETA(rp.path, curr_time, day_type);
-        rp.total_mins = timeToMins(rp.times.back().first) - timeToMins(curr_time);
+    // Simplified paths are timed again, also one per slot
+    {
+        StageTimer timer(TRACE_PATH_ETA);
+
+        parallelFor((int)pool.size(), [&](int i) {
+            RoutedPath& rp = pool[i].rp;
+            Path simple = simplifyPath(rp.path, c);
+            PathTimes times;
+
+            if (tryPathETA(simple, curr_time, day_type, &times) != ETA_OK) { // Keep the full path and its times
+                return;
+            }
+
+            rp.path = std::move(simple);
+            rp.times = std::move(times);
+            rp.total_mins = timeToMins(rp.times.back().first) - timeToMins(curr_time);
+        });
     }
 
     // Rank final pool
-    std::sort(routed.begin(), routed.end(),
-              [&](const RoutedPath& a, const RoutedPath& b) {
-                  return betterThan(a, b, c);
-              }
-    );
-
-    if (routed.size() > k) {
-        routed.resize(k);
+    {
+        StageTimer timer(TRACE_RANKING);
+
+        std::sort(pool.begin(), pool.end(), ranksBefore);
+
+        if (pool.size() > k) {
+            pool.resize(k);
+        }
+    }
+
+    std::vector<RoutedPath> routed;
+    routed.reserve(pool.size());
+
+    for (RankedPath& ranked : pool) {
+        routed.push_back(std::move(ranked.rp));
     }
 
     return routed;
@@ -9,9 +9,13 @@
 
 #include "../utils/utils.h"
 
+#include <cstdint>
 #include <vector>
 #include <unordered_set>
 
+// ======== DEFINITIONS ======== //
+enum RouteAlgorithm {CANDIDATE_SEARCH, CONNECTION_SCAN, RAPTOR}; // routeEngine's candidate budget vs connection_scan.h vs raptor.h. Same order as MrtEngine.RouteAlgorithm
+
 // ======== STRUCTS ======== //
 typedef struct routedpath {
     Path path;
@@ -36,13 +40,13 @@ typedef struct routeconstraints {
     std::unordered_set<int> avoid_station_keys;
 } RouteConstraints;
 
-typedef struct candstate {
-    Station stn;
-    Path path;
+typedef struct candnode { // One candidatePaths state, its path is the chain of parents
+    uint16_t stn; // station id, see network.h
+    uint8_t line_mask;
     int interchange_count;
     int checkpoint_mask;
-    int line_mask;
-} CandState;
+    int parent; // index into the search arena, -1 at src
+} CandNode;
 
 // ======== HELPERS ======== //
 bool stationInList(const Station& s, const std::vector<Station>& v);
@@ -52,6 +56,8 @@ int countInterchanges(const Path& path);
 bool usesLine(const Path& path, Line line);
 
 std::string hashPath(const Path& p);
+uint64_t pathFingerprint(const Path& p); // 64-bit FNV-1a of the stations, for dedup without building strings
+bool samePath(const Path& a, const Path& b);
 Path simplifyPath(const Path& p, const RouteConstraints& c); // E.g. R07 R06 R05 gets simplifed to R07 R05
 Path mergePaths(const Path& a, const Path& b);
 bool betterThan(const RoutedPath& a, const RoutedPath& b, const RouteConstraints& c); // Ranking/tie breaker
@@ -63,14 +69,22 @@ bool betterThan(const RoutedPath& a, const RoutedPath& b, const RouteConstraints
 std::vector<Path> candidatePaths(const Station& src, const Station& dst, int max_paths, int max_interchanges, const RouteConstraints& constraints);
 
 // ======== LAYER 2: REAL LIFE PATH ======== //
-// Default: top 3 by time (tie break by interchanges), fixed candidate budget
-std::vector<RoutedPath> routeDefault(const Station& src, const Station& dst, Time curr_time, int day_type, int k = 3);
-
-// Least interchange: top 3 by interchanges (tie-break by time), fixed candidate budget
-std::vector<RoutedPath> routeLeastInterchange(const Station& src, const Station& dst, Time curr_time, int day_type, int k = 3);
-
-// Custom: supports must/avoid, uses adaptive widening if needed
-std::vector<RoutedPath> routeCustom(const Station& src, const Station& dst, Time curr_time, int day_type, const RouteConstraints& constraints, int k = 3);
+// Default: top 3 by time (tie break by interchanges). CONNECTION_SCAN/RAPTOR give the exact earliest arrival, CANDIDATE_SEARCH uses a fixed candidate budget
+// RAPTOR by default: its rounds give the alternatives in the same pass, CONNECTION_SCAN rescans the whole day once per alternative and is ~10x slower for the same arrival
+std::vector<RoutedPath> routeDefault(const Station& src, const Station& dst, Time curr_time, int day_type, int k = 3, RouteAlgorithm algorithm = RAPTOR);
+
+// Least interchange: top 3 by interchanges (tie-break by time). RAPTOR gives the exact Pareto set, CANDIDATE_SEARCH uses a fixed candidate budget
+std::vector<RoutedPath> routeLeastInterchange(const Station& src, const Station& dst, Time curr_time, int day_type, int k = 3, RouteAlgorithm algorithm = RAPTOR);
+
+// Custom: supports must/avoid. Without must constraints RAPTOR handles it exactly, otherwise candidate search with adaptive widening
+std::vector<RoutedPath> routeCustom(const Station& src, const Station& dst, Time curr_time, int day_type, const RouteConstraints& constraints, int k = 3, RouteAlgorithm algorithm = RAPTOR);
+
+// ======== CANCELLATION ======== //
+// Cooperative: routeEngine checks between candidate budgets, RAPTOR between rounds and the connection scan every few thousand connections
+// Both scans, their alternatives and profile departures stop once a newer cancel comes in, and what they return is partial: callers throw it away
+// Both go through currentEngineState(), so a cancel only reaches queries of the same engine
+void cancelRouting();
+uint64_t routingGeneration();
 
 // ======== CORE ========= //
 std::vector<RoutedPath> routeEngine(const Station& src, const Station& dst, Time curr_time, int day_type, const RouteConstraints& constraints, int k, int initial_budget, int hard_cap); // Takes all candidates, evaluates them wrt real time, filter must_lines, then rank
\ No newline at end of file
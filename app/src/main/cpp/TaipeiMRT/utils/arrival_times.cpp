@@ -7,6 +7,9 @@
 
 #include "arrival_times.h"
 #include "basic.h"
+#include "engine_context.h"
+#include "timetable.h"
+#include "trace.h"
 #include "utils.h"
 
 #include <stdexcept>
@@ -14,6 +17,9 @@
 #include <filesystem>
 #include <iostream>
 #include <algorithm>
+#include <list>
+#include <mutex>
+#include <unordered_map>
 
 // ======== DEFINITIONS ======== //
 // Make the following 1-idxed
@@ -76,6 +82,8 @@ const std::vector<std::vector<Time>> BR_LAST_TRAINS = {
     {INVALID_TIME, Time{24, 0}} // BR24
 };
 
+const int SCHEDULE_CACHE_CAPACITY = 64;
+
 // ======== LOADING ======== //
 std::string dayGroup(const Line& line, int day_type) {
     if (day_type <= 0 || day_type > 7) {
@@ -109,6 +117,8 @@ std::vector<std::string> split(const std::string& s) {
 
 // Rmb to have exception for BR line
 std::vector<Train> loadStationSchedule(const Station& stn, int day_type) {
+    StageTimer timer(TRACE_SCHEDULE_LOAD); // Network builds, and the CSV fallback's cache misses
+
     // Detect wrong inputs
     if (day_type <= 0 || day_type > 7) {
         throw std::invalid_argument("Invalid day type: " + std::to_string(day_type));
@@ -122,18 +132,37 @@ std::vector<Train> loadStationSchedule(const Station& stn, int day_type) {
         throw std::invalid_argument("BR line stations don't have station schedules provided, we only have a rough estimate of how many minutes are between trains.");
     }
 
+    // Parse info
+    std::vector<Train> train_schedule;
+
+    // Packed timetable: already parsed and sorted, just unpack
+    StationTimetable tt;
+    if (stationTimetable(stn, day_type, &tt)) {
+        train_schedule.reserve(tt.count);
+
+        for (int i = 0; i < tt.count; ++i) {
+            Train new_train;
+            new_train.arrive = stn;
+            new_train.time = tt.trains[i].time;
+            new_train.direction = tt.trains[i].direction;
+            new_train.train_dest = packedTrainDest(tt.trains[i]);
+
+            train_schedule.push_back(new_train);
+        }
+
+        return train_schedule;
+    }
+
     // Find correct file
     // Reads arrival_times/generated/{LINE}/{STATION}_{DAYS}.csv
-    std::string file_name = DATA_DIR + "/arrival_times/generated/" + LINE_TO_STR.at(stn.line) + "/" + stationToCode(stn) + "_" + dayGroup(stn.line, day_type) + ".csv";
+    const EngineContext* ctx = currentEngine(); // nullptr before any setDataDir, then there's nothing to read
+    std::string data_dir = ctx != nullptr ? ctx->data_dir : "";
 
-    std::cerr << "DATA_DIR = " << DATA_DIR << std::endl;
+    std::string file_name = data_dir + "/arrival_times/generated/" + LINE_TO_STR.at(stn.line) + "/" + stationToCode(stn) + "_" + dayGroup(stn.line, day_type) + ".csv";
 
     std::ifstream fin(file_name);
     std::string read_line;
 
-    // Parse info
-    std::vector<Train> train_schedule;
-
     while (std::getline(fin, read_line)) {
         std::vector<std::string> train_info = split(read_line); // line,destination,direction,time (where line is like e.g. R-1)
 
@@ -155,6 +184,77 @@ std::vector<Train> loadStationSchedule(const Station& stn, int day_type) {
     return train_schedule;
 }
 
+// LRU order: front is most recently used
+typedef struct schedulecacheentry {
+    int key;
+    ScheduleRef schedule;
+} ScheduleCacheEntry;
+
+static std::mutex SCHEDULE_CACHE_MUTEX;
+static std::list<ScheduleCacheEntry> SCHEDULE_CACHE_LRU;
+static std::unordered_map<int, std::list<ScheduleCacheEntry>::iterator> SCHEDULE_CACHE_INDEX;
+static ScheduleCacheStats SCHEDULE_CACHE_STATS = {0, 0, 0, 0, SCHEDULE_CACHE_CAPACITY};
+
+// Per context too, so a CSV context and a second data dir each keep their own schedules
+static int scheduleCacheKey(const Station& stn, int day_type) {
+    return ((engineSlot() * 10 + (int)stn.line) * 100 + stn.stn_num) * 4 + dayGroupIdx(stn.line, day_type);
+}
+
+ScheduleRef cachedStationSchedule(const Station& stn, int day_type) {
+    int key = scheduleCacheKey(stn, day_type); // Also rejects invalid day types
+
+    {
+        std::lock_guard<std::mutex> lock(SCHEDULE_CACHE_MUTEX);
+
+        auto it = SCHEDULE_CACHE_INDEX.find(key);
+        if (it != SCHEDULE_CACHE_INDEX.end()) {
+            SCHEDULE_CACHE_LRU.splice(SCHEDULE_CACHE_LRU.begin(), SCHEDULE_CACHE_LRU, it->second);
+            ++SCHEDULE_CACHE_STATS.hits;
+            return it->second->schedule;
+        }
+
+        ++SCHEDULE_CACHE_STATS.misses;
+    }
+
+    // Load without holding the lock so other stations aren't blocked on file I/O (two threads may both load the same miss, which is harmless)
+    ScheduleRef schedule = std::make_shared<const std::vector<Train>>(loadStationSchedule(stn, day_type));
+
+    std::lock_guard<std::mutex> lock(SCHEDULE_CACHE_MUTEX);
+
+    auto it = SCHEDULE_CACHE_INDEX.find(key);
+    if (it != SCHEDULE_CACHE_INDEX.end()) { // Someone else filled it meanwhile
+        SCHEDULE_CACHE_LRU.splice(SCHEDULE_CACHE_LRU.begin(), SCHEDULE_CACHE_LRU, it->second);
+        return it->second->schedule;
+    }
+
+    SCHEDULE_CACHE_LRU.push_front(ScheduleCacheEntry{key, schedule});
+    SCHEDULE_CACHE_INDEX[key] = SCHEDULE_CACHE_LRU.begin();
+
+    while ((int)SCHEDULE_CACHE_LRU.size() > SCHEDULE_CACHE_CAPACITY) {
+        SCHEDULE_CACHE_INDEX.erase(SCHEDULE_CACHE_LRU.back().key);
+        SCHEDULE_CACHE_LRU.pop_back();
+        ++SCHEDULE_CACHE_STATS.evictions;
+    }
+
+    return schedule;
+}
+
+ScheduleCacheStats scheduleCacheStats() {
+    std::lock_guard<std::mutex> lock(SCHEDULE_CACHE_MUTEX);
+
+    ScheduleCacheStats stats = SCHEDULE_CACHE_STATS;
+    stats.size = (int)SCHEDULE_CACHE_LRU.size();
+    return stats;
+}
+
+void clearScheduleCache() {
+    std::lock_guard<std::mutex> lock(SCHEDULE_CACHE_MUTEX);
+
+    SCHEDULE_CACHE_LRU.clear();
+    SCHEDULE_CACHE_INDEX.clear();
+    SCHEDULE_CACHE_STATS = {0, 0, 0, 0, SCHEDULE_CACHE_CAPACITY};
+}
+
 void printTrainSchedule(const std::vector<Train>& train_schedule) {
     for (Train t : train_schedule) {
         std::cout << stationToCode(t.arrive) << " " << t.time << " " << t.direction << " " << stationToCode(t.train_dest) << std::endl;
@@ -163,6 +263,10 @@ void printTrainSchedule(const std::vector<Train>& train_schedule) {
 
 // ======== QUERY ======== //
 bool oneTrainReachDest(const Station& stn, const Station& dest, Train train) {
+    return oneTrainReachDest(stn, dest, train.train_dest);
+}
+
+bool oneTrainReachDest(const Station& stn, const Station& dest, const Station& train_dest) {
     // Detect exceptions
     if (!validStation(stn)) {
         throw std::invalid_argument("Invalid station stn");
@@ -182,30 +286,30 @@ bool oneTrainReachDest(const Station& stn, const Station& dest, Train train) {
     }
 
     if (stn.line != O) { // Orange line is diff
-        if (stn.stn_num < dest.stn_num && stn.stn_num < train.train_dest.stn_num) { // Increasing
-            return dest.stn_num <= train.train_dest.stn_num;
-        } else if (stn.stn_num > dest.stn_num && stn.stn_num > train.train_dest.stn_num) { // Decreasing
-            return dest.stn_num >= train.train_dest.stn_num;
+        if (stn.stn_num < dest.stn_num && stn.stn_num < train_dest.stn_num) { // Increasing
+            return dest.stn_num <= train_dest.stn_num;
+        } else if (stn.stn_num > dest.stn_num && stn.stn_num > train_dest.stn_num) { // Decreasing
+            return dest.stn_num >= train_dest.stn_num;
         } else { // Wrong dir
             return false;
         }
     } else {
         // Rule out wrong direction stuff
-        if ((stn.stn_num > dest.stn_num && stn.stn_num <= train.train_dest.stn_num) || (stn.stn_num < dest.stn_num && stn.stn_num >= train.train_dest.stn_num)) {
+        if ((stn.stn_num > dest.stn_num && stn.stn_num <= train_dest.stn_num) || (stn.stn_num < dest.stn_num && stn.stn_num >= train_dest.stn_num)) {
             return false;
         }
 
         if (stn.stn_num > dest.stn_num) { // Decreasing branch (definitely fine since the train is a valid train)
-            return dest.stn_num >= train.train_dest.stn_num;
+            return dest.stn_num >= train_dest.stn_num;
         } else { // Increasing branch
             // O12 is the last station that overlaps both branches
             if (dest.stn_num <= 12) {
-                return dest.stn_num <= train.train_dest.stn_num;
-            } else if (dest.stn_num <= train.train_dest.stn_num) { // Check the correct branch given that its number is plausibly reachable
+                return dest.stn_num <= train_dest.stn_num;
+            } else if (dest.stn_num <= train_dest.stn_num) { // Check the correct branch given that its number is plausibly reachable
                 if (dest.stn_num < 50) { // dest in O01 branch
-                    return train.train_dest.stn_num < 50;
+                    return train_dest.stn_num < 50;
                 } else { // dest in O50 branch
-                    return train.train_dest.stn_num >= 50;
+                    return train_dest.stn_num >= 50;
                 }
             } else { // Impossible
                 return false;
@@ -227,6 +331,24 @@ Time nextTrainTime(const Station& stn, int day_type, int now_mins, const Station
         throw std::invalid_argument("Invalid station dest");
     }
 
+    if (sameStation(stn, dest)) {
+        throw std::invalid_argument("stn and dest are the same station");
+    }
+
+    if (day_type <= 0 || day_type > 7) {
+        throw std::invalid_argument("Invalid day_type: " + std::to_string(day_type));
+    }
+
+    int mins = nextTrainMins(stn, day_type, now_mins, dest);
+
+    return mins < 0 ? INVALID_TIME : minsToTime(mins);
+}
+
+int nextTrainMins(const Station& stn, int day_type, int now_mins, const Station& dest) {
+    if (!validStation(stn) || !validStation(dest) || sameStation(stn, dest) || day_type <= 0 || day_type > 7) {
+        return -1;
+    }
+
     // Brown line: Can give worst case approximations based on timeframe
     if (stn.line == BR && dest.line == BR) {
         /*
@@ -240,31 +362,53 @@ Time nextTrainTime(const Station& stn, int day_type, int now_mins, const Station
         (2) 23:00以後：約12分鐘。
         */
 
-        Time first_br_train = firstTrainTime(stn, day_type, dest);
-        Time last_br_train = lastTrainTime(stn, day_type, dest);
+        int dir = stn.stn_num < dest.stn_num ? 0 : 1;
+        const Time& first_br_train = BR_FIRST_TRAINS[stn.stn_num][dir];
+        const Time& last_br_train = BR_LAST_TRAINS[stn.stn_num][dir];
 
         if (timeToMins(first_br_train) > now_mins) {
-            return first_br_train;
-        } else if (timeToMins(last_br_train) < now_mins) {
-            return INVALID_TIME;
-        } else { // Normal: just use worst case approximations
-            if (day_type <= 0 || day_type > 7) {
-                throw std::invalid_argument("Invalid day_type: " + std::to_string(day_type));
+            return timeToMins(first_br_train);
+        } else if (timeToMins(last_br_train) < now_mins) { // Also covers no train that way, which is INVALID_TIME
+            return -1;
+        } else if (now_mins >= timeToMins(Time{23, 0})) { // Normal: just use worst case approximations
+            return now_mins + 12;
+        } else if (day_type <= 5 && ((now_mins >= timeToMins(Time{7, 0}) && now_mins <= timeToMins(Time{9, 0})) || (now_mins >= timeToMins(Time{17, 0}) && now_mins <= timeToMins(Time{19, 30})))) {
+            return now_mins + 4;
+        } else {
+            return now_mins + 10;
+        }
+    }
+
+    if (stn.line == BR || stn.line != dest.line) { // No timetable / no single train
+        return -1;
+    }
+
+    // Otherwise
+    StationTimetable tt;
+    if (stationTimetable(stn, day_type, &tt)) {
+        const PackedTrain* end = tt.trains + tt.count;
+
+        // Find the closest entry that has time >= now_mins
+        const PackedTrain* it = std::lower_bound(
+            tt.trains,
+            end,
+            now_mins,
+            [](const PackedTrain& t, int value) {
+                return t.time < value;
             }
+        );
 
-            if (now_mins >= timeToMins(Time{23, 0})) {
-                return minsToTime(now_mins + 12);
-            } else if (day_type <= 5 && ((now_mins >= timeToMins(Time{7, 0}) && now_mins <= timeToMins(Time{9, 0})) || (now_mins >= timeToMins(Time{17, 0}) && now_mins <= timeToMins(Time{19, 30})))) {
-                return minsToTime(now_mins + 4);
-            } else {
-                return minsToTime(now_mins + 10);
+        for (; it != end; ++it) {
+            if (oneTrainReachDest(stn, dest, packedTrainDest(*it))) {
+                return it->time;
             }
         }
-    }
 
-    // Otherwise
+        return -1;
+    }
 
-    std::vector<Train> train_schedule = loadStationSchedule(stn, day_type);
+    ScheduleRef schedule = cachedStationSchedule(stn, day_type);
+    const std::vector<Train>& train_schedule = *schedule;
 
     // Find the closest entry that has time >= now_mins
     auto it = std::lower_bound(
@@ -275,20 +419,14 @@ Time nextTrainTime(const Station& stn, int day_type, int now_mins, const Station
             return t.time < value;
         }
     );
-    
-    if (it != train_schedule.end()) {
-        // *it is the first Train with t.time >= target_time
-        while (!oneTrainReachDest(stn, dest, *it)) {
-            if (++it == train_schedule.end()) {
-                return INVALID_TIME;
-            }
-        }
 
-        // Otherwise it's a valid time
-        return minsToTime(it->time);
-    } else { // No entry with such a time
-        return INVALID_TIME;
+    for (; it != train_schedule.end(); ++it) {
+        if (oneTrainReachDest(stn, dest, *it)) {
+            return it->time;
+        }
     }
+
+    return -1; // No entry with such a time
 }
 
 Time firstTrainTime(const Station& stn, int day_type, const Station& dest) {
@@ -314,20 +452,29 @@ Time firstTrainTime(const Station& stn, int day_type, const Station& dest) {
 
 Time lastTrainTime(const Station& stn, int day_type, const Station& dest) {
     if (stn.line != BR) { // Given timetable
-        std::vector<Train> train_schedule = loadStationSchedule(stn, day_type);
+        StationTimetable tt;
+        if (stationTimetable(stn, day_type, &tt)) {
+            // Traverse from the end
+            for (int i = tt.count - 1; i >= 0; --i) {
+                if (oneTrainReachDest(stn, dest, packedTrainDest(tt.trains[i]))) {
+                    return minsToTime(tt.trains[i].time);
+                }
+            }
 
-        if (train_schedule.empty()) {
             return INVALID_TIME;
         }
 
-        auto it = train_schedule.rbegin();
+        ScheduleRef schedule = cachedStationSchedule(stn, day_type);
+        const std::vector<Train>& train_schedule = *schedule;
 
         // Traverse from the end
-        while (!oneTrainReachDest(stn, dest, *it)) {
-            --it;
+        for (auto it = train_schedule.rbegin(); it != train_schedule.rend(); ++it) {
+            if (oneTrainReachDest(stn, dest, *it)) {
+                return minsToTime(it->time);
+            }
         }
 
-        return minsToTime(it->time);
+        return INVALID_TIME;
     } else { // Deal with it separately
         if (!validStation(stn)) {
             throw std::invalid_argument("Invalid station stn");
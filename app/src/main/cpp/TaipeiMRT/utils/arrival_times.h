@@ -9,11 +9,10 @@
 
 #include "basic.h"
 
+#include <memory>
 #include <string>
 #include <vector>
 
-extern std::string DATA_DIR;
-
 // Read from the arrival_times/generated folder
 // National holidays count as 7
 
@@ -25,23 +24,43 @@ typedef struct train {
     Station train_dest; // final station
 } Train;
 
+typedef std::shared_ptr<const std::vector<Train>> ScheduleRef;
+
+typedef struct schedulecachestats {
+    long long hits;
+    long long misses;
+    long long evictions;
+    int size;
+    int capacity;
+} ScheduleCacheStats;
+
 // ======== DEFINITIONS ======== //
 extern const std::vector<std::vector<Time>> BR_FIRST_TRAINS;
 extern const std::vector<std::vector<Time>> BR_LAST_TRAINS;
 
+extern const int SCHEDULE_CACHE_CAPACITY; // Max (station, day group) schedules kept in memory
+
 // ======== LOADING ======== //
 std::string dayGroup(const Line& line, int day_type);
 
-// Reads arrival_times/generated/{LINE}/{STATION}_{DAYS}.csv (only R does 6 and 7 separately, others do 67)
+// Reads the packed timetable if one is mapped (see timetable.h), otherwise arrival_times/generated/{LINE}/{STATION}_{DAYS}.csv under currentEngine()'s data dir (only R does 6 and 7 separately, others do 67)
 std::vector<Train> loadStationSchedule(const Station& stn, int day_type); // day_type: 1-7
 
+// Shared LRU cache in front of loadStationSchedule, keyed by (context, station, day group). Safe to call from several threads at once
+// Only for the CSV fallback: with timetable.bin mapped every reader goes to stationTimetable instead, so its stats say nothing about routing then
+ScheduleRef cachedStationSchedule(const Station& stn, int day_type);
+ScheduleCacheStats scheduleCacheStats();
+void clearScheduleCache();
+
 void printTrainSchedule(const std::vector<Train>& train_schedule);
 
 // ======== QUERY ======== //
 bool oneTrainReachDest(const Station& stn, const Station& dest, Train train);
+bool oneTrainReachDest(const Station& stn, const Station& dest, const Station& train_dest);
 
 Time nextTrainTime(const Station& stn, int day_type, const Time& curr_time, const Station& dest); // Returns next arrival time in minutes, or {-1, -1} if none
 Time nextTrainTime(const Station& stn, int day_type, int now_mins, const Station& dest);
+int nextTrainMins(const Station& stn, int day_type, int now_mins, const Station& dest); // Same in minutes, but -1 for no train or bad input instead of throwing
 
 Time firstTrainTime(const Station& stn, int day_type, const Station& dest);
 Time lastTrainTime(const Station& stn, int day_type, const Station& dest);
@@ -0,0 +1,111 @@
+############################################
+# Copyright (c) 2026 Shun/翔海 (@shun4midx) #
+# Project: Taipei-MRT-Scheduler            #
+# File Type: Python file                   #
+# File: compile_timetable.py               #
+############################################
+
+# Packs every generated/{LINE}/{STATION}_{DAYS}.csv into one generated/timetable.bin, which timetable.cpp mmaps instead of parsing CSVs on every query.
+# Run this after parse_non_y_arrival_times.py / parse_y_arrival_times.py, then copy generated/ into app/src/main/assets/arrival_times/generated like the CSVs.
+#
+# Layout (little endian):
+#   header  : char magic[4] = "TMRT", u16 version, u16 num_lines, u16 max_stations, u16 num_day_groups, u32 num_records
+#   index   : num_lines * max_stations * num_day_groups entries of {u32 first_record, u32 record_count}, indexed by [line][stn_num][day_group]
+#   records : {u16 time, u8 direction, u8 dest_line, u8 dest_stn_num, u8 reserved}, sorted by time within each index entry
+
+import csv, os, re, struct
+
+MAGIC = b"TMRT"
+VERSION = 1
+
+# Must match enum Line in basic.h
+LINE_IDS = {"R": 0, "O": 1, "G": 2, "BL": 3, "BR": 4, "Y": 5}
+
+# Must match dayGroupIdx() in timetable.cpp
+DAY_GROUP_IDS = {"12345": 0, "6": 1, "7": 2, "67": 3}
+
+MAX_STATIONS = 64
+
+HEADER = struct.Struct("<4sHHHHI")
+INDEX_ENTRY = struct.Struct("<II")
+RECORD = struct.Struct("<HBBBB")
+
+CODE_RE = re.compile(r"^([A-Z]{1,2})([0-9]{2})$") # Same as codeToStation, so e.g. R22A is skipped just like the CSV loader does
+
+def parse_code(code):
+    m = CODE_RE.match(code)
+    if not m or m.group(1) not in LINE_IDS:
+        return None
+    return LINE_IDS[m.group(1)], int(m.group(2))
+
+def read_station_csv(path):
+    records = []
+
+    with open(path, encoding="utf8", newline="") as f:
+        reader = csv.reader(f)
+        next(reader, None) # header
+
+        for row in reader:
+            if len(row) < 4:
+                continue
+
+            dest = parse_code(row[1])
+            if dest is None:
+                continue
+
+            try:
+                direction = int(row[2])
+                time = int(row[3])
+            except ValueError:
+                continue
+
+            records.append((time, direction, dest[0], dest[1]))
+
+    records.sort(key=lambda r: r[0]) # Stable, so same-minute trains keep CSV order
+    return records
+
+def compile_timetable(generated_dir, out_path):
+    buckets = {}
+
+    for line in sorted(os.listdir(generated_dir)):
+        line_dir = os.path.join(generated_dir, line)
+        if not os.path.isdir(line_dir) or line not in LINE_IDS:
+            continue
+
+        for fn in sorted(os.listdir(line_dir)):
+            m = re.fullmatch(r"([A-Z]{1,2}[0-9]{2})_(\d+)\.csv", fn)
+            if not m or m.group(2) not in DAY_GROUP_IDS:
+                continue
+
+            stn = parse_code(m.group(1))
+            if stn is None or stn[1] >= MAX_STATIONS:
+                continue
+
+            buckets[(stn[0], stn[1], DAY_GROUP_IDS[m.group(2)])] = read_station_csv(os.path.join(line_dir, fn))
+
+    index = []
+    records = []
+
+    for line_id in range(len(LINE_IDS)):
+        for stn_num in range(MAX_STATIONS):
+            for group in range(len(DAY_GROUP_IDS)):
+                bucket = buckets.get((line_id, stn_num, group), [])
+                index.append((len(records), len(bucket)))
+                records.extend(bucket)
+
+    with open(out_path, "wb") as f:
+        f.write(HEADER.pack(MAGIC, VERSION, len(LINE_IDS), MAX_STATIONS, len(DAY_GROUP_IDS), len(records)))
+
+        for first, count in index:
+            f.write(INDEX_ENTRY.pack(first, count))
+
+        for time, direction, dest_line, dest_stn in records:
+            f.write(RECORD.pack(time, direction, dest_line, dest_stn, 0))
+
+    print(f"{out_path}: {len(buckets)} station files, {len(records)} trains")
+
+# Main
+if __name__ == "__main__":
+    GENERATED_BASE = "generated"
+
+    compile_timetable(GENERATED_BASE, os.path.join(GENERATED_BASE, "timetable.bin"))
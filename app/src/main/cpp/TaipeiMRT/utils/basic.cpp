@@ -232,12 +232,31 @@ bool validStation(const Station& station) {
 }
 
 bool validStation(int line_int, int stn_num) {
-    try {
-        getName(line_int, stn_num);
-        return true;
-    } catch (const std::exception& e) {
+    // Looked up on every hop of a search, so ask getName once per code up front instead of catching its exception every time
+    static const int MAX_STN_NUM = 100;
+
+    static const std::vector<bool> VALID = [] {
+        std::vector<bool> valid((Line::Y + 1) * MAX_STN_NUM, false);
+
+        for (int line = Line::R; line <= Line::Y; ++line) {
+            for (int num = 0; num < MAX_STN_NUM; ++num) {
+                try {
+                    getName(line, num);
+                    valid[line * MAX_STN_NUM + num] = true;
+                } catch (const std::exception& e) {
+                    // Not a station
+                }
+            }
+        }
+
+        return valid;
+    }();
+
+    if (line_int < Line::R || line_int > Line::Y || stn_num < 0 || stn_num >= MAX_STN_NUM) {
         return false;
     }
+
+    return VALID[line_int * MAX_STN_NUM + stn_num];
 }
 
 Station makeStation(int line_int, int stn_num) {
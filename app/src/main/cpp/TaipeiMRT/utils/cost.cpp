@@ -7,6 +7,8 @@
 
 #include "cost.h"
 
+#include <stdexcept>
+
 // ======== DEFINITIONS ======== //
 const std::vector<Station> STATION_ORDER = {
     // Brown line
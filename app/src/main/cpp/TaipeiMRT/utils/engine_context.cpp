@@ -0,0 +1,83 @@
+/********************************************
+ * Copyright (c) 2026 Shun/翔海 (@shun4midx) *
+ * Project: Taipei-MRT-Scheduler            *
+ * File Type: C++ file                      *
+ * File: engine_context.cpp                 *
+ ****************************************** */
+
+#include "engine_context.h"
+#include "timetable.h"
+
+#include <atomic>
+#include <mutex>
+#include <stdexcept>
+#include <vector>
+
+// ======== DEFINITIONS ======== //
+static std::mutex ENGINE_OPEN_MUTEX; // Only opening takes it, reading a context never does
+static std::vector<const EngineContext*> ENGINE_CONTEXTS; // Never freed, a context may still be in use by a query on another thread
+static std::atomic<const EngineContext*> LAST_ENGINE{nullptr};
+
+static EngineState UNSCOPED_STATE = {{0}, {0}, {}, {}, nullptr};
+
+static thread_local const EngineContext* CURRENT_ENGINE = nullptr;
+static thread_local EngineState* CURRENT_STATE = nullptr;
+
+// ======== SCOPES ======== //
+enginescope::enginescope(const EngineContext* ctx, EngineState* state) : prev(CURRENT_ENGINE), prev_state(CURRENT_STATE) {
+    if (ctx != nullptr) {
+        CURRENT_ENGINE = ctx;
+    }
+    if (state != nullptr) {
+        CURRENT_STATE = state;
+    }
+}
+
+enginescope::~enginescope() {
+    CURRENT_ENGINE = prev;
+    CURRENT_STATE = prev_state;
+}
+
+// ======== FUNCTIONS ======== //
+const EngineContext* openEngine(const std::string& data_dir, bool packed) {
+    std::lock_guard<std::mutex> lock(ENGINE_OPEN_MUTEX);
+
+    for (const EngineContext* ctx : ENGINE_CONTEXTS) {
+        if (ctx->data_dir == data_dir && ctx->packed == packed) {
+            LAST_ENGINE.store(ctx);
+            return ctx;
+        }
+    }
+
+    if ((int)ENGINE_CONTEXTS.size() >= MAX_ENGINE_CONTEXTS) {
+        throw std::invalid_argument("Too many engine contexts, at most " + std::to_string(MAX_ENGINE_CONTEXTS) + " data dirs can be opened");
+    }
+
+    // Each context maps its own file, so a second dir never reads the first one's trains
+    int slot = (int)ENGINE_CONTEXTS.size() + 1;
+    EngineContext* ctx = new EngineContext{data_dir, packed && loadTimetable(data_dir + "/arrival_times/generated/timetable.bin", slot), slot};
+
+    ENGINE_CONTEXTS.push_back(ctx);
+    LAST_ENGINE.store(ctx);
+    return ctx;
+}
+
+const EngineContext* currentEngine() {
+    return CURRENT_ENGINE != nullptr ? CURRENT_ENGINE : LAST_ENGINE.load();
+}
+
+int engineSlot() {
+    const EngineContext* ctx = currentEngine();
+    return ctx != nullptr ? ctx->slot : 0;
+}
+
+EngineState* newEngineState() {
+    EngineState* state = new EngineState();
+    state->fixed_time.store(0);
+    state->routing_generation.store(0);
+    return state;
+}
+
+EngineState* currentEngineState() {
+    return CURRENT_STATE != nullptr ? CURRENT_STATE : &UNSCOPED_STATE;
+}
@@ -0,0 +1,70 @@
+/********************************************
+ * Copyright (c) 2026 Shun/翔海 (@shun4midx) *
+ * Project: Taipei-MRT-Scheduler            *
+ * File Type: C++ Header file               *
+ * File: engine_context.h                   *
+ ****************************************** */
+
+#pragma once
+
+#include "next_trains.h"
+
+#include <atomic>
+#include <cstdint>
+#include <mutex>
+#include <string>
+
+// What a query runs against, in place of a global the JNI side used to assign while queries were reading it
+// A context is opened once per data directory, never changes after and is never freed, so any number of threads can read it without locking
+//
+// Thread safety, for the whole engine: every query function may be called from several threads at once
+// - Contexts, the mapped timetable and the built networks are immutable once published
+// - The mapped timetable, the schedule cache and the built networks are kept per context (see engineSlot), so a second data dir or a CSV context never gets the first one's trains
+// - The pinned clock, the cancel generation and the next-train board are per EngineState, i.e. per MrtEngine, so one engine's setClock or cancelRouting never reaches another's queries
+// - The schedule cache, trace and worker pool lock internally, and the per-query working vectors are per thread (see scratch.h)
+// - Only clearScheduleCache, clearTransitNetworks and clearRaptorNetworks should wait for queries to finish, anything they hand out stays valid regardless
+
+// ======== STRUCTS ======== //
+typedef struct enginecontext {
+    std::string data_dir; // Holds arrival_times/
+    bool packed; // timetable.bin is mapped, the CSVs under data_dir are only read if not
+    int slot; // 1 + its index in open order, see engineSlot
+} EngineContext;
+
+// What one engine (one MrtEngine) may change while its queries run, unlike the shared EngineContext
+typedef struct enginestate {
+    std::atomic<int> fixed_time; // day_type * 10000 + now_mins, 0 for the real clock
+    std::atomic<uint64_t> routing_generation; // Bumped by cancelRouting
+    std::mutex board_mutex;
+    NextTrainBoard board; // The station on screen, kept across minute ticks so its cursors only move forward. Empty (day_type 0) until the first query
+    const EngineContext* board_engine; // What board was built from, so a setDataDir to another dir rebuilds it
+} EngineState;
+
+// Makes ctx and state this thread's for its scope, e.g. one JNI call. nullptr keeps whatever was there
+typedef struct enginescope {
+    const EngineContext* prev;
+    EngineState* prev_state;
+
+    explicit enginescope(const EngineContext* ctx, EngineState* state = nullptr);
+    ~enginescope();
+} EngineScope;
+
+// ======== DEFINITIONS ======== //
+const int MAX_ENGINE_CONTEXTS = 8; // Distinct (data_dir, packed) pairs a process may open. Defined here so per-context caches can be plain arrays sized by it
+
+// ======== FUNCTIONS ======== //
+// The context for data_dir, mapping its timetable.bin unless packed is false (then the CSVs are read, like the bench's --csv). Same pointer for the same dir
+// Throws std::invalid_argument past MAX_ENGINE_CONTEXTS
+const EngineContext* openEngine(const std::string& data_dir, bool packed = true);
+
+// This thread's EngineScope, else the last one opened, else nullptr (nothing opened yet)
+const EngineContext* currentEngine();
+
+// currentEngine()'s slot, 0 if nothing is opened yet. Caches index by this, in [0, MAX_ENGINE_CONTEXTS]
+int engineSlot();
+
+// A fresh state on the real clock. Never freed, there's one per MrtEngine and only ever a handful of those
+EngineState* newEngineState();
+
+// This thread's EngineScope's, else one shared by everything that never set up a scope (the bench, host drivers)
+EngineState* currentEngineState();
@@ -178,7 +178,7 @@ const std::unordered_map<Line, std::vector<StationNode>> STATION_NODES = {
         StationNode{{Station{O, 19}}}, // O19
         StationNode{{Station{O, 20}}}, // O20
         StationNode{{Station{O, 21}}}, // O21,
-        INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, // 22-29 empty
+        INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, // 22-29 empty
         INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, // 30-39 empty
         INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, INVALID_STATION_NODE, // 40-49 empty
         StationNode{{Station{O, 50}}}, // O50
@@ -320,7 +320,7 @@ bool isInterchange(const Station& stn) {
     return (getStationNode(stn)->station_codes.size() > 1);
 }
 
-std::vector<std::pair<Station, int>> getTransfers(const Station& stn) {
+const std::vector<std::pair<Station, int>>& getTransfers(const Station& stn) {
     if (!validStation(stn)) {
         throw std::invalid_argument("Invalid station stn");
     }
@@ -329,28 +329,35 @@ std::vector<std::pair<Station, int>> getTransfers(const Station& stn) {
 }
 
 bool canTransfer(const Station& from, const Station& to) {
-    try {
-        getTransferTime(from, to);
-        return true;
-    } catch (const std::exception& e) {
-        return false;
-    }
+    return tryTransferTime(from, to) >= 0;
 }
 
 int getTransferTime(const Station& from, const Station& to) {
+    int mins = tryTransferTime(from, to);
+
+    if (mins < 0) {
+        throw std::invalid_argument("Station to is not transferrable from Station from");
+    }
+
+    return mins;
+}
+
+int tryTransferTime(const Station& from, const Station& to) {
     if (sameStation(from, to)) {
         return 0;
     }
 
-    const auto& from_transfers = getTransfers(from);
+    if (!validStation(from)) {
+        return -1;
+    }
 
-    for (const auto& s_pair : from_transfers) {
+    for (const auto& s_pair : TRANSFERS.at(from.line)[from.stn_num]) {
         if (sameStation(s_pair.first, to)) {
             return s_pair.second;
         }
     }
 
-    throw std::invalid_argument("Station to is not transferrable from Station from");
+    return -1;
 }
 
 std::vector<Station> getEquivalentStations(const Station& stn) {
@@ -0,0 +1,126 @@
+/********************************************
+ * Copyright (c) 2026 Shun/翔海 (@shun4midx) *
+ * Project: Taipei-MRT-Scheduler            *
+ * File Type: C++ file                      *
+ * File: next_trains.cpp                    *
+ ****************************************** */
+
+#include "next_trains.h"
+#include "arrival_times.h"
+#include "basic.h"
+#include "timetable.h"
+
+#include <algorithm>
+
+// ======== BUILDING ======== //
+NextTrainBoard buildNextTrainBoard(const Station& stn, int day_type, const std::vector<Station>& dests) {
+    NextTrainBoard board;
+    board.stn = stn;
+    board.day_type = day_type;
+    board.dests = dests;
+    board.times.assign(dests.size(), {});
+    board.cursors.assign(dests.size(), 0);
+    board.last_now = -1;
+    board.first_mins.assign(dests.size(), -1);
+    board.last_mins.assign(dests.size(), -1);
+
+    if (!validStation(stn) || day_type <= 0 || day_type > 7) {
+        return board;
+    }
+
+    if (stn.line == BR) { // No timetable, only first and last trains
+        for (int d = 0; d < dests.size(); ++d) {
+            if (dests[d].line != BR || dests[d].stn_num == stn.stn_num) {
+                continue;
+            }
+
+            int dir = stn.stn_num < dests[d].stn_num ? 0 : 1;
+            const Time& first = BR_FIRST_TRAINS[stn.stn_num][dir];
+            const Time& last = BR_LAST_TRAINS[stn.stn_num][dir];
+
+            board.first_mins[d] = sameTime(first, INVALID_TIME) ? -1 : timeToMins(first);
+            board.last_mins[d] = sameTime(last, INVALID_TIME) ? -1 : timeToMins(last);
+        }
+
+        return board;
+    }
+
+    // Schedule is time sorted, so each destination's list comes out sorted too
+    auto addTrain = [&](int time, const Station& train_dest) {
+        if (time < 0) { // Terminating here
+            return;
+        }
+
+        for (int d = 0; d < dests.size(); ++d) {
+            if (sameStation(dests[d], train_dest)) {
+                board.times[d].push_back(time);
+                break;
+            }
+        }
+    };
+
+    // Packed timetable: straight from the mapping, no copy of the records
+    StationTimetable tt;
+    if (stationTimetable(stn, day_type, &tt)) {
+        for (int i = 0; i < tt.count; ++i) {
+            addTrain(tt.trains[i].time, packedTrainDest(tt.trains[i]));
+        }
+
+        return board;
+    }
+
+    for (const Train& t : *cachedStationSchedule(stn, day_type)) {
+        addTrain(t.time, t.train_dest);
+    }
+
+    return board;
+}
+
+bool boardMatches(const NextTrainBoard& board, const Station& stn, int day_type, const std::vector<Station>& dests) {
+    if (!sameStation(board.stn, stn) || board.day_type != day_type || board.dests.size() != dests.size()) {
+        return false;
+    }
+
+    for (int d = 0; d < dests.size(); ++d) {
+        if (!sameStation(board.dests[d], dests[d])) {
+            return false;
+        }
+    }
+
+    return true;
+}
+
+// ======== QUERY ======== //
+void nextTrainMinutes(NextTrainBoard& board, int now_mins, int per_dest, int* out) {
+    std::fill(out, out + board.dests.size() * per_dest, -1);
+
+    if (board.stn.line == BR) {
+        for (int d = 0; d < board.dests.size() && per_dest >= 2; ++d) {
+            out[d * per_dest] = board.first_mins[d];
+            out[d * per_dest + 1] = board.last_mins[d];
+        }
+
+        return;
+    }
+
+    bool forward = board.last_now >= 0 && now_mins >= board.last_now;
+
+    for (int d = 0; d < board.dests.size(); ++d) {
+        const std::vector<int>& times = board.times[d];
+        int& cursor = board.cursors[d];
+
+        if (forward) { // Usually a step or two per minute
+            while (cursor < times.size() && times[cursor] < now_mins) {
+                ++cursor;
+            }
+        } else { // First query, or the clock went back: seek
+            cursor = std::lower_bound(times.begin(), times.end(), now_mins) - times.begin();
+        }
+
+        for (int j = 0; j < per_dest && cursor + j < times.size(); ++j) {
+            out[d * per_dest + j] = times[cursor + j] - now_mins;
+        }
+    }
+
+    board.last_now = now_mins;
+}
@@ -0,0 +1,35 @@
+/********************************************
+ * Copyright (c) 2026 Shun/翔海 (@shun4midx) *
+ * Project: Taipei-MRT-Scheduler            *
+ * File Type: C++ Header file               *
+ * File: next_trains.h                      *
+ ****************************************** */
+
+#pragma once
+
+#include "basic.h"
+
+#include <vector>
+
+// Next-train board for one station: departures split per destination once, then a cursor per destination that only moves forward with the clock
+// A minute tick costs O(destinations) and allocates nothing
+
+// ======== STRUCTS ======== //
+typedef struct nexttrainboard {
+    Station stn;
+    int day_type; // 1-7, the board is rebuilt when the day changes
+    std::vector<Station> dests;
+    std::vector<std::vector<int>> times; // dest idx -> departure minutes, sorted
+    std::vector<int> cursors; // dest idx -> first idx in times with time >= last_now
+    int last_now;
+    std::vector<int> first_mins; // BR only (no timetable), dest idx -> first train, -1 if none
+    std::vector<int> last_mins;
+} NextTrainBoard;
+
+// ======== BUILDING ======== //
+NextTrainBoard buildNextTrainBoard(const Station& stn, int day_type, const std::vector<Station>& dests);
+bool boardMatches(const NextTrainBoard& board, const Station& stn, int day_type, const std::vector<Station>& dests);
+
+// ======== QUERY ======== //
+// out[d * per_dest + j]: minutes until the jth next train to dests[d], -1 if none. For BR, out[d * per_dest] and out[d * per_dest + 1] are first and last train instead (minutes since midnight)
+void nextTrainMinutes(NextTrainBoard& board, int now_mins, int per_dest, int* out);
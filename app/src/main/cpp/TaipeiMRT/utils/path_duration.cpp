@@ -9,6 +9,8 @@
 #include "arrival_times.h"
 #include "interchange.h"
 #include <stdexcept>
+#include <algorithm>
+#include <cstdlib>
 
 // ======== DATA ======== //
 const int INVALID_DURATION = -114514; // I know I'm supposed to take this seriously but I clearly am not
@@ -77,19 +79,35 @@ int getLineDuration(const Station& stn1, const Station& stn2) {
         throw std::invalid_argument("Stations stn1 and stn2 must be on the same line");
     }
 
+    int mins = tryLineDuration(stn1, stn2);
+
+    if (mins == INVALID_DURATION) { // Needs to account for wait time so we can't rly calculate
+        throw std::invalid_argument("Although on the same line, it can't be done by being on the same branch, i.e. we need wait time between trains, so this is an invalid input.");
+    }
+
+    return mins;
+}
+
+int tryLineDuration(const Station& stn1, const Station& stn2) {
+    if (!validStation(stn1) || !validStation(stn2) || stn1.line != stn2.line) {
+        return INVALID_DURATION;
+    }
+
+    const std::vector<int>& prefix = LINE_PREFIX_DURATION.at(stn1.line);
+
     if (stn1.line != O || (stn1.stn_num < 50 && stn2.stn_num < 50)) { // Same branch
-        return std::abs(LINE_PREFIX_DURATION.at(stn2.line)[stn2.stn_num] - LINE_PREFIX_DURATION.at(stn1.line)[stn1.stn_num]);
-    } else { // Consider O line branching
-        if (stn1.stn_num < stn2.stn_num) {
-            if ((stn2.stn_num >= 50 && stn1.stn_num <= 12) || (stn1.stn_num >= 50 && stn2.stn_num >= 50)) { // Same branch
-                return LINE_PREFIX_DURATION.at(O)[stn2.stn_num] - LINE_PREFIX_DURATION.at(O)[stn1.stn_num];
-            } else { // Needs to account for wait time so we can't rly calculate
-                throw std::invalid_argument("Although on the same line, it can't be done by being on the same branch, i.e. we need wait time between trains, so this is an invalid input.");
-            }
-        } else {
-            return getLineDuration(stn2, stn1); // DRY
-        }
+        return std::abs(prefix[stn2.stn_num] - prefix[stn1.stn_num]);
+    }
+
+    // Consider O line branching
+    int lo = std::min(stn1.stn_num, stn2.stn_num);
+    int hi = std::max(stn1.stn_num, stn2.stn_num);
+
+    if ((hi >= 50 && lo <= 12) || (lo >= 50 && hi >= 50)) { // Same branch
+        return prefix[hi] - prefix[lo];
     }
+
+    return INVALID_DURATION;
 }
 
 PathMins perfectPathETA(const Path& stn_path) {
@@ -155,48 +173,74 @@ PathTimes pathETA(const Path& stn_path, Time curr_time, int day_type) {
     }
 
     PathTimes arrival_times;
+    ETAStatus status = tryPathETA(stn_path, curr_time, day_type, &arrival_times);
 
-    // Push first time
-    StationTime temp;
-    temp.first = curr_time;
+    if (status != ETA_OK) {
+        int i = (int)arrival_times.size(); // The leg that failed
 
-    // Iterate for all remaining times
-    for (int i = 0; i < stn_path.size() - 1; ++i) {// consider i and i+1
-        if (!validStation(stn_path[i + 1])) {
+        if (status == ETA_INVALID_INPUT) {
             throw std::invalid_argument("Invalid station stn_path[" + std::to_string(i + 1) + "]");
         }
 
-        if (stn_path[i].line == stn_path[i + 1].line) { // Take a train
-            try {
-                // Calculate train arrival time and then calculate the time it'll take that train to reach i + 1
-                // Fill "departure time"
-                temp.second = nextTrainTime(stn_path[i], day_type, temp.first, stn_path[i + 1]);
+        throw std::invalid_argument("No valid path from stn_path[" + std::to_string(i) + "] to stn_path[" + std::to_string(i + 1) + "]");
+    }
 
-                arrival_times.push_back(temp);
+    return arrival_times;
+}
 
-                // Next temp
-                temp.first = minsAfter(temp.second, getLineDuration(stn_path[i], stn_path[i + 1]));
-            } catch (const std::exception& e) {
-                throw std::invalid_argument("No valid path from stn_path[" + std::to_string(i) + "] to stn_path[" + std::to_string(i + 1) + "]");
+ETAStatus tryPathETA(const Path& stn_path, Time curr_time, int day_type, PathTimes* out) {
+    static const int MAX_MINS = 26 * 60; // Same bound as minsToTime
+
+    out->clear();
+
+    if (stn_path.size() < 2 || day_type <= 0 || day_type > 7 || curr_time.hr < 0 || curr_time.min < 0 || !validStation(stn_path[0])) {
+        return ETA_INVALID_INPUT;
+    }
+
+    out->reserve(stn_path.size());
+
+    int arr = timeToMins(curr_time); // When the user gets to stn_path[i]
+
+    if (arr > MAX_MINS) {
+        return ETA_INVALID_INPUT;
+    }
+
+    // Iterate for all remaining times
+    for (int i = 0; i + 1 < stn_path.size(); ++i) { // consider i and i+1
+        const Station& stn = stn_path[i];
+        const Station& next = stn_path[i + 1];
+
+        if (!validStation(next)) {
+            return ETA_INVALID_INPUT;
+        }
+
+        int dep = arr;
+        int mins;
+
+        if (stn.line == next.line) { // Take a train
+            dep = nextTrainMins(stn, day_type, arr, next);
+            mins = tryLineDuration(stn, next);
+
+            if (dep < 0 || dep > MAX_MINS || mins == INVALID_DURATION) {
+                return ETA_NO_TRAIN;
             }
         } else { // Check if it's interchange
-            if (canTransfer(stn_path[i], stn_path[i + 1])) {
-                // Fill "departure time"
-                temp.second = temp.first;
+            mins = tryTransferTime(stn, next);
 
-                arrival_times.push_back(temp);
-                
-                // Next temp
-                temp.first = minsAfter(temp.second, getTransferTime(stn_path[i], stn_path[i + 1]));
-            } else {
-                throw std::invalid_argument("No valid path from stn_path[" + std::to_string(i) + "] to stn_path[" + std::to_string(i + 1) + "]");
+            if (mins < 0) {
+                return ETA_NO_TRANSFER;
             }
         }
-    }
 
-    temp.second = temp.first;
+        if (dep + mins > MAX_MINS) { // Runs past the end of service
+            return stn.line == next.line ? ETA_NO_TRAIN : ETA_NO_TRANSFER;
+        }
 
-    arrival_times.push_back(temp);
+        out->push_back(StationTime{Time{arr / 60, arr % 60}, Time{dep / 60, dep % 60}});
+        arr = dep + mins;
+    }
 
-    return arrival_times;
-}
\ No newline at end of file
+    out->push_back(StationTime{Time{arr / 60, arr % 60}, Time{arr / 60, arr % 60}});
+
+    return ETA_OK;
+}
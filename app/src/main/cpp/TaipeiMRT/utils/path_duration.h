@@ -21,6 +21,8 @@ typedef std::vector<StationTime> PathTimes;
 
 typedef std::vector<int> PathMins;
 
+enum ETAStatus {ETA_OK, ETA_INVALID_INPUT, ETA_NO_TRAIN, ETA_NO_TRANSFER};
+
 // ======== DATA ======== //
 extern const int INVALID_DURATION;
 
@@ -28,9 +30,11 @@ extern const std::unordered_map<Line, std::vector<int>> LINE_DURATION; // Durati
 
 // ======== FUNCTIONS ======== //
 int getLineDuration(const Station& stn1, const Station& stn2); // One line without interchange
+int tryLineDuration(const Station& stn1, const Station& stn2); // Same, but INVALID_DURATION instead of throwing
 
 int perfectPathDuration(const Path& stn_path); // Path including interchanges, but assuming 0 wait time at all steps along the way (Same station but on different lines count as different points on the path for simplicity)
 
 PathMins perfectPathETA(const Path& stn_path); // Arrival times without counting wait times at every station in the path along the way
 
-PathTimes pathETA(const Path& stn_path, Time curr_time, int day_type); // Actual path ETA including train waiting time, returns {} if impossible. Every element should be when the user would arrive at that station corr to stn_path, not when the upcoming train arrives.
\ No newline at end of file
+PathTimes pathETA(const Path& stn_path, Time curr_time, int day_type); // Actual path ETA including train waiting time, returns {} if impossible. Every element should be when the user would arrive at that station corr to stn_path, not when the upcoming train arrives.
+ETAStatus tryPathETA(const Path& stn_path, Time curr_time, int day_type, PathTimes* out); // Same as pathETA, but reports failure instead of throwing so search loops don't pay for exceptions. out holds the legs before the failing one
@@ -0,0 +1,59 @@
+/********************************************
+ * Copyright (c) 2026 Shun/翔海 (@shun4midx) *
+ * Project: Taipei-MRT-Scheduler            *
+ * File Type: C++ Header file               *
+ * File: scratch.h                          *
+ ****************************************** */
+
+#pragma once
+
+#include <memory>
+
+// Per-thread working memory for the searches, kept between queries so label vectors, queues and arenas keep their capacity instead of being allocated fresh every call
+// Each thread has its own T, so concurrent queries never share one. A query that borrows while an outer one on the same thread still holds it (nesting) gets a fresh T instead
+// Whoever borrows is responsible for resetting what they read: a borrowed T comes back however the last query left it
+
+// ======== SCRATCH ======== //
+template <typename T>
+class Scratch {
+public:
+    Scratch() {
+        Slot& slot = threadSlot();
+
+        if (!slot.busy) {
+            slot.busy = true;
+            held = &slot;
+            value = &slot.value;
+        } else {
+            fresh = std::make_unique<T>();
+            value = fresh.get();
+        }
+    }
+
+    ~Scratch() {
+        if (held != nullptr) {
+            held->busy = false;
+        }
+    }
+
+    Scratch(const Scratch&) = delete;
+    Scratch& operator=(const Scratch&) = delete;
+
+    T& operator*() { return *value; }
+    T* operator->() { return value; }
+
+private:
+    typedef struct slot {
+        T value;
+        bool busy = false;
+    } Slot;
+
+    static Slot& threadSlot() {
+        thread_local Slot slot;
+        return slot;
+    }
+
+    Slot* held = nullptr;
+    std::unique_ptr<T> fresh;
+    T* value;
+};
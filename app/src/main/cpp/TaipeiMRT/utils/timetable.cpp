@@ -0,0 +1,157 @@
+/********************************************
+ * Copyright (c) 2026 Shun/翔海 (@shun4midx) *
+ * Project: Taipei-MRT-Scheduler            *
+ * File Type: C++ file                      *
+ * File: timetable.cpp                      *
+ ****************************************** */
+
+#include "timetable.h"
+#include "engine_context.h"
+
+#include <atomic>
+#include <cstring>
+#include <mutex>
+#include <stdexcept>
+
+#include <fcntl.h>
+#include <sys/mman.h>
+#include <sys/stat.h>
+#include <unistd.h>
+
+// ======== DEFINITIONS ======== //
+const char TIMETABLE_MAGIC[4] = {'T', 'M', 'R', 'T'};
+const int TIMETABLE_VERSION = 1;
+
+#pragma pack(push, 1)
+typedef struct timetableheader {
+    char magic[4];
+    uint16_t version;
+    uint16_t num_lines;
+    uint16_t max_stations;
+    uint16_t num_day_groups;
+    uint32_t num_records;
+} TimetableHeader;
+
+typedef struct timetableindexentry {
+    uint32_t first_record;
+    uint32_t record_count;
+} TimetableIndexEntry;
+#pragma pack(pop)
+
+typedef struct mappedtimetable {
+    TimetableHeader header;
+    const TimetableIndexEntry* index;
+    const PackedTrain* records;
+} MappedTimetable;
+
+// By engineSlot(), each published once and never unmapped, so readers never need the lock
+static std::atomic<const MappedTimetable*> MAPPED_TIMETABLES[MAX_ENGINE_CONTEXTS + 1];
+static std::mutex TIMETABLE_LOAD_MUTEX;
+
+// ======== LOADING ======== //
+bool loadTimetable(const std::string& path, int slot) {
+    std::lock_guard<std::mutex> lock(TIMETABLE_LOAD_MUTEX);
+
+    if (slot <= 0 || slot > MAX_ENGINE_CONTEXTS) {
+        throw std::invalid_argument("Invalid engine slot: " + std::to_string(slot));
+    }
+
+    if (MAPPED_TIMETABLES[slot].load() != nullptr) { // Already mapped
+        return true;
+    }
+
+    int fd = open(path.c_str(), O_RDONLY);
+    if (fd < 0) {
+        return false;
+    }
+
+    struct stat st;
+    if (fstat(fd, &st) != 0 || st.st_size < (off_t)sizeof(TimetableHeader)) {
+        close(fd);
+        return false;
+    }
+
+    size_t size = (size_t)st.st_size;
+    void* addr = mmap(nullptr, size, PROT_READ, MAP_PRIVATE, fd, 0);
+    close(fd); // The mapping keeps the file alive
+
+    if (addr == MAP_FAILED) {
+        return false;
+    }
+
+    const uint8_t* base = static_cast<const uint8_t*>(addr);
+
+    TimetableHeader header;
+    std::memcpy(&header, base, sizeof(header));
+
+    size_t index_count = (size_t)header.num_lines * header.max_stations * header.num_day_groups;
+    size_t expected = sizeof(TimetableHeader) + index_count * sizeof(TimetableIndexEntry) + (size_t)header.num_records * sizeof(PackedTrain);
+
+    if (std::memcmp(header.magic, TIMETABLE_MAGIC, 4) != 0 || header.version != TIMETABLE_VERSION || header.num_lines != Y + 1 || header.num_day_groups != 4 || size < expected) {
+        munmap(addr, size);
+        return false;
+    }
+
+    // A stale or hand-edited file can fit its header and still point past its records, so every entry is checked once here rather than on every lookup
+    const TimetableIndexEntry* index = reinterpret_cast<const TimetableIndexEntry*>(base + sizeof(TimetableHeader));
+    for (size_t i = 0; i < index_count; ++i) {
+        if ((uint64_t)index[i].first_record + index[i].record_count > header.num_records) {
+            munmap(addr, size);
+            return false;
+        }
+    }
+
+    MappedTimetable* mapped = new MappedTimetable;
+    mapped->header = header;
+    mapped->index = index;
+    mapped->records = reinterpret_cast<const PackedTrain*>(base + sizeof(TimetableHeader) + index_count * sizeof(TimetableIndexEntry));
+
+    MAPPED_TIMETABLES[slot].store(mapped);
+    return true;
+}
+
+bool timetableLoaded() {
+    return MAPPED_TIMETABLES[engineSlot()].load() != nullptr;
+}
+
+int dayGroupIdx(const Line& line, int day_type) {
+    if (day_type <= 0 || day_type > 7) {
+        throw std::invalid_argument("Invalid day_type: " + std::to_string(day_type));
+    }
+
+    if (day_type <= 5) {
+        return 0; // 12345
+    } else if (line == R) { // Only R has 6 and 7 separately
+        return day_type == 6 ? 1 : 2;
+    } else {
+        return 3; // 67
+    }
+}
+
+// ======== QUERY ======== //
+bool stationTimetable(const Station& stn, int day_type, StationTimetable* out) {
+    const MappedTimetable* mapped = MAPPED_TIMETABLES[engineSlot()].load();
+
+    if (mapped == nullptr) {
+        return false;
+    }
+
+    out->trains = mapped->records;
+    out->count = 0;
+
+    if (stn.line < 0 || stn.line >= mapped->header.num_lines || stn.stn_num < 0 || stn.stn_num >= mapped->header.max_stations) {
+        return true; // Nothing stored, same as a missing CSV
+    }
+
+    size_t idx = ((size_t)stn.line * mapped->header.max_stations + stn.stn_num) * mapped->header.num_day_groups + dayGroupIdx(stn.line, day_type);
+    const TimetableIndexEntry& entry = mapped->index[idx];
+
+    out->trains = mapped->records + entry.first_record;
+    out->count = (int)entry.record_count;
+
+    return true;
+}
+
+Station packedTrainDest(const PackedTrain& pt) {
+    return Station{static_cast<Line>(pt.dest_line), pt.dest_stn_num};
+}
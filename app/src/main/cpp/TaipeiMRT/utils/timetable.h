@@ -0,0 +1,46 @@
+/********************************************
+ * Copyright (c) 2026 Shun/翔海 (@shun4midx) *
+ * Project: Taipei-MRT-Scheduler            *
+ * File Type: C++ Header file               *
+ * File: timetable.h                        *
+ ****************************************** */
+
+#pragma once
+
+#include "basic.h"
+
+#include <cstdint>
+#include <string>
+
+// Packed form of arrival_times/generated, compiled by arrival_times/compile_timetable.py into generated/timetable.bin
+// Each context maps its own file once (a context opened with packed false maps none), so every lookup is an O(1) index read with no parsing or heap allocation
+
+// ======== STRUCTS ======== //
+#pragma pack(push, 1)
+typedef struct packedtrain {
+    uint16_t time; // minutes since midnight (can exceed 1440)
+    uint8_t direction; // 0 (incr) / 1 (decr)
+    uint8_t dest_line; // Line
+    uint8_t dest_stn_num;
+    uint8_t reserved;
+} PackedTrain;
+#pragma pack(pop)
+
+typedef struct stationtimetable {
+    const PackedTrain* trains; // sorted by time
+    int count;
+} StationTimetable;
+
+// ======== DEFINITIONS ======== //
+extern const char TIMETABLE_MAGIC[4];
+extern const int TIMETABLE_VERSION;
+
+// ======== LOADING ======== //
+bool loadTimetable(const std::string& path, int slot); // mmaps path once for the context in slot (see engineSlot), returns false if it is missing or malformed, index entries past the records included (callers then fall back to the CSVs)
+bool timetableLoaded(); // For currentEngine()
+
+int dayGroupIdx(const Line& line, int day_type); // Same grouping as dayGroup(), as an index into the packed file
+
+// ======== QUERY ======== //
+bool stationTimetable(const Station& stn, int day_type, StationTimetable* out); // false unless timetableLoaded()
+Station packedTrainDest(const PackedTrain& pt);
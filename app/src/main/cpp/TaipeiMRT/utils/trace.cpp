@@ -0,0 +1,206 @@
+/********************************************
+ * Copyright (c) 2026 Shun/翔海 (@shun4midx) *
+ * Project: Taipei-MRT-Scheduler            *
+ * File Type: C++ file                      *
+ * File: trace.cpp                          *
+ ****************************************** */
+
+#include "trace.h"
+#include "arrival_times.h"
+#include "timetable.h"
+
+#include <algorithm>
+#include <atomic>
+#include <chrono>
+#include <cstdio>
+#include <map>
+#include <mutex>
+#include <vector>
+
+#ifdef __ANDROID__
+#include <android/trace.h>
+#endif
+
+// ======== DEFINITIONS ======== //
+const int TRACE_WINDOW = 512;
+
+static const char* const STAGE_NAMES[TRACE_STAGE_COUNT] = {"scheduleLoad", "scan", "candidates", "pathETA", "ranking", "format"};
+static const char* const STAGE_SECTIONS[TRACE_STAGE_COUNT] = {"mrt.scheduleLoad", "mrt.scan", "mrt.candidates", "mrt.pathETA", "mrt.ranking", "mrt.format"};
+static const char* const COUNTER_NAMES[TRACE_COUNTER_COUNT] = {"candidates generated", "candidates evaluated", "candidates rejected", "budget doublings"};
+
+// Histogram buckets: under 1ms, under 2ms, ... doubling, then everything slower
+static const int HISTOGRAM_BUCKETS = 12;
+
+typedef struct rollinglatency {
+    std::vector<long long> nanos; // Ring of the latest TRACE_WINDOW
+    int next;
+    long long total; // Queries since reset, not just the window
+} RollingLatency;
+
+static std::atomic<long long> STAGE_NANOS[TRACE_STAGE_COUNT];
+static std::atomic<long long> STAGE_CALLS[TRACE_STAGE_COUNT];
+static std::atomic<long long> COUNTERS[TRACE_COUNTER_COUNT];
+
+static std::mutex QUERIES_MUTEX;
+static std::map<std::string, RollingLatency> QUERIES; // Sorted, so the report order is stable
+
+static long long nowNanos() {
+    return std::chrono::duration_cast<std::chrono::nanoseconds>(std::chrono::steady_clock::now().time_since_epoch()).count();
+}
+
+static void beginSection(const char* name) {
+#ifdef __ANDROID__
+    ATrace_beginSection(name);
+#else
+    (void)name;
+#endif
+}
+
+static void endSection() {
+#ifdef __ANDROID__
+    ATrace_endSection();
+#endif
+}
+
+// ======== TIMERS ======== //
+stagetimer::stagetimer(TraceStage stage) : stage(stage), start(nowNanos()) {
+    beginSection(STAGE_SECTIONS[stage]);
+}
+
+stagetimer::~stagetimer() {
+    endSection();
+    traceStage(stage, nowNanos() - start);
+}
+
+querytimer::querytimer(const char* name) : name(name), start(nowNanos()) {
+    beginSection(name);
+}
+
+querytimer::~querytimer() {
+    endSection();
+    traceQuery(name, nowNanos() - start);
+}
+
+// ======== RECORDING ======== //
+void traceCount(TraceCounter counter, long long n) {
+    COUNTERS[counter].fetch_add(n, std::memory_order_relaxed);
+}
+
+void traceStage(TraceStage stage, long long nanos) {
+    STAGE_NANOS[stage].fetch_add(nanos, std::memory_order_relaxed);
+    STAGE_CALLS[stage].fetch_add(1, std::memory_order_relaxed);
+}
+
+void traceQuery(const char* name, long long nanos) {
+    std::lock_guard<std::mutex> lock(QUERIES_MUTEX);
+
+    RollingLatency& q = QUERIES[name];
+    if (q.nanos.size() < TRACE_WINDOW) {
+        q.nanos.push_back(nanos);
+    } else {
+        q.nanos[q.next] = nanos;
+    }
+    q.next = (q.next + 1) % TRACE_WINDOW;
+    ++q.total;
+}
+
+// ======== REPORT ======== //
+static int bucketOf(long long nanos) {
+    int bucket = 0;
+    for (long long limit = 1000000; nanos >= limit && bucket < HISTOGRAM_BUCKETS - 1; limit *= 2) {
+        ++bucket;
+    }
+    return bucket;
+}
+
+static double percentileMs(const std::vector<long long>& sorted, double q) {
+    return sorted[std::min(sorted.size() - 1, (size_t)(q * sorted.size()))] / 1e6;
+}
+
+std::string traceReport() {
+    std::string out;
+    char line[256];
+
+    // Queries
+    std::snprintf(line, sizeof(line), "== Queries (latest %d each) ==\n%-30s %7s %8s %8s %8s %8s\n", TRACE_WINDOW, "query", "total", "p50 ms", "p90 ms", "p99 ms", "max ms");
+    out += line;
+
+    std::string histograms;
+    {
+        std::lock_guard<std::mutex> lock(QUERIES_MUTEX);
+
+        for (const auto& [name, q] : QUERIES) {
+            std::vector<long long> sorted = q.nanos;
+            std::sort(sorted.begin(), sorted.end());
+
+            std::snprintf(line, sizeof(line), "%-30s %7lld %8.2f %8.2f %8.2f %8.2f\n", name.c_str(), q.total,
+                          percentileMs(sorted, 0.5), percentileMs(sorted, 0.9), percentileMs(sorted, 0.99), sorted.back() / 1e6);
+            out += line;
+
+            int counts[HISTOGRAM_BUCKETS] = {};
+            for (long long nanos : sorted) {
+                ++counts[bucketOf(nanos)];
+            }
+
+            histograms += name + ":";
+            for (int b = 0; b < HISTOGRAM_BUCKETS; ++b) {
+                if (counts[b] == 0) {
+                    continue;
+                }
+                if (b == HISTOGRAM_BUCKETS - 1) {
+                    std::snprintf(line, sizeof(line), " >=%dms %d", 1 << (b - 1), counts[b]);
+                } else {
+                    std::snprintf(line, sizeof(line), " <%dms %d", 1 << b, counts[b]);
+                }
+                histograms += line;
+            }
+            histograms += "\n";
+        }
+    }
+
+    out += "\n== Latency histogram ==\n" + histograms;
+
+    // Stages
+    std::snprintf(line, sizeof(line), "\n== Stages ==\n%-30s %9s %10s %10s\n", "stage", "calls", "total ms", "mean us");
+    out += line;
+
+    for (int s = 0; s < TRACE_STAGE_COUNT; ++s) {
+        long long calls = STAGE_CALLS[s].load(std::memory_order_relaxed);
+        long long nanos = STAGE_NANOS[s].load(std::memory_order_relaxed);
+
+        std::snprintf(line, sizeof(line), "%-30s %9lld %10.1f %10.1f\n", STAGE_NAMES[s], calls, nanos / 1e6, calls ? nanos / 1e3 / calls : 0.0);
+        out += line;
+    }
+
+    // Counters
+    out += "\n== Counters ==\n";
+    for (int c = 0; c < TRACE_COUNTER_COUNT; ++c) {
+        std::snprintf(line, sizeof(line), "%-30s %lld\n", COUNTER_NAMES[c], COUNTERS[c].load(std::memory_order_relaxed));
+        out += line;
+    }
+
+    // The cache only sits in front of the CSVs, a mapped timetable.bin is read in place
+    if (timetableLoaded()) {
+        std::snprintf(line, sizeof(line), "%-30s unused, timetable.bin is mapped\n", "schedule cache (CSVs only)");
+    } else {
+        ScheduleCacheStats cache = scheduleCacheStats();
+        std::snprintf(line, sizeof(line), "%-30s hits %lld, misses %lld, evictions %lld, %d/%d\n", "schedule cache (CSVs only)", cache.hits, cache.misses, cache.evictions, cache.size, cache.capacity);
+    }
+    out += line;
+
+    return out;
+}
+
+void resetTrace() {
+    for (int s = 0; s < TRACE_STAGE_COUNT; ++s) {
+        STAGE_NANOS[s].store(0, std::memory_order_relaxed);
+        STAGE_CALLS[s].store(0, std::memory_order_relaxed);
+    }
+
+    for (int c = 0; c < TRACE_COUNTER_COUNT; ++c) {
+        COUNTERS[c].store(0, std::memory_order_relaxed);
+    }
+
+    std::lock_guard<std::mutex> lock(QUERIES_MUTEX);
+    QUERIES.clear();
+}
@@ -0,0 +1,46 @@
+/********************************************
+ * Copyright (c) 2026 Shun/翔海 (@shun4midx) *
+ * Project: Taipei-MRT-Scheduler            *
+ * File Type: C++ Header file               *
+ * File: trace.h                            *
+ ****************************************** */
+
+#pragma once
+
+#include <string>
+
+// Where a query's time goes: per-stage timers, search counters and a rolling latency histogram per JNI query, all in memory
+// Every timed scope is also a systrace section on Android (ATrace), so the same stages line up in a Perfetto capture. Off Android the sections are no-ops
+
+// ======== DEFINITIONS ======== //
+enum TraceStage {TRACE_SCHEDULE_LOAD, TRACE_SCAN, TRACE_CANDIDATES, TRACE_PATH_ETA, TRACE_RANKING, TRACE_FORMAT, TRACE_STAGE_COUNT}; // TRACE_SCAN: the exact CSA/RAPTOR searches, TRACE_FORMAT is timed in Java
+
+enum TraceCounter {TRACE_CANDIDATES_GENERATED, TRACE_CANDIDATES_EVALUATED, TRACE_CANDIDATES_REJECTED, TRACE_BUDGET_DOUBLINGS, TRACE_COUNTER_COUNT};
+
+extern const int TRACE_WINDOW; // Latest queries kept per histogram
+
+// ======== TIMERS ======== //
+typedef struct stagetimer { // Times its own scope as one call of stage
+    TraceStage stage;
+    long long start;
+
+    explicit stagetimer(TraceStage stage);
+    ~stagetimer();
+} StageTimer;
+
+typedef struct querytimer { // Same for a whole JNI query, name should be a literal, e.g. "computeFastestRoute"
+    const char* name;
+    long long start;
+
+    explicit querytimer(const char* name);
+    ~querytimer();
+} QueryTimer;
+
+// ======== RECORDING ======== //
+void traceCount(TraceCounter counter, long long n = 1);
+void traceStage(TraceStage stage, long long nanos);
+void traceQuery(const char* name, long long nanos);
+
+// ======== REPORT ======== //
+std::string traceReport(); // Plain text, one table per section
+void resetTrace(); // Schedule cache stats aren't ours, they keep counting since start
@@ -10,5 +10,10 @@
 #include "arrival_times.h"
 #include "basic.h"
 #include "interchange.h"
+#include "next_trains.h"
 #include "path_duration.h"
-#include "cost.h"
\ No newline at end of file
+#include "timetable.h"
+#include "trace.h"
+#include "cost.h"
+#include "engine_context.h"
+#include "worker_pool.h"
\ No newline at end of file
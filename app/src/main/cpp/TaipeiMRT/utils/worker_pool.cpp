@@ -0,0 +1,156 @@
+/********************************************
+ * Copyright (c) 2026 Shun/翔海 (@shun4midx) *
+ * Project: Taipei-MRT-Scheduler            *
+ * File Type: C++ file                      *
+ * File: worker_pool.cpp                    *
+ ****************************************** */
+
+#include "worker_pool.h"
+#include "engine_context.h"
+
+#include <algorithm>
+#include <atomic>
+#include <condition_variable>
+#include <cstdint>
+#include <exception>
+#include <mutex>
+#include <thread>
+
+// ======== DEFINITIONS ======== //
+const int WORKER_POOL_MAX_THREADS = 8; // Phones past this are big.LITTLE anyway, the extra little cores don't pay for the handoff
+
+typedef struct workerjob {
+    const std::function<void(int)>* fn;
+    const EngineContext* engine; // The caller's, so fn runs against the same one on every thread
+    EngineState* state;
+    int n;
+    std::atomic<int> next; // Next index to hand out
+    int active; // Workers inside the job, under WorkerPool::mutex
+    std::mutex error_mutex;
+    std::exception_ptr error;
+} WorkerJob;
+
+typedef struct workerpool {
+    int threads; // Besides the caller
+    std::mutex busy; // Held by the parallelFor using the workers
+    std::mutex mutex;
+    std::condition_variable wake, done;
+    WorkerJob* job; // nullptr between jobs
+    uint64_t generation; // Bumped for every job, so a worker joins each one at most once
+} WorkerPool;
+
+static std::once_flag POOL_STARTED;
+static WorkerPool* POOL = nullptr; // Never freed: the workers are still waiting on it while statics get destroyed at exit
+
+// ======== WORKERS ======== //
+static void runJob(WorkerJob& job) {
+    for (int i = job.next.fetch_add(1); i < job.n; i = job.next.fetch_add(1)) {
+        try {
+            (*job.fn)(i);
+        } catch (...) {
+            std::lock_guard<std::mutex> lock(job.error_mutex);
+            if (!job.error) {
+                job.error = std::current_exception();
+            }
+            job.next.store(job.n); // Hand nothing else out
+        }
+    }
+}
+
+static void workerLoop(WorkerPool* pool) {
+    uint64_t seen = 0;
+
+    while (true) {
+        WorkerJob* job;
+
+        {
+            std::unique_lock<std::mutex> lock(pool->mutex);
+            pool->wake.wait(lock, [&]() { return pool->generation != seen; });
+
+            seen = pool->generation;
+            job = pool->job;
+
+            if (job == nullptr) { // Already over
+                continue;
+            }
+
+            ++job->active;
+        }
+
+        {
+            EngineScope scope(job->engine, job->state);
+            runJob(*job);
+        }
+
+        {
+            std::lock_guard<std::mutex> lock(pool->mutex);
+            --job->active;
+        }
+
+        pool->done.notify_all();
+    }
+}
+
+static void startPool() {
+    int cores = (int)std::thread::hardware_concurrency(); // 0 if unknown
+
+    POOL = new WorkerPool();
+    POOL->threads = std::max(0, std::min(cores, WORKER_POOL_MAX_THREADS) - 1);
+    POOL->job = nullptr;
+    POOL->generation = 0;
+
+    for (int i = 0; i < POOL->threads; ++i) {
+        std::thread(workerLoop, POOL).detach(); // Lives as long as the process
+    }
+}
+
+// ======== FUNCTIONS ======== //
+int workerCount() {
+    std::call_once(POOL_STARTED, startPool);
+    return POOL->threads + 1;
+}
+
+void parallelFor(int n, const std::function<void(int)>& fn) {
+    if (n <= 0) {
+        return;
+    }
+
+    std::call_once(POOL_STARTED, startPool);
+
+    std::unique_lock<std::mutex> busy(POOL->busy, std::try_to_lock);
+
+    if (POOL->threads == 0 || n == 1 || !busy.owns_lock()) {
+        for (int i = 0; i < n; ++i) {
+            fn(i);
+        }
+        return;
+    }
+
+    WorkerJob job;
+    job.fn = &fn;
+    job.engine = currentEngine();
+    job.state = currentEngineState();
+    job.n = n;
+    job.next.store(0);
+    job.active = 0;
+
+    {
+        std::lock_guard<std::mutex> lock(POOL->mutex);
+        POOL->job = &job;
+        ++POOL->generation;
+    }
+
+    POOL->wake.notify_all();
+    runJob(job);
+
+    {
+        // No worker can join once the job is cleared, so active only goes down from here
+        std::unique_lock<std::mutex> lock(POOL->mutex);
+        POOL->job = nullptr;
+        POOL->done.wait(lock, [&]() { return job.active == 0; });
+    }
+
+    if (job.error) {
+        std::rethrow_exception(job.error);
+    }
+}
@@ -0,0 +1,23 @@
+/********************************************
+ * Copyright (c) 2026 Shun/翔海 (@shun4midx) *
+ * Project: Taipei-MRT-Scheduler            *
+ * File Type: C++ Header file               *
+ * File: worker_pool.h                      *
+ ****************************************** */
+
+#pragma once
+
+#include <functional>
+
+// A few threads started once and kept around, for the router's data-parallel loops (every candidate path timed on its own)
+// Work is handed out one index at a time, so a slow item doesn't hold up a whole chunk
+
+// ======== DEFINITIONS ======== //
+extern const int WORKER_POOL_MAX_THREADS;
+
+// ======== FUNCTIONS ======== //
+int workerCount(); // Threads a parallelFor can run on, the caller included
+
+// Calls fn(i) for every i in [0, n), in no particular order or thread, and returns once they're all done. The first exception is rethrown after that
+// fn sees the caller's currentEngine() and currentEngineState() on every thread. The caller works too, and a parallelFor while another one holds the pool just runs on its own thread, so nesting or calling from several threads can't deadlock
+void parallelFor(int n, const std::function<void(int)>& fn);
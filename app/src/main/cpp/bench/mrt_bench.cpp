@@ -0,0 +1,231 @@
+/********************************************
+ * Copyright (c) 2026 Shun/翔海 (@shun4midx) *
+ * Project: Taipei-MRT-Scheduler            *
+ * File Type: C++ file                      *
+ * File: mrt_bench.cpp                      *
+ ****************************************** */
+
+// Host microbenchmark for the engine stages, against the real generated timetables on disk
+// Usage: mrt_bench <data dir, the one holding arrival_times/> [day_type 1-7] [now_mins] [--csv]
+// --csv skips mapping timetable.bin, so loadStationSchedule parses the CSVs like before the packed format
+
+#include "utils.h"
+#include "routing.h"
+#include "network.h"
+
+#include <algorithm>
+#include <atomic>
+#include <chrono>
+#include <cstdio>
+#include <cstdlib>
+#include <new>
+#include <stdexcept>
+#include <string>
+#include <vector>
+
+// ======== ALLOCATION COUNTING ======== //
+static std::atomic<long long> ALLOC_COUNT{0};
+static std::atomic<long long> ALLOC_BYTES{0};
+
+void* operator new(std::size_t size) {
+    ALLOC_COUNT.fetch_add(1, std::memory_order_relaxed);
+    ALLOC_BYTES.fetch_add(size, std::memory_order_relaxed);
+
+    if (void* p = std::malloc(size ? size : 1)) {
+        return p;
+    }
+    throw std::bad_alloc();
+}
+
+void operator delete(void* p) noexcept {
+    std::free(p);
+}
+
+void operator delete(void* p, std::size_t) noexcept {
+    std::free(p);
+}
+
+// ======== STAGE STATS ======== //
+typedef struct stagestats {
+    std::string name;
+    std::vector<double> micros = {}; // One per call
+    long long allocs = 0;
+    long long bytes = 0;
+    int failures = 0; // Calls that threw or found nothing
+} StageStats;
+
+typedef struct allocmark {
+    long long count;
+    long long bytes;
+} AllocMark;
+
+static AllocMark allocMark() {
+    return AllocMark{ALLOC_COUNT.load(std::memory_order_relaxed), ALLOC_BYTES.load(std::memory_order_relaxed)};
+}
+
+// Times fn() as one call of stage, fn returns false for a failed call
+template <typename F>
+static void timeCall(StageStats& stage, F fn) {
+    AllocMark before = allocMark();
+    auto start = std::chrono::steady_clock::now();
+
+    bool ok;
+    try {
+        ok = fn();
+    } catch (const std::exception&) {
+        ok = false;
+    }
+
+    auto end = std::chrono::steady_clock::now();
+    AllocMark after = allocMark();
+
+    stage.micros.push_back(std::chrono::duration<double, std::micro>(end - start).count());
+    stage.allocs += after.count - before.count;
+    stage.bytes += after.bytes - before.bytes;
+    stage.failures += ok ? 0 : 1;
+}
+
+static double percentile(std::vector<double> sorted, double q) {
+    if (sorted.empty()) {
+        return 0;
+    }
+    std::sort(sorted.begin(), sorted.end());
+    return sorted[std::min(sorted.size() - 1, (size_t)(q * sorted.size()))];
+}
+
+static void printStage(const StageStats& stage) {
+    int calls = stage.micros.size();
+    double total = 0;
+    for (double us : stage.micros) {
+        total += us;
+    }
+
+    std::printf("%-20s %8d %10.1f %10.2f %10.2f %10.2f %10.1f %12.0f %8d\n",
+                stage.name.c_str(), calls, total / 1000.0,
+                calls ? total / calls : 0, percentile(stage.micros, 0.5), percentile(stage.micros, 0.99),
+                calls ? (double)stage.allocs / calls : 0, calls ? (double)stage.bytes / calls : 0, stage.failures);
+}
+
+// ======== STAGES ======== //
+static const int CANDIDATE_BUDGET = 24; // Between routeDefault's first budget (6) and custom routing's cap (100)
+static const int CANDIDATE_MAX_INTERCHANGES = 6;
+
+int main(int argc, char** argv) {
+    if (argc < 2) {
+        std::fprintf(stderr, "usage: %s <data dir> [day_type 1-7] [now_mins] [--csv]\n", argv[0]);
+        return 1;
+    }
+
+    int day_type = argc > 2 ? std::atoi(argv[2]) : 1;
+    int now_mins = argc > 3 ? std::atoi(argv[3]) : 8 * 60 + 30;
+    bool csv = argc > 4 && std::string(argv[4]) == "--csv";
+
+    if (day_type <= 0 || day_type > 7 || now_mins < 0) {
+        std::fprintf(stderr, "bad day_type or now_mins\n");
+        return 1;
+    }
+
+    const EngineContext* engine = openEngine(argv[1], !csv);
+    if (!csv && !engine->packed) {
+        std::fprintf(stderr, "no timetable.bin under %s, reading CSVs\n", argv[1]);
+    }
+
+    std::vector<Station> stations;
+    for (int id = 0; id < stationCount(); ++id) {
+        stations.push_back(stationFromId(id));
+    }
+
+    // Terminals per station (lowest and highest number on its line), the destinations nextTrainTime is asked about
+    std::vector<std::vector<Station>> terminals(stations.size());
+    for (size_t i = 0; i < stations.size(); ++i) {
+        Station lo = stations[i], hi = stations[i];
+        for (const Station& s : stations) {
+            if (s.line == stations[i].line) {
+                lo = s.stn_num < lo.stn_num ? s : lo;
+                hi = s.stn_num > hi.stn_num ? s : hi;
+            }
+        }
+        for (const Station& t : {lo, hi}) {
+            if (!sameStation(t, stations[i])) {
+                terminals[i].push_back(t);
+            }
+        }
+    }
+
+    std::vector<StageStats> stages;
+    Time now = Time{now_mins / 60, now_mins % 60};
+
+    // loadStationSchedule: uncached, every station with a timetable once (BR has none)
+    StageStats load{"loadStationSchedule"};
+    for (const Station& s : stations) {
+        if (s.line == BR) {
+            continue;
+        }
+        timeCall(load, [&] { return !loadStationSchedule(s, day_type).empty(); });
+    }
+    stages.push_back(load);
+
+    // candidatePaths: every ordered pair, no constraints
+    StageStats cands{"candidatePaths"};
+    std::vector<Path> paths; // Fed to pathETA below
+    for (const Station& a : stations) {
+        for (const Station& b : stations) {
+            if (sameStation(a, b)) {
+                continue;
+            }
+
+            std::vector<Path> found;
+            timeCall(cands, [&] {
+                found = candidatePaths(a, b, CANDIDATE_BUDGET, CANDIDATE_MAX_INTERCHANGES, RouteConstraints{});
+                return !found.empty();
+            });
+
+            if (!found.empty()) {
+                paths.push_back(found[0]);
+                paths.push_back(found.back());
+            }
+        }
+    }
+    stages.push_back(cands);
+
+    // pathETA: the best and the worst candidate of every pair, schedules warm in the cache after one pass
+    StageStats warmup{"warmup"};
+    for (const Path& p : paths) {
+        timeCall(warmup, [&] { return !pathETA(p, now, day_type).empty(); });
+    }
+
+    StageStats eta{"pathETA"};
+    for (const Path& p : paths) {
+        timeCall(eta, [&] { return !pathETA(p, now, day_type).empty(); });
+    }
+    stages.push_back(eta);
+
+    // nextTrainTime: every station towards each end of its line
+    StageStats next{"nextTrainTime"};
+    for (size_t i = 0; i < stations.size(); ++i) {
+        for (const Station& t : terminals[i]) {
+            timeCall(next, [&] { return !sameTime(nextTrainTime(stations[i], day_type, now_mins, t), INVALID_TIME); });
+        }
+    }
+    stages.push_back(next);
+
+    // travelPrice: every ordered pair, every ticket type
+    StageStats price{"travelPrice"};
+    for (const Station& a : stations) {
+        for (const Station& b : stations) {
+            for (TicketType tt : {ADULT, CHILD, ELDERLY}) {
+                timeCall(price, [&] { return travelPrice(a, b, tt) >= 0; });
+            }
+        }
+    }
+    stages.push_back(price);
+
+    // ======== REPORT ======== //
+    std::printf("day_type %d, now_mins %d, %s, %zu stations\n", day_type, now_mins, csv || !timetableLoaded() ? "CSV timetables" : "packed timetable", stations.size());
+    std::printf("%-20s %8s %10s %10s %10s %10s %10s %12s %8s\n", "stage", "calls", "total ms", "mean us", "p50 us", "p99 us", "allocs", "bytes", "failed");
+    for (const StageStats& stage : stages) {
+        printStage(stage);
+    }
+
+    return 0;
+}
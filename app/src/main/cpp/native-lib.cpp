@@ -2,12 +2,16 @@
 #include <string>
 #include <chrono>
 #include <ctime>
+#include <algorithm>
+#include <atomic>
+#include <mutex>
 
 #include "TaipeiMRT/prettify/prettify.h"
 #include "TaipeiMRT/utils/utils.h"
 #include "TaipeiMRT/routing/routing.h"
-
-std::string DATA_DIR;
+#include "TaipeiMRT/routing/network.h"
+#include "TaipeiMRT/routing/connection_scan.h"
+#include "TaipeiMRT/routing/raptor.h"
 
 const std::vector<Line> LINE_ORDER = {R, O, Y, G, BL, BR};
 
@@ -20,68 +24,96 @@ const std::unordered_map<Line, std::vector<Station>> ARRIVAL_DESTS = {
         {BR, {Station{BR, 1}, Station{BR, 24}}}
 };
 
-extern "C"
-JNIEXPORT void JNICALL
-Java_com_shun4midx_mrt_MainActivity_setDataDir(
-        JNIEnv* env, jobject, jstring path
-) {
-    const char* raw = env->GetStringUTFChars(path, nullptr);
-    DATA_DIR = raw;
-    env->ReleaseStringUTFChars(path, raw);
+// ======== JNI REFS ======== //
+// Resolved once when the library loads, not per call: the minute tick and every query would otherwise pay for the lookups again
+typedef struct javarefs {
+    jclass string_cls; // Global refs, kept for the life of the process
+    jclass line_item_cls;
+    jmethodID line_item_ctor;
+    jfieldID engine_context; // MrtEngine.context
+    jfieldID engine_state; // MrtEngine.state
+} JavaRefs;
+
+static JavaRefs JAVA = {};
+
+static jclass globalClass(JNIEnv* env, const char* name) {
+    jclass local = env->FindClass(name);
+    if (local == nullptr) {
+        return nullptr;
+    }
+
+    jclass global = (jclass)env->NewGlobalRef(local);
+    env->DeleteLocalRef(local);
+    return global;
 }
 
 extern "C"
-JNIEXPORT jobjectArray JNICALL
-Java_com_shun4midx_mrt_MainActivity_getStationsDisplayList(
-        JNIEnv* env,
-        jobject,
-        jstring line_code,
-        jint langInt
-) {
-    const char* raw = env->GetStringUTFChars(line_code, nullptr);
-    std::string code(raw);
-    env->ReleaseStringUTFChars(line_code, raw);
-
-    Line line = LINES.at(code);
-    Language lang = static_cast<Language>(langInt);
+JNIEXPORT jint JNICALL
+JNI_OnLoad(JavaVM* vm, void*) {
+    JNIEnv* env;
+    if (vm->GetEnv((void**)&env, JNI_VERSION_1_6) != JNI_OK) {
+        return JNI_ERR;
+    }
 
-    std::vector<std::string> result = {"––"}; // Have an empty thing first
+    // Loaded from MrtEngine's static block, so FindClass sees the app's class loader here
+    JAVA.string_cls = globalClass(env, "java/lang/String");
+    JAVA.line_item_cls = globalClass(env, "com/shun4midx/mrt/LineItem");
+    jclass engine_cls = env->FindClass("com/shun4midx/mrt/MrtEngine");
 
-    for (int i = 1; i <= 99; ++i) {
-        if (!validStation(line, i)) continue;
-        Station s{line, i};
-        result.push_back(
-                stationToCode(s) + " – " + getName(s, lang)
-        );
+    if (JAVA.string_cls == nullptr || JAVA.line_item_cls == nullptr || engine_cls == nullptr) {
+        return JNI_ERR; // A NoClassDefFoundError is pending, loadLibrary throws it
     }
 
-    jobjectArray arr = env->NewObjectArray(
-            result.size(),
-            env->FindClass("java/lang/String"),
-            nullptr
-    );
+    JAVA.line_item_ctor = env->GetMethodID(JAVA.line_item_cls, "<init>", "(Ljava/lang/String;Ljava/lang/String;)V");
+    JAVA.engine_context = env->GetFieldID(engine_cls, "context", "J");
+    JAVA.engine_state = env->GetFieldID(engine_cls, "state", "J");
+    env->DeleteLocalRef(engine_cls);
 
-    for (int i = 0; i < result.size(); ++i) {
-        env->SetObjectArrayElement(
-                arr, i, env->NewStringUTF(result[i].c_str())
-        );
+    if (JAVA.line_item_ctor == nullptr || JAVA.engine_context == nullptr || JAVA.engine_state == nullptr) {
+        return JNI_ERR;
     }
 
-    return arr;
+    return JNI_VERSION_1_6;
+}
+
+extern "C"
+JNIEXPORT jlong JNICALL
+Java_com_shun4midx_mrt_MrtEngine_openContext(
+        JNIEnv* env, jclass, jstring path
+) {
+    const char* raw = env->GetStringUTFChars(path, nullptr);
+    std::string data_dir = raw;
+    env->ReleaseStringUTFChars(path, raw);
+
+    // Maps the packed timetable once; if it's missing we keep reading the CSVs
+    return (jlong)(intptr_t)openEngine(data_dir);
+}
+
+// MrtEngine.context, which every query runs against. 0 (before setDataDir) leaves the last opened one
+static const EngineContext* engineArg(JNIEnv* env, jobject thiz) {
+    return (const EngineContext*)(intptr_t)env->GetLongField(thiz, JAVA.engine_context);
+}
+
+extern "C"
+JNIEXPORT jlong JNICALL
+Java_com_shun4midx_mrt_MrtEngine_newState(JNIEnv* env, jclass) {
+    return (jlong)(intptr_t)newEngineState();
+}
+
+// MrtEngine.state: this engine's own clock, cancel generation and next-train board, set from its constructor so never 0
+static EngineState* stateArg(JNIEnv* env, jobject thiz) {
+    return (EngineState*)(intptr_t)env->GetLongField(thiz, JAVA.engine_state);
 }
 
 extern "C"
 JNIEXPORT jobjectArray JNICALL
-Java_com_shun4midx_mrt_MainActivity_getLines(
+Java_com_shun4midx_mrt_MrtEngine_getLines(
         JNIEnv* env,
         jobject
 ) {
-    jclass cls = env->FindClass("com/shun4midx/mrt/LineItem");
-    jmethodID ctor = env->GetMethodID(cls, "<init>", "(Ljava/lang/String;Ljava/lang/String;)V");
-
     jobjectArray arr = env->NewObjectArray(
             LINE_EMOJIS.size(),
-            cls,
+            JAVA.line_item_cls,
             nullptr
     );
 
@@ -89,21 +121,43 @@ Java_com_shun4midx_mrt_MainActivity_getLines(
     for (Line line : LINE_ORDER) {
         const auto& emoji = LINE_EMOJIS.at(line);
 
+        jstring code = env->NewStringUTF(LINE_TO_STR.at(line).c_str());
+        jstring js = env->NewStringUTF(emoji.c_str());
+
         jobject obj = env->NewObject(
-                cls,
-                ctor,
-                env->NewStringUTF(LINE_TO_STR.at(line).c_str()),
-                env->NewStringUTF(emoji.c_str())
+                JAVA.line_item_cls,
+                JAVA.line_item_ctor,
+                code,
+                js
         );
 
         env->SetObjectArrayElement(arr, i++, obj);
+
+        env->DeleteLocalRef(code);
+        env->DeleteLocalRef(js);
+        env->DeleteLocalRef(obj);
     }
 
     return arr;
 }
 
+// Set through MrtEngine.setClock for tests and benchmarks, only for that engine's queries
+extern "C"
+JNIEXPORT void JNICALL
+Java_com_shun4midx_mrt_MrtEngine_setClock(JNIEnv* env, jobject thiz, jint day_type, jint now_mins) {
+    stateArg(env, thiz)->fixed_time.store(day_type > 0 ? day_type * 10000 + now_mins : 0);
+}
+
+// The running query's engine clock, see EngineScope
 void getTaipeiTime(int* day_type, int* now_mins) {
 
+    int fixed = currentEngineState()->fixed_time.load();
+    if (fixed > 0) {
+        *day_type = fixed / 10000;
+        *now_mins = fixed % 10000;
+        return;
+    }
+
     using namespace std::chrono;
 
     // Get current UTC time
@@ -146,176 +200,150 @@ void getTaipeiTime(int* day_type, int* now_mins) {
     }
 }
 
-extern "C"
-JNIEXPORT jobjectArray JNICALL
-Java_com_shun4midx_mrt_MainActivity_getNextTrainTable(JNIEnv* env, jobject, jstring line_code, jint station, jint max_rows, jint max_cols, jint langInt) {
-    jclass stringClass = env->FindClass("java/lang/String");
-    jclass stringArrayClass = env->FindClass("[Ljava/lang/String;"); // <-- String[]
-    Language lang = static_cast<Language>(langInt);
+static jobjectArray stringsToJava(JNIEnv* env, const std::vector<std::string>& strs) {
+    jobjectArray arr = env->NewObjectArray(strs.size(), JAVA.string_cls, nullptr);
+
+    for (int i = 0; i < strs.size(); ++i) {
+        jstring js = env->NewStringUTF(strs[i].c_str());
+        env->SetObjectArrayElement(arr, i, js);
+        env->DeleteLocalRef(js);
+    }
 
-    // Calculate the next trains
-    const char* raw = env->GetStringUTFChars(line_code, nullptr);
-    std::string code(raw);
-    env->ReleaseStringUTFChars(line_code, raw);
+    return arr;
+}
 
-    Line l = LINES.at(code);
-    Station stn = Station{l, station};
+// Stations come from Java as ids (getStationCodes order), lines as indices into LINE_ORDER (getLines order)
+static Station stationArg(jint id) {
+    return id >= 0 && id < stationCount() ? stationFromId(id) : INVALID_STATION;
+}
 
-    int day_type, now_mins;
-    getTaipeiTime(&day_type, &now_mins);
+static std::vector<Station> stationsArg(JNIEnv* env, jintArray ids) {
+    int n = env->GetArrayLength(ids);
+    std::vector<jint> raw(n);
+    env->GetIntArrayRegion(ids, 0, n, raw.data());
 
-    std::vector<Station> stns = ARRIVAL_DESTS.at(l);
-    std::vector<std::vector<int>> table_times;
-    for (int i = 0; i < stns.size(); ++i) {
-        table_times.push_back({});
+    std::vector<Station> stations;
+    for (jint id : raw) {
+        stations.push_back(stationArg(id));
     }
+    return stations;
+}
 
-    if (validStation(stn) && stn.line != BR) {
-        std::vector<Train> train_schedule = loadStationSchedule(stn, day_type);
+static RouteAlgorithm algorithmArg(jint ordinal) { // MrtEngine.RouteAlgorithm, RAPTOR for anything unknown
+    switch (ordinal) {
+        case 0: return CANDIDATE_SEARCH;
+        case 1: return CONNECTION_SCAN;
+        default: return RAPTOR;
+    }
+}
 
-        // Find the closest entry that has time >= now_mins
-        auto it = std::lower_bound(
-                train_schedule.begin(),
-                train_schedule.end(),
-                now_mins,
-                [](const Train& t, int value) {
-                    return t.time < value;
-                }
-        );
+static std::vector<Line> linesArg(JNIEnv* env, jintArray indices) {
+    int n = env->GetArrayLength(indices);
+    std::vector<jint> raw(n);
+    env->GetIntArrayRegion(indices, 0, n, raw.data());
 
-        while (it != train_schedule.end()) {
-            // Find position in stns and push back time if < 4
-            int idx = 0;
+    std::vector<Line> lines;
+    for (jint i : raw) {
+        lines.push_back(LINE_ORDER.at(i));
+    }
+    return lines;
+}
 
-            for (const Station& s : stns) {
-                if (sameStation(s, it->train_dest)) {
-                    break;
-                }
-                ++idx;
-            }
+static jintArray intsToJava(JNIEnv* env, const std::vector<jint>& ints) {
+    jintArray arr = env->NewIntArray(ints.size());
+    env->SetIntArrayRegion(arr, 0, ints.size(), ints.data());
+    return arr;
+}
 
-            if (table_times[idx].size() >= 4) {
-                ++it; // Increment
-                continue;
-            }
+extern "C"
+JNIEXPORT jintArray JNICALL
+Java_com_shun4midx_mrt_MrtEngine_getNextTrainDests(JNIEnv* env, jobject, jint line) {
+    std::vector<jint> dests;
+    for (const Station& s : ARRIVAL_DESTS.at(LINE_ORDER.at(line))) {
+        dests.push_back(stationId(s));
+    }
 
-            // Push back
-            table_times[idx].push_back(it->time - now_mins);
+    return intsToJava(env, dests);
+}
 
-            // Next station
-            ++it;
-        }
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_shun4midx_mrt_MrtEngine_getNextTrainMinutes(JNIEnv* env, jobject thiz, jint station, jint per_dest, jintArray out) {
+    QueryTimer timer("getNextTrainMinutes");
+    EngineState* state = stateArg(env, thiz);
+    EngineScope scope(engineArg(env, thiz), state);
+
+    Station stn = stationArg(station);
+    if (!validStation(stn)) {
+        return 0;
     }
 
-    // Outer: String[][]
-    jobjectArray rows = env->NewObjectArray(stns.size(), stringArrayClass, nullptr);
-
-    std::string first_label;
-    std::string last_label;
-
-    std::vector<std::vector<Time>> first_last_times;
-
-    if (l == BR) {
-        switch (lang) {
-            case en:
-                first_label = "First: ";
-                last_label  = "Last: ";
-                break;
-            case jp:
-                first_label = "始発: ";
-                last_label  = "最終: ";
-                break;
-            case kr:
-                first_label = "첫차: ";
-                last_label  = "막차: ";
-                break;
-            default:
-                first_label = "首班車: ";
-                last_label  = "末班車: ";
-        }
+    const std::vector<Station>& dests = ARRIVAL_DESTS.at(stn.line);
 
-        Time first_01 = (station != 1) ? firstTrainTime(stn, day_type, Station{BR, 1}) : INVALID_TIME;
-        Time last_01 = (station != 1) ? lastTrainTime(stn, day_type, Station{BR, 1}) : INVALID_TIME;
-        Time first_24 = (station != 24) ? firstTrainTime(stn, day_type, Station{BR, 24}) : INVALID_TIME;
-        Time last_24 = (station != 24) ? lastTrainTime(stn, day_type, Station{BR, 24}) : INVALID_TIME;
-
-        first_last_times = {{first_01, last_01}, {first_24, last_24}};
-    }
-
-    for (int i = 0; i < stns.size(); ++i) {
-        // Inner: String[]
-        jobjectArray cols = env->NewObjectArray(max_cols, stringClass, nullptr);
-
-        for (int j = 0; j < max_cols; ++j) {
-            std::string s;
-
-            if (station == 0) {
-                s = "";
-            } else {
-                if (j == 0) {
-                    s = LINE_EMOJIS.at(l) + " " + stationToCode(stns[i]);
-                }
-
-                if (j != 0) {
-                    if (j - 1 < table_times[i].size() && table_times[i][j - 1] >= 0) {
-                        s = std::to_string(table_times[i][j - 1]) + MINS.at(lang);
-                    } else if (l != BR) {
-                        s = "––";
-                    } else { // BR
-                        // Output label
-                        if (j == 1) {
-                            s = first_label;
-                        } else if (j == 3) {
-                            s = last_label;
-                        }
-
-                        // Output train times
-                        if (j == 2) { // first train
-                            if (!sameTime(first_last_times[i][0], INVALID_TIME)) {
-                                s = timeToStr(first_last_times[i][0]);
-                            } else {
-                                s = "––";
-                            }
-                        } else if (j == 4) { // last train
-                            if (!sameTime(first_last_times[i][1], INVALID_TIME)) {
-                                s = timeToStr(first_last_times[i][1]);
-                            } else {
-                                s = "––";
-                            }
-                        }
-                    }
-                }
-            }
+    int day_type, now_mins;
+    getTaipeiTime(&day_type, &now_mins);
 
-            jstring js = env->NewStringUTF(s.c_str());
-            env->SetObjectArrayElement(cols, j, js);
-            env->DeleteLocalRef(js);
+    jint buf[64]; // Lines have at most 4 destinations
+    int n = dests.size() * per_dest;
+    if (per_dest <= 0 || n > 64 || env->GetArrayLength(out) < n) {
+        return 0;
+    }
+
+    {
+        std::lock_guard<std::mutex> lock(state->board_mutex); // Per engine, so two engines on different dirs never share a board
+
+        if (state->board_engine != currentEngine() || !boardMatches(state->board, stn, day_type, dests)) {
+            state->board = buildNextTrainBoard(stn, day_type, dests);
+            state->board_engine = currentEngine();
         }
 
-        env->SetObjectArrayElement(rows, i, cols);
-        env->DeleteLocalRef(cols);
+        nextTrainMinutes(state->board, now_mins, per_dest, buf);
     }
 
-    return rows;
+    env->SetIntArrayRegion(out, 0, n, buf);
+    return dests.size();
 }
 
-extern "C"
-JNIEXPORT jint JNICALL
-Java_com_shun4midx_mrt_MainActivity_getFare(JNIEnv* env, jobject, jstring line1_code, jint st1, jstring line2_code, jint st2, jint ageInt) {
-    const char* raw1 = env->GetStringUTFChars(line1_code, nullptr);
-    std::string code1(raw1);
-    env->ReleaseStringUTFChars(line1_code, raw1);
+// ======== FARES ======== //
+// PRICE_TABLE by station id for Java's FareTable, loaded once so fare lookups never cross JNI
+// Prices are stored as fare classes (index into the sorted distinct adult prices) to fit a byte
+static std::vector<int> fareClassPrices() {
+    std::vector<int> prices;
 
-    const char* raw2 = env->GetStringUTFChars(line2_code, nullptr);
-    std::string code2(raw2);
-    env->ReleaseStringUTFChars(line2_code, raw2);
+    for (const std::vector<int>& row : PRICE_TABLE) {
+        prices.insert(prices.end(), row.begin(), row.end());
+    }
 
-    Line l1 = LINES.at(code1);
-    Line l2 = LINES.at(code2);
+    std::sort(prices.begin(), prices.end());
+    prices.erase(std::unique(prices.begin(), prices.end()), prices.end());
+    return prices;
+}
 
-    Station a{l1, (int)st1};
-    Station b{l2, (int)st2};
+extern "C"
+JNIEXPORT jbyteArray JNICALL
+Java_com_shun4midx_mrt_MrtEngine_getFareClassMatrix(JNIEnv* env, jobject) {
+    std::vector<int> prices = fareClassPrices();
+    int n = stationCount();
+
+    // Lower triangle, row i holds ids 0..i
+    std::vector<jbyte> matrix;
+    matrix.reserve(n * (n + 1) / 2);
+
+    for (int i = 0; i < n; ++i) {
+        for (int j = 0; j <= i; ++j) {
+            int price = travelPrice(stationFromId(i), stationFromId(j), ADULT);
+            matrix.push_back(std::lower_bound(prices.begin(), prices.end(), price) - prices.begin());
+        }
+    }
 
+    jbyteArray arr = env->NewByteArray(matrix.size());
+    env->SetByteArrayRegion(arr, 0, matrix.size(), matrix.data());
+    return arr;
+}
+
+extern "C"
+JNIEXPORT jintArray JNICALL
+Java_com_shun4midx_mrt_MrtEngine_getFareClassPrices(JNIEnv* env, jobject, jint ageInt) {
     // ticket type
     TicketType type;
 
@@ -333,195 +361,167 @@ Java_com_shun4midx_mrt_MainActivity_getFare(JNIEnv* env, jobject, jstring line1_
             type = ADULT;
     }
 
-    int fare = travelPrice(a, b, type);
+    std::vector<jint> prices;
+    for (int price : fareClassPrices()) {
+        if (type == CHILD) {
+            price = ADULT_TO_CHILD_PRICE.at(price);
+        } else if (type == ELDERLY) {
+            price = ADULT_TO_ELDERLY_PRICE.at(price);
+        }
+        prices.push_back(price);
+    }
 
-    return (jint)fare;
+    jintArray arr = env->NewIntArray(prices.size());
+    env->SetIntArrayRegion(arr, 0, prices.size(), prices.data());
+    return arr;
 }
 
-extern "C"
-JNIEXPORT jstring JNICALL
-Java_com_shun4midx_mrt_MainActivity_computeFastestRoute(JNIEnv* env, jobject, jstring line1_code, jint st1, jstring line2_code, jint st2, jint langInt, jint ticketInt) {
+// ======== ROUTE RESULTS ======== //
+// Routes go to Java as station ids and minutes, MainActivity formats them (fares from its FareTable) so a language or age switch doesn't need another routing pass
+// All of a query's routes cross JNI as one int[]: the count, then per route its stop count n, interchanges, n station ids, n arrivals, n departures. RouteResult.unpack reads it back
+static void packRoutes(const std::vector<RoutedPath>& results, std::vector<jint>& out) {
+    out.push_back(results.size());
 
-    const char* raw1 = env->GetStringUTFChars(line1_code, nullptr);
-    std::string code1(raw1);
-    env->ReleaseStringUTFChars(line1_code, raw1);
+    for (const RoutedPath& rp : results) {
+        int n = rp.path.size();
 
-    const char* raw2 = env->GetStringUTFChars(line2_code, nullptr);
-    std::string code2(raw2);
-    env->ReleaseStringUTFChars(line2_code, raw2);
+        out.push_back(n);
+        out.push_back(rp.interchange_count);
 
-    Line l1 = LINES.at(code1);
-    Line l2 = LINES.at(code2);
+        for (const Station& stn : rp.path) {
+            out.push_back(stationId(stn));
+        }
+        for (const auto& [arrive, depart] : rp.times) {
+            out.push_back(timeToMins(arrive));
+        }
+        for (const auto& [arrive, depart] : rp.times) {
+            out.push_back(timeToMins(depart));
+        }
+    }
+}
 
-    Station src{l1, (int)st1};
-    Station dst{l2, (int)st2};
+static jintArray routeResultsToJava(JNIEnv* env, const std::vector<RoutedPath>& results) {
+    std::vector<jint> out;
+    packRoutes(results, out);
+    return intsToJava(env, out);
+}
 
-    Language lang = static_cast<Language>(langInt);
+extern "C"
+JNIEXPORT jobjectArray JNICALL
+Java_com_shun4midx_mrt_MrtEngine_getStationCodes(JNIEnv* env, jobject) {
+    std::vector<std::string> codes;
 
-    // Invalid
-    std::string output;
-    if (sameStation(src, dst)) {
-        if (lang == en) {
-            output = "No such path available";
-        } else if (lang == zh) {
-            output = "沒有這樣的路徑";
-        } else if (lang == jp) {
-            output = "そのような道はありません";
-        } else if (lang == kr) {
-            output = "그런 길은 없어요";
-        }
-        return env->NewStringUTF(output.c_str());
+    for (int id = 0; id < stationCount(); ++id) {
+        codes.push_back(stationToCode(stationFromId(id)));
     }
 
-    // ticket type
-    TicketType type;
+    return stringsToJava(env, codes);
+}
 
-    switch (ticketInt) {
-        case 0: // Java CHILD
-            type = CHILD;
-            break;
-        case 1: // Java ADULT
-            type = ADULT;
-            break;
-        case 2: // Java ELDERLY
-            type = ELDERLY;
-            break;
-        default:
-            type = ADULT;
-    }
+extern "C"
+JNIEXPORT jobjectArray JNICALL
+Java_com_shun4midx_mrt_MrtEngine_getStationNames(JNIEnv* env, jobject, jint langInt) {
+    std::vector<std::string> names;
 
-    int day_type, now_mins;
-    getTaipeiTime(&day_type, &now_mins);
+    for (int id = 0; id < stationCount(); ++id) {
+        names.push_back(getName(stationFromId(id), langInt));
+    }
 
-    std::vector<RoutedPath> results = routeDefault(src, dst, Time{now_mins / 60, now_mins % 60}, day_type, 3);
+    return stringsToJava(env, names);
+}
 
-    for (const auto& rp : results) {
-        output += pathDetailsToUser(rp.path, Time{now_mins / 60, now_mins % 60}, day_type, lang, type);
-        output += "\n\n";
+extern "C"
+JNIEXPORT jintArray JNICALL
+Java_com_shun4midx_mrt_MrtEngine_getStationGroups(JNIEnv* env, jobject) {
+    std::vector<jint> groups(stationCount());
+
+    for (int id = 0; id < stationCount(); ++id) {
+        groups[id] = id;
+        for (const Station& s : getEquivalentStations(stationFromId(id))) {
+            int other = stationId(s);
+            if (other >= 0 && other < groups[id]) {
+                groups[id] = other;
+            }
+        }
     }
 
-    return env->NewStringUTF(output.c_str());
+    return intsToJava(env, groups);
 }
 
 extern "C"
-JNIEXPORT jstring JNICALL
-Java_com_shun4midx_mrt_MainActivity_computeLeastInterchangeRoute(JNIEnv* env, jobject, jstring line1_code, jint st1, jstring line2_code, jint st2, jint langInt, jint ticketInt) {
+JNIEXPORT void JNICALL
+Java_com_shun4midx_mrt_MrtEngine_cancelRouting(JNIEnv* env, jobject thiz) {
+    EngineScope scope(nullptr, stateArg(env, thiz)); // Only this engine's searches
+    cancelRouting();
+}
 
-    const char* raw1 = env->GetStringUTFChars(line1_code, nullptr);
-    std::string code1(raw1);
-    env->ReleaseStringUTFChars(line1_code, raw1);
+extern "C"
+JNIEXPORT jintArray JNICALL
+Java_com_shun4midx_mrt_MrtEngine_packedFastestRoute(JNIEnv* env, jobject thiz, jint from, jint to, jint algorithm) {
+    QueryTimer timer("computeFastestRoute");
+    EngineScope scope(engineArg(env, thiz), stateArg(env, thiz));
 
-    const char* raw2 = env->GetStringUTFChars(line2_code, nullptr);
-    std::string code2(raw2);
-    env->ReleaseStringUTFChars(line2_code, raw2);
+    Station src = stationArg(from);
+    Station dst = stationArg(to);
 
-    Line l1 = LINES.at(code1);
-    Line l2 = LINES.at(code2);
+    // Invalid, MainActivity shows "no such path" for an empty array
+    if (sameStation(src, dst)) {
+        return routeResultsToJava(env, {});
+    }
 
-    Station src{l1, (int)st1};
-    Station dst{l2, (int)st2};
+    int day_type, now_mins;
+    getTaipeiTime(&day_type, &now_mins);
 
-    Language lang = static_cast<Language>(langInt);
+    uint64_t generation = routingGeneration();
+    std::vector<RoutedPath> results = routeDefault(src, dst, Time{now_mins / 60, now_mins % 60}, day_type, 3, algorithmArg(algorithm));
 
-    // Invalid
-    std::string output;
-    if (sameStation(src, dst)) {
-        if (lang == en) {
-            output = "No such path available";
-        } else if (lang == zh) {
-            output = "沒有這樣的路徑";
-        } else if (lang == jp) {
-            output = "そのような道はありません";
-        } else if (lang == kr) {
-            output = "그런 길은 없어요";
-        }
-        return env->NewStringUTF(output.c_str());
+    if (routingGeneration() != generation) { // Cancelled, the partial results mustn't be cached
+        return nullptr;
     }
 
-    // ticket type
-    TicketType type;
+    return routeResultsToJava(env, results);
+}
 
-    switch (ticketInt) {
-        case 0: // Java CHILD
-            type = CHILD;
-            break;
-        case 1: // Java ADULT
-            type = ADULT;
-            break;
-        case 2: // Java ELDERLY
-            type = ELDERLY;
-            break;
-        default:
-            type = ADULT;
+extern "C"
+JNIEXPORT jintArray JNICALL
+Java_com_shun4midx_mrt_MrtEngine_packedLeastInterchangeRoute(JNIEnv* env, jobject thiz, jint from, jint to) {
+    QueryTimer timer("computeLeastInterchangeRoute");
+    EngineScope scope(engineArg(env, thiz), stateArg(env, thiz));
+
+    Station src = stationArg(from);
+    Station dst = stationArg(to);
+
+    // Invalid, MainActivity shows "no such path" for an empty array
+    if (sameStation(src, dst)) {
+        return routeResultsToJava(env, {});
     }
 
     int day_type, now_mins;
     getTaipeiTime(&day_type, &now_mins);
 
+    uint64_t generation = routingGeneration();
     std::vector<RoutedPath> results = routeLeastInterchange(src, dst, Time{now_mins / 60, now_mins % 60}, day_type, 3);
 
-    for (const auto& rp : results) {
-        output += pathDetailsToUser(rp.path, Time{now_mins / 60, now_mins % 60}, day_type, lang, type);
-        output += "\n\n";
-    }
-
-    if (output.size() > 0) {
-        output.pop_back();
+    if (routingGeneration() != generation) { // Cancelled, the partial results mustn't be cached
+        return nullptr;
     }
 
-    return env->NewStringUTF(output.c_str());
+    return routeResultsToJava(env, results);
 }
 
 
 extern "C"
-JNIEXPORT jstring JNICALL
-Java_com_shun4midx_mrt_MainActivity_computeCustomRoute(JNIEnv *env, jobject thiz, jstring from_line, jint from_station, jstring to_line, jint to_station, jobjectArray must_stations, jobjectArray avoid_stations, jobjectArray must_lines, jobjectArray avoid_lines, jboolean minimize_time, jboolean minimize_transfers, jint lang_int, jint age_group) {
-    const char* raw1 = env->GetStringUTFChars(from_line, nullptr);
-    std::string code1(raw1);
-    env->ReleaseStringUTFChars(from_line, raw1);
+JNIEXPORT jintArray JNICALL
+Java_com_shun4midx_mrt_MrtEngine_packedCustomRoute(JNIEnv *env, jobject thiz, jint from, jint to, jintArray must_stations, jintArray avoid_stations, jintArray must_lines, jintArray avoid_lines, jboolean minimize_time, jboolean minimize_transfers) {
+    QueryTimer timer("computeCustomRoute");
+    EngineScope scope(engineArg(env, thiz), stateArg(env, thiz));
 
-    const char* raw2 = env->GetStringUTFChars(to_line, nullptr);
-    std::string code2(raw2);
-    env->ReleaseStringUTFChars(to_line, raw2);
+    Station src = stationArg(from);
+    Station dst = stationArg(to);
 
-    Line l1 = LINES.at(code1);
-    Line l2 = LINES.at(code2);
-
-    Station src{l1, (int)from_station};
-    Station dst{l2, (int)to_station};
-
-    Language lang = static_cast<Language>(lang_int);
-
-    // Invalid
-    std::string output;
+    // Invalid, MainActivity shows "no such path" for an empty array
     if (sameStation(src, dst)) {
-        if (lang == en) {
-            output = "No such path available";
-        } else if (lang == zh) {
-            output = "沒有這樣的路徑";
-        } else if (lang == jp) {
-            output = "そのような道はありません";
-        } else if (lang == kr) {
-            output = "그런 길은 없어요";
-        }
-        return env->NewStringUTF(output.c_str());
-    }
-
-    // ticket type
-    TicketType type;
-
-    switch (age_group) {
-        case 0: // Java CHILD
-            type = CHILD;
-            break;
-        case 1: // Java ADULT
-            type = ADULT;
-            break;
-        case 2: // Java ELDERLY
-            type = ELDERLY;
-            break;
-        default:
-            type = ADULT;
+        return routeResultsToJava(env, {});
     }
 
     int day_type, now_mins;
@@ -545,149 +545,158 @@ Java_com_shun4midx_mrt_MainActivity_computeCustomRoute(JNIEnv *env, jobject thiz
     */
 
     RouteConstraints rc;
+    rc.must_stations = stationsArg(env, must_stations);
+    rc.avoid_stations = stationsArg(env, avoid_stations);
+    rc.must_lines = linesArg(env, must_lines);
+    rc.avoid_lines = linesArg(env, avoid_lines);
 
-    int count = env->GetArrayLength(must_stations);
-
-    for (int i = 0; i < count; ++i) {
-
-        jstring js = (jstring) env->GetObjectArrayElement(must_stations, i);
-        const char* raw = env->GetStringUTFChars(js, nullptr);
-
-        std::string code(raw);
-        env->ReleaseStringUTFChars(js, raw);
+    rc.minimize_time = minimize_time;
+    rc.minimize_interchanges = minimize_transfers;
 
-        Line line = LINES.at(code.substr(0, code.find_first_of("0123456789")));
-        int station = std::stoi(code.substr(code.find_first_of("0123456789")));
+    uint64_t generation = routingGeneration();
+    std::vector<RoutedPath> results = routeCustom(src, dst, Time{now_mins / 60, now_mins % 60}, day_type, rc, 3);
 
-        rc.must_stations.push_back(Station{line, station});
+    if (routingGeneration() != generation) { // Cancelled, the partial results mustn't be cached
+        return nullptr;
     }
 
-    count = env->GetArrayLength(avoid_stations);
-
-    for (int i = 0; i < count; ++i) {
+    return routeResultsToJava(env, results);
+}
+extern "C"
+JNIEXPORT jintArray JNICALL
+Java_com_shun4midx_mrt_MrtEngine_packedManualPath(JNIEnv *env, jobject thiz, jintArray stations) {
+    QueryTimer timer("computeManualPath");
+    EngineScope scope(engineArg(env, thiz), stateArg(env, thiz));
 
-        jstring js = (jstring) env->GetObjectArrayElement(avoid_stations, i);
-        const char* raw = env->GetStringUTFChars(js, nullptr);
+    std::vector<Station> stn_path = stationsArg(env, stations);
 
-        std::string code(raw);
-        env->ReleaseStringUTFChars(js, raw);
+    int day_type, now_mins;
+    getTaipeiTime(&day_type, &now_mins);
 
-        Line line = LINES.at(code.substr(0, code.find_first_of("0123456789")));
-        int station = std::stoi(code.substr(code.find_first_of("0123456789")));
+    // Evaluate, an impossible path gives an empty array
+    RoutedPath rp;
+    rp.path = stn_path;
 
-        rc.avoid_stations.push_back(Station{line, station});
+    if (stn_path.size() < 2 || tryPathETA(stn_path, Time{now_mins / 60, now_mins % 60}, day_type, &rp.times) != ETA_OK) {
+        return routeResultsToJava(env, {});
     }
 
-    count = env->GetArrayLength(must_lines);
+    rp.total_mins = timeToMins(rp.times.back().first) - now_mins;
+    rp.interchange_count = countInterchanges(stn_path);
 
-    for (int i = 0; i < count; ++i) {
+    return routeResultsToJava(env, {rp});
+}
 
-        jstring js = (jstring) env->GetObjectArrayElement(must_lines, i);
-        const char* raw = env->GetStringUTFChars(js, nullptr);
+// ======== ONE TO ALL ======== //
+extern "C"
+JNIEXPORT jintArray JNICALL
+Java_com_shun4midx_mrt_MrtEngine_computeArrivalsFrom(JNIEnv* env, jobject thiz, jint station) {
+    QueryTimer timer("computeArrivalsFrom");
+    EngineScope scope(engineArg(env, thiz), stateArg(env, thiz));
 
-        std::string code(raw);
-        env->ReleaseStringUTFChars(js, raw);
+    Station src = stationArg(station);
 
-        Line line = LINES.at(code);
+    int day_type, now_mins;
+    getTaipeiTime(&day_type, &now_mins);
 
-        rc.must_lines.push_back(line);
+    // Station id -> earliest arrival, then the departure minute they're all from
+    uint64_t generation = routingGeneration();
+    std::vector<jint> out;
+    if (validStation(src)) {
+        std::vector<int> arrivals = earliestArrivals(*transitNetwork(day_type), src, now_mins, day_type);
+        out.assign(arrivals.begin(), arrivals.end());
+    } else {
+        out.assign(stationCount(), -1);
     }
+    out.push_back(now_mins);
 
-    count = env->GetArrayLength(avoid_lines);
-
-    for (int i = 0; i < count; ++i) {
-
-        jstring js = (jstring) env->GetObjectArrayElement(avoid_lines, i);
-        const char* raw = env->GetStringUTFChars(js, nullptr);
-
-        std::string code(raw);
-        env->ReleaseStringUTFChars(js, raw);
+    if (routingGeneration() != generation) { // Cancelled, the scan stopped part way
+        return nullptr;
+    }
 
-        Line line = LINES.at(code);
+    return intsToJava(env, out);
+}
 
-        rc.avoid_lines.push_back(line);
-    }
+extern "C"
+JNIEXPORT jintArray JNICALL
+Java_com_shun4midx_mrt_MrtEngine_computeReachable(JNIEnv* env, jobject thiz, jint station) {
+    QueryTimer timer("computeReachable");
+    EngineScope scope(engineArg(env, thiz), stateArg(env, thiz));
 
-    rc.minimize_time = minimize_time;
-    rc.minimize_interchanges = minimize_transfers;
+    Station src = stationArg(station);
+    int n = stationCount();
 
-    std::vector<RoutedPath> results = routeCustom(src, dst, Time{now_mins / 60, now_mins % 60}, day_type, rc, 3);
+    int day_type, now_mins;
+    getTaipeiTime(&day_type, &now_mins);
 
-    for (const auto& rp : results) {
-        output += pathDetailsToUser(rp.path, Time{now_mins / 60, now_mins % 60}, day_type, lang, type);
-        output += "\n\n";
+    // Station id -> arrival, station id -> interchanges, then the departure minute
+    uint64_t generation = routingGeneration();
+    std::vector<jint> out(2 * n + 1, -1);
+    if (validStation(src)) {
+        std::vector<ReachLabel> labels = isochrone(*raptorNetwork(day_type), src, now_mins, day_type);
+        for (int id = 0; id < n; ++id) {
+            out[id] = labels[id].arr;
+            out[n + id] = labels[id].interchanges;
+        }
     }
+    out[2 * n] = now_mins;
 
-    if (output.size() > 0) {
-        output.pop_back();
-    } else {
-        if (lang == en) {
-            output = "No such path available";
-        } else if (lang == zh) {
-            output = "沒有這樣的路徑";
-        } else if (lang == jp) {
-            output = "そのような道はありません";
-        } else if (lang == kr) {
-            output = "그런 길은 없어요";
-        }
+    if (routingGeneration() != generation) { // Cancelled, the rounds stopped part way
+        return nullptr;
     }
 
-    return env->NewStringUTF(output.c_str());
+    return intsToJava(env, out);
 }
+
+// ======== PROFILES ======== //
 extern "C"
-JNIEXPORT jstring JNICALL
-Java_com_shun4midx_mrt_MainActivity_computeManualPath(JNIEnv *env, jobject thiz, jobjectArray stations, jint lang, jint age_group) {
-    int count = env->GetArrayLength(stations);
-    std::vector<Station> stn_path;
+JNIEXPORT jintArray JNICALL
+Java_com_shun4midx_mrt_MrtEngine_packedRouteProfile(JNIEnv* env, jobject thiz, jint from, jint to, jint window_mins) {
+    QueryTimer timer("computeRouteProfile");
+    EngineScope scope(engineArg(env, thiz), stateArg(env, thiz));
 
-    for (int i = 0; i < count; ++i) {
+    Station src = stationArg(from);
+    Station dst = stationArg(to);
 
-        jstring js = (jstring) env->GetObjectArrayElement(stations, i);
-        const char* raw = env->GetStringUTFChars(js, nullptr);
+    int day_type, now_mins;
+    getTaipeiTime(&day_type, &now_mins);
 
-        std::string code(raw);
-        env->ReleaseStringUTFChars(js, raw);
+    int to_mins = now_mins + std::max((int)window_mins, 0);
 
-        Line line = LINES.at(code.substr(0, code.find_first_of("0123456789")));
-        int station = std::stoi(code.substr(code.find_first_of("0123456789")));
+    uint64_t generation = routingGeneration();
+    std::vector<RoutedPath> results;
 
-        stn_path.push_back(Station{line, station});
+    // Invalid, MainActivity shows "no such path" for no journeys
+    if (validStation(src) && validStation(dst) && !sameStation(src, dst)) {
+        results = routeProfile(src, dst, now_mins, to_mins, day_type);
     }
 
-    // ticket type
-    TicketType type;
-
-    switch (age_group) {
-        case 0: // Java CHILD
-            type = CHILD;
-            break;
-        case 1: // Java ADULT
-            type = ADULT;
-            break;
-        case 2: // Java ELDERLY
-            type = ELDERLY;
-            break;
-        default:
-            type = ADULT;
+    if (routingGeneration() != generation) { // Cancelled, the partial results mustn't be cached
+        return nullptr;
     }
 
-    int day_type, now_mins;
-    getTaipeiTime(&day_type, &now_mins);
+    // The window, then the journeys packed like routeResultsToJava
+    std::vector<jint> out = {now_mins, to_mins};
+    packRoutes(results, out);
 
-    // Evaluate
-    std::string output;
-    try {
-        output = pathDetailsToUser(stn_path, Time{now_mins / 60, now_mins % 60}, day_type, static_cast<const Language>(lang), type);
-    } catch (...) {
-        if (lang == en) {
-            output = "No such path available";
-        } else if (lang == zh) {
-            output = "沒有這樣的路徑";
-        } else if (lang == jp) {
-            output = "そのような道はありません";
-        } else if (lang == kr) {
-            output = "그런 길은 없어요";
-        }
-    }
-    return env->NewStringUTF(output.c_str());
-}
\ No newline at end of file
+    return intsToJava(env, out);
+}
+
+// ======== TRACE ======== //
+extern "C"
+JNIEXPORT jstring JNICALL
+Java_com_shun4midx_mrt_MrtEngine_getTraceReport(JNIEnv* env, jobject) {
+    return env->NewStringUTF(traceReport().c_str());
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_com_shun4midx_mrt_MrtEngine_resetTrace(JNIEnv* env, jobject) {
+    resetTrace();
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_com_shun4midx_mrt_MrtEngine_traceFormatting(JNIEnv* env, jobject, jlong nanos) {
+    traceStage(TRACE_FORMAT, nanos);
+}
@@ -15,7 +15,10 @@ import android.graphics.Typeface;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.Trace;
+import android.text.Editable;
 import android.text.Html;
+import android.text.TextWatcher;
 import android.text.method.LinkMovementMethod;
 import android.view.Gravity;
 import android.view.Menu;
@@ -24,28 +27,38 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.CheckBox;
+import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Spinner;
 import android.widget.LinearLayout;
+import android.widget.ScrollView;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 enum RouteStrategy {
     FASTEST,
     LEAST_INTERCHANGE,
+    NEXT_HOUR, // Every good option leaving within PROFILE_WINDOW_MINS
     CUSTOM
 }
 
@@ -57,12 +70,11 @@ public class MainActivity extends AppCompatActivity {
 
     LinearLayout nextTrainControls;
     LinearLayout trainCostControls;
+    LinearLayout originControls;
 
-    static {
-        System.loadLibrary("mrt");
-    }
+    final MrtEngine engine = new MrtEngine();
 
-    Map<String, String[]> stationsByLine = new HashMap<>();
+    int shownMapRes; // 0 before the first updateMapImage
 
     // ===== ROUTE PLANNER UI =====
     LinearLayout routePlannerControls;
@@ -96,6 +108,69 @@ public class MainActivity extends AppCompatActivity {
     LinearLayout manualPathControls;
     List<StationRow> customPathRows = new ArrayList<>();
 
+    // ===== STATIONS =====
+    // One catalog and one adapter per list, shared by every line/station spinner pair. A language switch relabels the adapters in place
+    StationCatalog catalog;
+    ArrayAdapter<LineItem> lineAdapter;
+    final List<ArrayAdapter<String>> stationAdapters = new ArrayList<>(); // line index -> station rows
+
+    static final int SEARCH_RESULTS = 6;
+    StationSearch stationSearch; // null until built, see setupStationSearch
+    LinearLayout stationSearchControls;
+    EditText stationSearchBox;
+
+    // ===== ROUTE RESULTS =====
+    // Kept as data so a language switch re-renders them instead of routing again
+    RouteFormatter routeFormatter;
+    FareTable fareTable;
+
+    RouteResult[] shownRouteResults; // null when nothing is shown
+    AgeGroup shownRouteAge;
+    final RouteResultCache routeCache = new RouteResultCache(); // Same trip again this minute, e.g. toggling back to a strategy, is instant
+    RouteResult[] shownManualResults;
+    AgeGroup shownManualAge;
+
+    // ===== ROUTING EXECUTOR =====
+    // One worker for every routing request, so they queue instead of running side by side. Within a mode only the newest result is shown
+    final ExecutorService routingExecutor = Executors.newSingleThreadExecutor();
+    final AtomicInteger routeGeneration = new AtomicInteger(); // route planner + custom route, they share the result box
+    final AtomicInteger manualGeneration = new AtomicInteger();
+    volatile AtomicInteger runningGeneration; // mode the worker is busy with, null when idle
+    volatile String runningQuery; // what it's computing, null if not a cached query
+
+    static final long ROUTE_DEBOUNCE_MS = 250; // Scrolling through a station spinner shouldn't route every station passed
+    private final Handler routingHandler = new Handler(Looper.getMainLooper());
+    private final Runnable debouncedRouteRecompute = this::recomputeRoutePlanner;
+    static final int PROFILE_WINDOW_MINS = 60;
+
+    // ===== NEXT TRAIN BOARD =====
+    // Rows are built once per station and language, each minute tick only rewrites the cells that changed
+    static final int NEXT_TRAIN_COLS = 4; // Upcoming trains per destination
+    static final int NEXT_TRAIN_MAX_DESTS = 4;
+    final int[] nextTrainMins = new int[NEXT_TRAIN_MAX_DESTS * NEXT_TRAIN_COLS];
+    final int[] shownNextTrainMins = new int[NEXT_TRAIN_MAX_DESTS * NEXT_TRAIN_COLS];
+    TextView[][] nextTrainCells; // dest idx -> cells, first one is the destination
+    String nextTrainBoardKey; // line + station + language the rows were built for, null if none
+
+    // ===== FROM_STATION / REACHABLE UI =====
+    // Earliest arrival and fare to every station from one origin: one native scan, fares from the FareTable
+    TextView originStartLabel;
+    Spinner originLine, originStation;
+    LinearLayout originTable;
+    final AtomicInteger originGeneration = new AtomicInteger();
+    int[] shownArrivals; // station id -> arrival mins (-1 unreachable), last element the departure minute. null when nothing is shown
+    int shownOriginId = -1;
+    LinearLayout[] originRows; // station id -> row, shaded by travel time
+    TextView[][] originCells; // station id -> {station, arrival, travel time, fare}
+    String originTableLang; // language the rows were built in, null if the table shows something else
+
+    // REACHABLE shares the origin controls and table: stations within a time limit, leaving now
+    static final int[] REACH_LIMITS = {10, 15, 20, 30, 45, 60, 90}; // mins
+    LinearLayout reachLimitRow;
+    TextView reachLimitLabel;
+    Spinner reachLimit;
+    int[] shownReach; // station id -> arrival, then station id -> interchanges (-1 unreachable), then the departure minute. null when nothing is shown
+
     // ===== TRAIN_COST UI =====
     TextView costStartLabel, costEndLabel;
     Spinner costFromLine, costFromStation;
@@ -124,9 +199,11 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void run() {
 
-                // Only refresh if still in NEXT_TRAIN mode
+                // Only refresh the modes that show live times
                 if (currentMode == Mode.NEXT_TRAIN) {
                     updateNextTrainUI();
+                } else if (isOriginMode()) {
+                    updateOriginUI();
                 }
 
                 // After first alignment, run every exact minute
@@ -145,32 +222,71 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    private void copyAssetFolder(String assetDir, File outDir) throws IOException {
-        String[] files = getAssets().list(assetDir);
-        if (files == null) return;
+    // ===== TIMETABLE DATA =====
+    private final CountDownLatch dataReady = new CountDownLatch(1);
+    private final List<Runnable> dataReadyCallbacks = new ArrayList<>();
 
-        if (!outDir.exists()) outDir.mkdirs();
+    void prepareTimetableData() {
+        TimetableAssets.prepareOnce(this).whenComplete((dataDir, error) -> {
+            if (error != null) { // Not ready: queries keep waiting rather than run without timetables
+                error.printStackTrace();
+                runOnUiThread(this::showTimetableError);
+                return;
+            }
 
-        for (String file : files) {
-            String assetPath = assetDir + "/" + file;
-            File outFile = new File(outDir, file);
+            engine.setDataDir(dataDir.getAbsolutePath());
+            dataReady.countDown();
 
-            String[] subFiles = getAssets().list(assetPath);
-            if (subFiles != null && subFiles.length > 0) {
-                // directory
-                copyAssetFolder(assetPath, outFile);
-            } else {
-                // file
-                try (InputStream in = getAssets().open(assetPath);
-                     OutputStream out = new FileOutputStream(outFile)) {
-
-                    byte[] buf = new byte[4096];
-                    int len;
-                    while ((len = in.read(buf)) > 0) {
-                        out.write(buf, 0, len);
-                    }
+            runOnUiThread(() -> {
+                for (Runnable r : dataReadyCallbacks) {
+                    r.run();
                 }
-            }
+                dataReadyCallbacks.clear();
+            });
+        });
+    }
+
+    String[] getTimetableErrorLabels() { // Message, retry
+        switch (getLanguage()) {
+            case "en": return new String[]{"Couldn't load the timetables. Check your free storage and try again.", "Retry"};
+            case "jp": return new String[]{"時刻表を読み込めませんでした。空き容量を確認して、もう一度お試しください。", "再試行"};
+            case "kr": return new String[]{"시간표를 불러오지 못했습니다. 저장 공간을 확인한 후 다시 시도하세요.", "다시 시도"};
+            default:   return new String[]{"無法載入時刻表，請確認儲存空間後再試一次。", "重試"};
+        }
+    }
+
+    void showTimetableError() {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+
+        String[] labels = getTimetableErrorLabels();
+        new AlertDialog.Builder(this)
+                .setMessage(labels[0])
+                .setCancelable(false)
+                .setPositiveButton(labels[1], (dialog, which) -> prepareTimetableData())
+                .show();
+    }
+
+    boolean isDataReady() {
+        return dataReady.getCount() == 0;
+    }
+
+    // UI thread: run now if the timetables are extracted, otherwise as soon as they are
+    void runWhenDataReady(Runnable r) {
+        if (isDataReady()) {
+            r.run();
+        } else {
+            dataReadyCallbacks.add(r);
+        }
+    }
+
+    // Worker threads: block until the timetables are extracted
+    void awaitDataReady() {
+        try {
+            dataReady.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -182,29 +298,9 @@ public class MainActivity extends AppCompatActivity {
 
         ImageView mrtMap = findViewById(R.id.mrtMap);
 
-        mrtMap.setOnClickListener(v -> {
-            Intent intent = new Intent(this, MapFullscreenActivity.class);
+        mrtMap.setOnClickListener(v -> openFullscreenMap());
 
-            int mapRes;
-            switch (getLanguage()) {
-                case "jp": mapRes = R.drawable.taipei_mrt_map_jp; break;
-                case "kr": mapRes = R.drawable.taipei_mrt_map_kr; break;
-                default:   mapRes = R.drawable.taipei_mrt_map_zh_en;
-            }
-
-            intent.putExtra("mapRes", mapRes);
-            startActivity(intent);
-        });
-
-        try {
-            copyAssetFolder(
-                    "arrival_times/generated",
-                    new File(getFilesDir(), "arrival_times/generated")
-            );
-            setDataDir(getFilesDir().getAbsolutePath());
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        prepareTimetableData();
 
         // Clickable links
         TextView repoLink = findViewById(R.id.repoLink);
@@ -218,24 +314,21 @@ public class MainActivity extends AppCompatActivity {
         manualPathControls.setVisibility(View.GONE);
         trainCostControls = findViewById(R.id.trainCostControls);
         trainCostControls.setVisibility(View.GONE);
+        originControls = findViewById(R.id.originControls);
+        originControls.setVisibility(View.GONE);
 
         // ======== SPINNER ======== //
         fromLine = findViewById(R.id.fromLine);
         fromStation = findViewById(R.id.fromStation);
 
-        ArrayAdapter<LineItem> adapter =
-                new ArrayAdapter<>(
-                        this,
-                        android.R.layout.simple_spinner_item,
-                        getLines()
-                );
-
-        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-        fromLine.setAdapter(adapter);
+        setupStationAdapters();
+        fromLine.setAdapter(lineAdapter);
 
-        setupTrainCostUI(adapter);
-        setupRoutePlannerUI(adapter);
+        setupTrainCostUI(lineAdapter);
+        setupOriginUI(lineAdapter);
+        setupRoutePlannerUI(lineAdapter);
         setupManualPathUI();
+        setupStationSearch();
         updateMapImage();
         setupModeButtons();
 
@@ -277,9 +370,16 @@ public class MainActivity extends AppCompatActivity {
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.main_menu, menu);
+        menu.findItem(R.id.menu_trace).setVisible(BuildConfig.DEBUG); // A debug screen, release builds never show it
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        menu.findItem(R.id.menu_trace).setTitle(getTraceLabel()); // The language may have changed since
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         if (item.getItemId() == R.id.menu_language) {
@@ -288,10 +388,84 @@ public class MainActivity extends AppCompatActivity {
         } else if (item.getItemId() == R.id.menu_age_group) {
             showAgeGroupDialog();
             return true;
+        } else if (item.getItemId() == R.id.menu_trace && BuildConfig.DEBUG) {
+            showTraceDialog();
+            return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
+    // ===== PERFORMANCE TRACE =====
+    String getTraceLabel() {
+        switch (getLanguage()) {
+            case "en": return "Performance Log";
+            case "jp": return "パフォーマンス記録";
+            case "kr": return "성능 기록";
+            default:   return "效能紀錄";
+        }
+    }
+
+    String[] getTraceButtonLabels() { // Export, reset, close
+        switch (getLanguage()) {
+            case "en": return new String[]{"Export", "Reset", "Close"};
+            case "jp": return new String[]{"書き出す", "リセット", "閉じる"};
+            case "kr": return new String[]{"내보내기", "초기화", "닫기"};
+            default:   return new String[]{"匯出", "重設", "關閉"};
+        }
+    }
+
+    String getTraceReport() {
+        return engine.getTraceReport() + "\n== Route cache ==\n" + routeCache.stats() + "\n";
+    }
+
+    void showTraceDialog() {
+        TextView text = new TextView(this);
+        text.setTypeface(Typeface.MONOSPACE);
+        text.setTextSize(10);
+        text.setTextIsSelectable(true);
+        text.setHorizontallyScrolling(true);
+        int pad = (int) (12 * getResources().getDisplayMetrics().density);
+        text.setPadding(pad, pad, pad, pad);
+        text.setText(getTraceReport());
+
+        ScrollView scroll = new ScrollView(this);
+        scroll.addView(text);
+
+        String[] buttons = getTraceButtonLabels();
+        new AlertDialog.Builder(this)
+                .setTitle(getTraceLabel())
+                .setView(scroll)
+                .setPositiveButton(buttons[0], (dialog, which) -> exportTrace())
+                .setNeutralButton(buttons[1], (dialog, which) -> engine.resetTrace())
+                .setNegativeButton(buttons[2], null)
+                .show();
+    }
+
+    // Writes the report to a file for bug reports (adb pull works too), then offers to share it
+    void exportTrace() {
+        String report = getTraceReport();
+        File dir = getExternalFilesDir("traces");
+        if (dir == null) {
+            dir = new File(getFilesDir(), "traces");
+        }
+        dir.mkdirs();
+
+        File file = new File(dir, "trace-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT).format(new Date()) + ".txt");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(report.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Toast.makeText(this, e.getMessage(), Toast.LENGTH_LONG).show();
+            return;
+        }
+        Toast.makeText(this, file.getAbsolutePath(), Toast.LENGTH_LONG).show();
+
+        Intent share = new Intent(Intent.ACTION_SEND);
+        share.setType("text/plain");
+        share.putExtra(Intent.EXTRA_SUBJECT, file.getName());
+        share.putExtra(Intent.EXTRA_TEXT, report);
+        startActivity(Intent.createChooser(share, getTraceLabel()));
+    }
+
     void showLanguageDialog() {
         final String[] langs = {"正體中文", "English", "日本語", "한국어"};
 
@@ -352,51 +526,248 @@ public class MainActivity extends AppCompatActivity {
     }
 
     void refreshStationSpinner() {
-        if (fromLine == null || fromStation == null) {
+        refreshStationSpinner(fromLine, fromStation);
+    }
+
+    int getMapRes() {
+        switch (getLanguage()) {
+            case "jp": return R.drawable.taipei_mrt_map_jp;
+            case "kr": return R.drawable.taipei_mrt_map_kr;
+            case "zh":
+            case "en":
+            default:   return R.drawable.taipei_mrt_map_zh_en;
+        }
+    }
+
+    // Only a screen-wide preview here, MapFullscreenActivity decodes the tiles it zooms into
+    void updateMapImage() {
+        int mapRes = getMapRes();
+        if (mapRes == shownMapRes) {
+            return; // zh and en share a map
+        }
+        shownMapRes = mapRes;
+
+        ImageView map = findViewById(R.id.mrtMap);
+        map.setImageBitmap(TiledMapView.decodeThumbnail(getResources(), mapRes, getResources().getDisplayMetrics().widthPixels));
+    }
+
+    // ======== MAP PICKING ======== //
+    static final int PICK_STATION_REQUEST = 1;
+
+    // In a mode that takes stations, a tap on the full map picks one for it
+    void openFullscreenMap() {
+        Intent intent = new Intent(this, MapFullscreenActivity.class);
+        intent.putExtra(MapFullscreenActivity.EXTRA_MAP_RES, getMapRes());
+
+        if (currentMode == null) {
+            startActivity(intent);
             return;
         }
-        if (fromLine.getSelectedItem() == null) {
+
+        intent.putExtra(MapFullscreenActivity.EXTRA_PICK_STATION, true);
+        intent.putExtra(MapFullscreenActivity.EXTRA_CODES, catalog.codes);
+        Toast.makeText(this, getMapPickHint(), Toast.LENGTH_SHORT).show();
+        startActivityForResult(intent, PICK_STATION_REQUEST);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+
+        if (requestCode != PICK_STATION_REQUEST || resultCode != RESULT_OK || data == null) {
             return;
         }
 
-        LineItem item = (LineItem) fromLine.getSelectedItem();
+        int station = data.getIntExtra(MapFullscreenActivity.EXTRA_STATION, -1);
+        if (station < 0 || station >= catalog.size()) {
+            return;
+        }
 
-        String[] stations =
-                getStationsDisplayList(item.code, getLanguageInt());
+        applyPickedStation(station, data.getBooleanExtra(MapFullscreenActivity.EXTRA_LONG_PRESS, false));
+    }
 
-        ArrayAdapter<String> stationAdapter =
-                new ArrayAdapter<>(
-                        this,
-                        R.layout.spinner_item_station,
-                        stations
-                );
+    // Tap: the start (or the only station), long press: the destination. The spinners' own listeners then update the mode as if picked by hand
+    // With the custom strategy open, a tap fills the first empty must or avoid station row instead, if one was added
+    void applyPickedStation(int station, boolean longPress) {
+        if (currentMode == null) {
+            return;
+        }
 
-        stationAdapter.setDropDownViewResource(
-                R.layout.spinner_item_station
-        );
+        StationRow constraintRow = currentMode == Mode.ROUTE_PLANNER && !longPress ? firstEmptyConstraintRow() : null;
+
+        switch (currentMode) {
+            case NEXT_TRAIN:
+                selectStation(fromLine, fromStation, station);
+                break;
+            case ROUTE_PLANNER:
+                if (constraintRow != null) {
+                    selectStation(constraintRow.lineSpinner, constraintRow.stationSpinner, station);
+                } else if (longPress) {
+                    selectStation(routeToLine, routeToStation, station);
+                } else {
+                    selectStation(routeFromLine, routeFromStation, station);
+                }
+                break;
+            case TRAIN_COST:
+                if (longPress) {
+                    selectStation(costToLine, costToStation, station);
+                } else {
+                    selectStation(costFromLine, costFromStation, station);
+                }
+                break;
+            case CUSTOM_PATH:
+                appendCustomPathStation(station);
+                break;
+            case FROM_STATION:
+            case REACHABLE:
+                selectStation(originLine, originStation, station);
+                break;
+        }
 
-        fromStation.setAdapter(stationAdapter);
+        String row = catalog.stationRows(catalog.lineOf[station], getLanguageInt())[catalog.rowOf(station)];
+        Toast.makeText(this, row, Toast.LENGTH_SHORT).show();
     }
 
-    void updateMapImage() {
-        ImageView map = findViewById(R.id.mrtMap);
+    void selectStation(Spinner lineSpinner, Spinner stationSpinner, int station) {
+        if (lineSpinner == null || stationSpinner == null) return;
+
+        lineSpinner.setSelection(catalog.lineOf[station]);
+        refreshStationSpinner(lineSpinner, stationSpinner);
+        stationSpinner.setSelection(catalog.rowOf(station));
+    }
+
+    // Must rows first, then avoid rows. null unless the custom strategy is open
+    StationRow firstEmptyConstraintRow() {
+        if (currentStrategy != RouteStrategy.CUSTOM) {
+            return null;
+        }
+
+        for (List<StationRow> rows : Arrays.asList(mustStationRows, avoidStationRows)) {
+            for (StationRow row : rows) {
+                if (selectedStationId(row.lineSpinner, row.stationSpinner) < 0) {
+                    return row;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Into the first empty row, or a new one at the end
+    void appendCustomPathStation(int station) {
+        for (StationRow row : customPathRows) {
+            if (selectedStationId(row.lineSpinner, row.stationSpinner) < 0) {
+                selectStation(row.lineSpinner, row.stationSpinner, station);
+                return;
+            }
+        }
+
+        addCustomPathRow();
+        StationRow row = customPathRows.get(customPathRows.size() - 1);
+        selectStation(row.lineSpinner, row.stationSpinner, station);
+    }
+
+    String getMapPickHint() {
+        boolean twoStations = currentMode == Mode.ROUTE_PLANNER || currentMode == Mode.TRAIN_COST;
+
+        if (currentMode == Mode.ROUTE_PLANNER && firstEmptyConstraintRow() != null) {
+            switch (getLanguage()) {
+                case "en": return "Tap a station to fill the empty must pass/avoid row, long-press for the destination";
+                case "jp": return "駅をタップで空いている必経駅・避ける駅の欄へ、長押しで到着駅";
+                case "kr": return "역을 탭하면 빈 반드시 지나야 할 역·피할 역 칸에, 길게 누르면 도착역";
+                case "zh":
+                default:   return "點選車站填入空白的必經／避開車站欄，長按設為終點";
+            }
+        }
 
         switch (getLanguage()) {
+            case "en":
+                return twoStations ? "Tap a station for the start, long-press for the destination" : "Tap a station to pick it";
+            case "jp":
+                return twoStations ? "駅をタップで出発駅、長押しで到着駅" : "駅をタップして選択";
+            case "kr":
+                return twoStations ? "역을 탭하면 출발역, 길게 누르면 도착역" : "역을 탭하여 선택";
             case "zh":
-                map.setImageResource(R.drawable.taipei_mrt_map_zh_en);
+            default:
+                return twoStations ? "點選車站設為起點，長按設為終點" : "點選車站即可選取";
+        }
+    }
+
+    // ======== STATION SEARCH ======== //
+    // Results on every keystroke. The index takes a moment to build, so it's built off the UI thread and whatever was typed meanwhile is searched once it's in
+    void setupStationSearch() {
+        stationSearchControls = findViewById(R.id.stationSearchControls);
+        stationSearchBox = findViewById(R.id.stationSearch);
+
+        updateStationSearchLabels();
+
+        stationSearchBox.addTextChangedListener(new TextWatcher() {
+            @Override public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+            @Override public void onTextChanged(CharSequence s, int start, int before, int count) {}
+            @Override public void afterTextChanged(Editable s) {
+                updateStationSearchResults();
+            }
+        });
+
+        StationCatalog names = catalog;
+        new Thread(() -> {
+            StationSearch built = new StationSearch(names);
+            runOnUiThread(() -> {
+                stationSearch = built;
+                updateStationSearchResults();
+            });
+        }).start();
+    }
+
+    void updateStationSearchLabels() {
+        switch (getLanguage()) {
+            case "zh":
+                stationSearchBox.setHint("🔍 搜尋車站（站名或代號）");
                 break;
             case "en":
-                map.setImageResource(R.drawable.taipei_mrt_map_zh_en);
+                stationSearchBox.setHint("🔍 Search stations (name or code)");
                 break;
             case "jp":
-                map.setImageResource(R.drawable.taipei_mrt_map_jp);
+                stationSearchBox.setHint("🔍 駅を検索（駅名または番号）");
                 break;
             case "kr":
-                map.setImageResource(R.drawable.taipei_mrt_map_kr);
+                stationSearchBox.setHint("🔍 역 검색 (역명 또는 번호)");
                 break;
         }
     }
 
+    // Tap a result for the start (or the only station), long-press it for the destination, same as on the map
+    void updateStationSearchResults() {
+        LinearLayout results = findViewById(R.id.stationSearchResults);
+        results.removeAllViews();
+
+        if (stationSearch == null) {
+            return;
+        }
+
+        int lang = getLanguageInt();
+        for (int station : stationSearch.search(stationSearchBox.getText().toString(), SEARCH_RESULTS)) {
+            int line = catalog.lineOf[station];
+
+            TextView tv = new TextView(this);
+            tv.setText(catalog.lines[line].emoji + " " + catalog.stationRows(line, lang)[catalog.rowOf(station)]);
+            tv.setTextSize(16);
+            tv.setPadding(12, 10, 12, 10);
+
+            tv.setOnClickListener(v -> pickSearchResult(station, false));
+            tv.setOnLongClickListener(v -> {
+                pickSearchResult(station, true);
+                return true;
+            });
+
+            results.addView(tv);
+        }
+    }
+
+    void pickSearchResult(int station, boolean longPress) {
+        applyPickedStation(station, longPress);
+        stationSearchBox.setText(""); // Clears the results too
+    }
+
     void applyLocale(String lang) {
         Locale locale = new Locale(lang);
         Locale.setDefault(locale);
@@ -433,7 +804,7 @@ public class MainActivity extends AppCompatActivity {
         android.widget.Toast.makeText(this, language_set, android.widget.Toast.LENGTH_SHORT).show();
 
         updateMapImage();
-        refreshStationSpinner();
+        relabelStationAdapters(); // Every station spinner keeps its selection
         setupModeButtons();
 
         getSharedPreferences("settings", MODE_PRIVATE).edit().putString("lang", lang).apply();
@@ -450,76 +821,84 @@ public class MainActivity extends AppCompatActivity {
         updateRouteStrategyUI();
         updateCostLabels();
         updateManualLabels();
-        refreshStationSpinner(costFromLine, costFromStation);
-        refreshStationSpinner(costToLine, costToStation);
-        for (StationRow row : mustStationRows) {
-            refreshStationSpinner(row.lineSpinner, row.stationSpinner);
-        }
-        for (StationRow row : avoidStationRows) {
-            refreshStationSpinner(row.lineSpinner, row.stationSpinner);
-        }
 
         if (currentMode == Mode.TRAIN_COST) {
             updateCostUI();
         }
-        resetRoutePlannerState();
-        resetManualPathState();
+
+        // Same results, just in the new language
+        renderRouteResults();
+        renderManualResults();
+
+        updateOriginLabels();
+        relabelReachLimits();
+        renderOriginResults();
+
+        updateStationSearchLabels();
+        updateStationSearchResults();
     }
 
     void clearRouteResult() {
+        routeGeneration.incrementAndGet(); // Drop anything still on its way
+        shownRouteResults = null;
+
         LinearLayout container = findViewById(R.id.routeResultContainer);
         if (container != null) {
             container.removeAllViews();
         }
     }
 
-    void resetRoutePlannerState() {
-
-        // Clear selected strategy
-        currentStrategy = null;
-        updateRouteStrategyUI();
-
-        // Reset spinners to first item
-        if (routeFromLine != null) {
-            routeFromLine.setSelection(0);
-        }
-        if (routeToLine != null) {
-            routeToLine.setSelection(0);
+    RouteFormatter getRouteFormatter() {
+        if (routeFormatter == null) {
+            routeFormatter = new RouteFormatter(catalog.codes, getFareTable());
         }
+        return routeFormatter;
+    }
 
-        refreshStationSpinner(routeFromLine, routeFromStation);
-        refreshStationSpinner(routeToLine, routeToStation);
-
-        if (currentMode == Mode.ROUTE_PLANNER) {
-            recomputeRoutePlanner();
+    FareTable getFareTable() {
+        if (fareTable == null) {
+            fareTable = engine.loadFareTable();
         }
+        return fareTable;
+    }
 
-        if (routeFromStation != null) {
-            routeFromStation.setSelection(0);
-        }
-        if (routeToStation != null) {
-            routeToStation.setSelection(0);
-        }
+    String[] getStationNamesCached() {
+        return catalog.names(getLanguageInt());
+    }
 
-        // Clear result container
-        clearRouteResult();
+    String formatRouteResults(RouteResult[] results, AgeGroup age) {
+        Trace.beginSection("mrt.format");
+        long start = System.nanoTime();
+        try {
+            return getRouteFormatter().format(results, getLanguage(), getStationNamesCached(), age);
+        } finally {
+            engine.traceFormatting(System.nanoTime() - start);
+            Trace.endSection();
+        }
     }
 
-    void resetManualPathState() {
+    void showRouteResults(RouteResult[] results, AgeGroup age) {
+        shownRouteResults = results;
+        shownRouteAge = age;
+        renderRouteResults();
+    }
 
-        for (StationRow row : customPathRows) {
+    void renderRouteResults() {
+        if (shownRouteResults != null) {
+            displayRouteResult(formatRouteResults(shownRouteResults, shownRouteAge));
+        }
+    }
 
-            if (row.lineSpinner != null) {
-                row.lineSpinner.setSelection(0);
-            }
+    void showManualResults(RouteResult[] results, AgeGroup age) {
+        shownManualResults = results;
+        shownManualAge = age;
+        renderManualResults();
+    }
 
-            if (row.stationSpinner != null) {
-                refreshStationSpinner(row.lineSpinner, row.stationSpinner);
-                row.stationSpinner.setSelection(0);
-            }
+    void renderManualResults() {
+        if (shownManualResults != null) {
+            displayManualResult(formatRouteResults(shownManualResults, shownManualAge));
         }
-
-        displayManualResult("");
     }
 
     void setAge(String age) {
@@ -538,14 +917,56 @@ public class MainActivity extends AppCompatActivity {
             updateCostUI();
         } else if (currentMode == Mode.CUSTOM_PATH) {
             recomputeManualPath();
+        } else if (currentMode == Mode.FROM_STATION) {
+            renderOriginTable(); // Only the fares change
         }
 
         updateCostLabels();
     }
 
+    // Runs work on the routing worker and shows its result, unless a newer request of the same mode came in meanwhile
+    // work returns null when it got cancelled. query names cached work, so asking for what's already running doesn't cancel it
+    <T> void submitRouting(AtomicInteger generation, String query, Supplier<T> work, Consumer<T> show) {
+        int gen = generation.incrementAndGet();
+
+        if (runningGeneration == generation && (query == null || !query.equals(runningQuery))) {
+            engine.cancelRouting(); // The running search is stale now, let it stop early
+        }
+
+        routingExecutor.execute(() -> {
+            if (generation.get() != gen) {
+                return; // Superseded while queued
+            }
+
+            awaitDataReady();
+
+            runningGeneration = generation;
+            runningQuery = query;
+            T results;
+            try {
+                results = work.get();
+            } finally {
+                runningGeneration = null;
+                runningQuery = null;
+            }
+
+            runOnUiThread(() -> {
+                if (results != null && generation.get() == gen) {
+                    show.accept(results);
+                }
+            });
+        });
+    }
+
+    void scheduleRouteRecompute() {
+        routingHandler.removeCallbacks(debouncedRouteRecompute);
+        routingHandler.postDelayed(debouncedRouteRecompute, ROUTE_DEBOUNCE_MS);
+    }
+
     void recomputeRoutePlanner() {
+        routingHandler.removeCallbacks(debouncedRouteRecompute);
 
-        if (currentStrategy == null) {
+        if (currentStrategy == null || currentStrategy == RouteStrategy.CUSTOM) {
             clearRouteResult();
             return;
         }
@@ -554,17 +975,26 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
-        LineItem fromL = (LineItem) routeFromLine.getSelectedItem();
-        LineItem toL   = (LineItem) routeToLine.getSelectedItem();
+        int from = selectedStationId(routeFromLine, routeFromStation);
+        int to   = selectedStationId(routeToLine, routeToStation);
 
-        int fromSt = parseStationNo(fromL, routeFromStation);
-        int toSt   = parseStationNo(toL, routeToStation);
-
-        if (fromSt < 0 || toSt < 0) {
+        if (from < 0 || to < 0) {
             clearRouteResult();
             return;
         }
 
+        RouteStrategy strategy = currentStrategy;
+        AgeGroup age = user_age;
+        long minute = System.currentTimeMillis() / 60_000; // Same minute boundaries as startMinuteUpdates
+        String query = strategy + " " + from + " " + to; // Fares come from the FareTable, so every age shares the results
+
+        RouteResult[] cached = routeCache.getIfPresent(minute, query);
+        if (cached != null) {
+            routeGeneration.incrementAndGet(); // Anything in flight was for another query
+            showRouteResults(cached, age);
+            return;
+        }
+
         String lang = getLanguage();
         if (lang.equals("en")) {
             displayRouteResult("Computing...");
@@ -576,24 +1006,16 @@ public class MainActivity extends AppCompatActivity {
             displayRouteResult("계산 중...");
         }
 
-        new Thread(() -> {
-
-            String result;
-
-            if (currentStrategy == RouteStrategy.FASTEST) {
-                result = computeFastestRoute(fromL.code, fromSt, toL.code, toSt, getLanguageInt(), user_age.ordinal());
-            } else if (currentStrategy == RouteStrategy.LEAST_INTERCHANGE) {
-                result = computeLeastInterchangeRoute(fromL.code, fromSt, toL.code, toSt, getLanguageInt(), user_age.ordinal());
+        submitRouting(routeGeneration, query, () -> routeCache.get(minute, query, () -> {
+            if (strategy == RouteStrategy.FASTEST) {
+                return engine.computeFastestRoute(from, to);
+            } else if (strategy == RouteStrategy.NEXT_HOUR) {
+                RouteProfile profile = engine.computeRouteProfile(from, to, PROFILE_WINDOW_MINS);
+                return profile == null ? null : profile.journeys;
             } else {
-                clearRouteResult();
-                return;
+                return engine.computeLeastInterchangeRoute(from, to);
             }
-
-            runOnUiThread(() -> {
-                displayRouteResult(result);
-            });
-
-        }).start();
+        }), results -> showRouteResults(results, age));
     }
 
     String getModeLabel(Mode mode) {
@@ -604,6 +1026,8 @@ public class MainActivity extends AppCompatActivity {
                     case ROUTE_PLANNER:return "路線規劃";
                     case CUSTOM_PATH:  return "自訂路線";
                     case TRAIN_COST:   return "票價";
+                    case FROM_STATION: return "從此出發";
+                    case REACHABLE:    return "可達範圍";
                 }
             case "en":
                 switch (mode) {
@@ -611,6 +1035,8 @@ public class MainActivity extends AppCompatActivity {
                     case ROUTE_PLANNER:return "Route Planner";
                     case CUSTOM_PATH:  return "Custom Path";
                     case TRAIN_COST:   return "Train Fares";
+                    case FROM_STATION: return "From Here";
+                    case REACHABLE:    return "Reachable";
                 }
             case "jp":
                 switch (mode) {
@@ -618,6 +1044,8 @@ public class MainActivity extends AppCompatActivity {
                     case ROUTE_PLANNER:return "経路検索";
                     case CUSTOM_PATH:  return "カスタム経路";
                     case TRAIN_COST:   return "運賃";
+                    case FROM_STATION: return "ここから";
+                    case REACHABLE:    return "到達圏";
                 }
             case "kr":
                 switch (mode) {
@@ -625,6 +1053,8 @@ public class MainActivity extends AppCompatActivity {
                     case ROUTE_PLANNER:return "경로 찾기";
                     case CUSTOM_PATH:  return "사용자 경로";
                     case TRAIN_COST:   return "요금";
+                    case FROM_STATION: return "여기서 출발";
+                    case REACHABLE:    return "도달 범위";
                 }
         }
         return "";
@@ -660,6 +1090,10 @@ public class MainActivity extends AppCompatActivity {
     void updateModeUI() {
         TextView footer = findViewById(R.id.footerStatement);
 
+        stationSearchControls.setVisibility(View.VISIBLE); // Every mode takes stations
+        originControls.setVisibility(isOriginMode() ? View.VISIBLE : View.GONE);
+        reachLimitRow.setVisibility(currentMode == Mode.REACHABLE ? View.VISIBLE : View.GONE);
+
         switch (currentMode) {
             case NEXT_TRAIN:
                 nextTrainControls.setVisibility(View.VISIBLE);
@@ -701,6 +1135,17 @@ public class MainActivity extends AppCompatActivity {
                 }
                 break;
 
+            case FROM_STATION:
+            case REACHABLE:
+                nextTrainControls.setVisibility(View.GONE);
+                routePlannerControls.setVisibility(View.GONE);
+                manualPathControls.setVisibility(View.GONE);
+                trainCostControls.setVisibility(View.GONE);
+                if (footer != null) {
+                    footer.setVisibility(View.VISIBLE); // BR arrivals are worst case here too
+                }
+                break;
+
             default: // normal case should be to show
                 nextTrainControls.setVisibility(View.GONE);
                 routePlannerControls.setVisibility(View.GONE);
@@ -739,6 +1184,8 @@ public class MainActivity extends AppCompatActivity {
                     routePlannerControls.setVisibility(View.GONE);
                     manualPathControls.setVisibility(View.GONE);
                     trainCostControls.setVisibility(View.GONE);
+                    originControls.setVisibility(View.GONE);
+                    stationSearchControls.setVisibility(View.GONE);
                     TextView footer = findViewById(R.id.footerStatement);
                     footer.setVisibility(View.VISIBLE);
                     return;
@@ -757,6 +1204,10 @@ public class MainActivity extends AppCompatActivity {
                     updateCostLabels();
                     updateCostUI();
                     stopMinuteUpdates();
+                } else if (isOriginMode()) {
+                    updateOriginLabels();
+                    updateOriginUI();        // immediate refresh
+                    startMinuteUpdates();    // then aligned refresh
                 } else {
                     stopMinuteUpdates();
                 }
@@ -779,17 +1230,12 @@ public class MainActivity extends AppCompatActivity {
 
     void updateNextTrainUI() {
 //        android.widget.Toast.makeText(this, "Updating table", Toast.LENGTH_SHORT).show();
-        LinearLayout table = findViewById(R.id.nextTrainTable);
-        table.removeAllViews();
+        if (!isDataReady()) {
+            runWhenDataReady(this::updateNextTrainUI);
+            return;
+        }
 
-        // immediate placeholder
-        TextView loading = new TextView(this);
-        loading.setText(
-                getLanguage().equals("en") ? "Updating..." :
-                        getLanguage().equals("jp") ? "更新中..." :
-                                getLanguage().equals("kr") ? "업데이트 중..." :
-                                        "更新中..."
-        );
+        LinearLayout table = findViewById(R.id.nextTrainTable);
 
         if (fromLine.getSelectedItem() == null ||
                 fromStation.getSelectedItem() == null) {
@@ -797,21 +1243,55 @@ public class MainActivity extends AppCompatActivity {
         }
 
         LineItem line = (LineItem) fromLine.getSelectedItem();
-        String item = (String) fromStation.getSelectedItem();
-        if (item.equals("––")) return;
+        int station = selectedStationId(fromLine, fromStation);
+        if (station < 0) {
+            table.removeAllViews();
+            nextTrainBoardKey = null;
+            return;
+        }
+
+        String lang = getLanguage();
 
-        String code = item.substring(line.code.length(), line.code.length() + 2); // stn num
-        int station = Integer.parseInt(code);
+        String key = station + " " + lang;
+        if (!key.equals(nextTrainBoardKey)) {
+            buildNextTrainRows(table, catalog.lineOf[station], lang);
+            nextTrainBoardKey = key;
+        }
 
-        String[][] grid = getNextTrainTable(line.code, station, 4, 5, getLanguageInt());
+        int rows = engine.getNextTrainMinutes(station, NEXT_TRAIN_COLS, nextTrainMins);
+        boolean brown = line.code.equals("BR");
 
-        for (String[] row : grid) {
+        for (int d = 0; d < rows && d < nextTrainCells.length; ++d) {
+            for (int j = 0; j < NEXT_TRAIN_COLS; ++j) {
+                int idx = d * NEXT_TRAIN_COLS + j;
+                if (nextTrainMins[idx] == shownNextTrainMins[idx]) {
+                    continue;
+                }
+                shownNextTrainMins[idx] = nextTrainMins[idx];
+
+                if (!brown) {
+                    nextTrainCells[d][j + 1].setText(nextTrainMins[idx] >= 0 ? nextTrainMins[idx] + RouteFormatter.mins(lang) : "––");
+                } else if (j < 2) { // First and last train, after their labels
+                    nextTrainCells[d][2 * j + 2].setText(nextTrainMins[idx] >= 0 ? RouteFormatter.timeStr(nextTrainMins[idx]) : "––");
+                }
+            }
+        }
+    }
+
+    void buildNextTrainRows(LinearLayout table, int lineIndex, String lang) {
+        table.removeAllViews();
+
+        LineItem line = catalog.lines[lineIndex];
+        int[] dests = engine.getNextTrainDests(lineIndex);
+        nextTrainCells = new TextView[dests.length][NEXT_TRAIN_COLS + 1];
+        Arrays.fill(shownNextTrainMins, Integer.MIN_VALUE); // Every cell gets written on the first tick
+
+        for (int d = 0; d < dests.length; ++d) {
             LinearLayout rowView = new LinearLayout(this);
             rowView.setOrientation(LinearLayout.HORIZONTAL);
 
-            for (int j = 0; j < row.length; j++) {
+            for (int j = 0; j <= NEXT_TRAIN_COLS; j++) {
                 TextView tv = new TextView(this);
-                tv.setText(row[j]);
                 tv.setTextSize(16);
                 tv.setTextColor(getColor(R.color.custom_pink));
                 tv.setPadding(12, 10, 12, 10);
@@ -819,17 +1299,27 @@ public class MainActivity extends AppCompatActivity {
                 if (j == 0) {
                     // first column: left aligned
                     tv.setGravity(Gravity.START);
+                    tv.setText(line.emoji + " " + catalog.codes[dests[d]]);
                 } else {
                     // other columns: right aligned
                     tv.setGravity(Gravity.END);
                 }
 
+                if (line.code.equals("BR")) {
+                    if (j == 1) {
+                        tv.setText(getFirstTrainLabel(lang));
+                    } else if (j == 3) {
+                        tv.setText(getLastTrainLabel(lang));
+                    }
+                }
+
                 LinearLayout.LayoutParams lp =
                         new LinearLayout.LayoutParams(0, ViewGroup.LayoutParams.WRAP_CONTENT);
 
                 lp.weight = (j == 0) ? (float)1.25 : 1;
                 tv.setLayoutParams(lp);
 
+                nextTrainCells[d][j] = tv;
                 rowView.addView(tv);
             }
 
@@ -837,6 +1327,24 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    String getFirstTrainLabel(String lang) {
+        switch (lang) {
+            case "en": return "First: ";
+            case "jp": return "始発: ";
+            case "kr": return "첫차: ";
+            default:   return "首班車: ";
+        }
+    }
+
+    String getLastTrainLabel(String lang) {
+        switch (lang) {
+            case "en": return "Last: ";
+            case "jp": return "最終: ";
+            case "kr": return "막차: ";
+            default:   return "末班車: ";
+        }
+    }
+
     void setupManualPathUI() {
 
         Button addBtn = findViewById(R.id.addCustomStationBtn);
@@ -855,7 +1363,7 @@ public class MainActivity extends AppCompatActivity {
 
     void applyManualPath() {
 
-        List<String> stations = getCustomPathStations();
+        List<Integer> stations = getCustomPathStations();
 
         if (stations.size() < 2) {
             return;
@@ -872,28 +1380,22 @@ public class MainActivity extends AppCompatActivity {
             displayManualResult("계산 중...");
         }
 
-        new Thread(() -> {
-
-            String result = computeManualPath(
-                    stations.toArray(new String[0]),
-                    getLanguageInt(),
-                    user_age.ordinal()
-            );
+        AgeGroup age = user_age;
 
-            runOnUiThread(() -> {
-                displayManualResult(result);
-            });
-
-        }).start();
+        submitRouting(manualGeneration, null, () -> engine.computeManualPath(
+                toIntArray(stations)
+        ), results -> showManualResults(results, age));
     }
 
     void recomputeManualPath() {
 
         if (currentMode != Mode.CUSTOM_PATH) return;
 
-        List<String> stations = getCustomPathStations();
+        List<Integer> stations = getCustomPathStations();
 
         if (stations.size() < 2) {
+            manualGeneration.incrementAndGet();
+            shownManualResults = null;
             displayManualResult("");
             return;
         }
@@ -909,37 +1411,15 @@ public class MainActivity extends AppCompatActivity {
             displayManualResult("계산 중...");
         }
 
-        new Thread(() -> {
-
-            String result = computeManualPath(
-                    stations.toArray(new String[0]),
-                    getLanguageInt(),
-                    user_age.ordinal()
-            );
-
-            runOnUiThread(() -> displayManualResult(result));
+        AgeGroup age = user_age;
 
-        }).start();
+        submitRouting(manualGeneration, null, () -> engine.computeManualPath(
+                toIntArray(stations)
+        ), results -> showManualResults(results, age));
     }
 
-    List<String> getCustomPathStations() {
-
-        List<String> result = new ArrayList<>();
-
-        for (StationRow row : customPathRows) {
-
-            LineItem lineItem =
-                    (LineItem) row.lineSpinner.getSelectedItem();
-
-            int stationNo =
-                    parseStationNo(lineItem, row.stationSpinner);
-
-            if (lineItem != null && stationNo >= 0) {
-                result.add(lineItem.code + stationNo);
-            }
-        }
-
-        return result;
+    List<Integer> getCustomPathStations() {
+        return getSelectedStations(customPathRows);
     }
 
     void addCustomPathRow() {
@@ -980,15 +1460,7 @@ public class MainActivity extends AppCompatActivity {
 
         container.addView(rowLayout);
 
-        ArrayAdapter<LineItem> adapter =
-                new ArrayAdapter<>(this,
-                        android.R.layout.simple_spinner_item,
-                        getLines());
-
-        adapter.setDropDownViewResource(
-                android.R.layout.simple_spinner_dropdown_item);
-
-        lineSpinner.setAdapter(adapter);
+        lineSpinner.setAdapter(lineAdapter);
 
         refreshStationSpinner(lineSpinner, stationSpinner);
 
@@ -1096,32 +1568,69 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    void setupStationAdapters() {
+        catalog = new StationCatalog(engine);
+
+        lineAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, catalog.lines);
+        lineAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+
+        for (int line = 0; line < catalog.lines.length; ++line) {
+            // A growable list, relabelStationAdapters clears and refills it
+            ArrayAdapter<String> stationAdapter = new ArrayAdapter<>(this, R.layout.spinner_item_station,
+                    new ArrayList<>(Arrays.asList(catalog.stationRows(line, getLanguageInt()))));
+            stationAdapter.setDropDownViewResource(R.layout.spinner_item_station);
+            stationAdapters.add(stationAdapter);
+        }
+    }
+
+    // Same rows in another language. Every spinner on the adapter keeps its position, so its station too
+    void relabelStationAdapters() {
+        for (int line = 0; line < stationAdapters.size(); ++line) {
+            ArrayAdapter<String> stationAdapter = stationAdapters.get(line);
+            stationAdapter.setNotifyOnChange(false);
+            stationAdapter.clear();
+            stationAdapter.addAll(catalog.stationRows(line, getLanguageInt()));
+            stationAdapter.notifyDataSetChanged();
+        }
+    }
+
+    // Points the station spinner at its line's shared list, starting on "––" when the line changed
     void refreshStationSpinner(Spinner lineSpinner, Spinner stationSpinner) {
         if (lineSpinner == null || stationSpinner == null) return;
-        if (lineSpinner.getSelectedItem() == null) return;
 
-        LineItem item = (LineItem) lineSpinner.getSelectedItem();
+        int line = lineSpinner.getSelectedItemPosition();
+        if (line < 0 || line >= stationAdapters.size()) return;
 
-        String[] stations = getStationsDisplayList(item.code, getLanguageInt());
-
-        ArrayAdapter<String> stationAdapter =
-                new ArrayAdapter<>(this, R.layout.spinner_item_station, stations);
+        if (stationSpinner.getAdapter() != stationAdapters.get(line)) {
+            stationSpinner.setAdapter(stationAdapters.get(line));
+        }
+    }
 
-        stationAdapter.setDropDownViewResource(R.layout.spinner_item_station);
-        stationSpinner.setAdapter(stationAdapter);
+    // -1 if nothing's picked
+    int selectedStationId(Spinner lineSpinner, Spinner stationSpinner) {
+        if (lineSpinner == null || stationSpinner == null) return -1;
+        return catalog.idAt(lineSpinner.getSelectedItemPosition(), stationSpinner.getSelectedItemPosition());
     }
 
-    int parseStationNo(LineItem lineItem, Spinner stationSpinner) {
-        if (lineItem == null || stationSpinner == null) return -1;
-        Object obj = stationSpinner.getSelectedItem();
-        if (obj == null) return -1;
+    List<Integer> getSelectedStations(List<StationRow> rows) {
+        List<Integer> result = new ArrayList<>();
 
-        String item = (String) obj;
-        if (item.equals("––")) return -1;
+        for (StationRow row : rows) {
+            int id = selectedStationId(row.lineSpinner, row.stationSpinner);
+            if (id >= 0) {
+                result.add(id);
+            }
+        }
 
-        // same logic you already use in NEXT_TRAIN
-        String code = item.substring(lineItem.code.length(), lineItem.code.length() + 2);
-        return Integer.parseInt(code);
+        return result;
+    }
+
+    static int[] toIntArray(List<Integer> ids) {
+        int[] out = new int[ids.size()];
+        for (int i = 0; i < out.length; ++i) {
+            out[i] = ids.get(i);
+        }
+        return out;
     }
 
     void setupTrainCostUI(ArrayAdapter<LineItem> adapter) {
@@ -1265,7 +1774,7 @@ public class MainActivity extends AppCompatActivity {
                     @Override
                     public void onItemSelected(AdapterView<?> parent, View view, int pos, long id) {
                         if (currentMode == Mode.ROUTE_PLANNER) {
-                            recomputeRoutePlanner();
+                            scheduleRouteRecompute();
                         }
                     }
 
@@ -1354,6 +1863,7 @@ public class MainActivity extends AppCompatActivity {
                 switch (strategy) {
                     case FASTEST: return "最快";
                     case LEAST_INTERCHANGE: return "最少轉乘";
+                    case NEXT_HOUR: return "一小時內";
                     case CUSTOM: return "自訂";
                 }
 
@@ -1361,6 +1871,7 @@ public class MainActivity extends AppCompatActivity {
                 switch (strategy) {
                     case FASTEST: return "Fastest";
                     case LEAST_INTERCHANGE: return "Least Transfers";
+                    case NEXT_HOUR: return "Next Hour";
                     case CUSTOM: return "Custom";
                 }
 
@@ -1368,6 +1879,7 @@ public class MainActivity extends AppCompatActivity {
                 switch (strategy) {
                     case FASTEST: return "最速";
                     case LEAST_INTERCHANGE: return "最少乗換";
+                    case NEXT_HOUR: return "1時間以内";
                     case CUSTOM: return "カスタム";
                 }
 
@@ -1375,6 +1887,7 @@ public class MainActivity extends AppCompatActivity {
                 switch (strategy) {
                     case FASTEST: return "최단 시간";
                     case LEAST_INTERCHANGE: return "최소 환승";
+                    case NEXT_HOUR: return "1시간 이내";
                     case CUSTOM: return "사용자 지정";
                 }
         }
@@ -1498,17 +2011,14 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
-        LineItem fromL = (LineItem) costFromLine.getSelectedItem();
-        LineItem toL   = (LineItem) costToLine.getSelectedItem();
+        int from = selectedStationId(costFromLine, costFromStation);
+        int to   = selectedStationId(costToLine, costToStation);
+        if (from < 0 || to < 0) return;
 
-        int fromSt = parseStationNo(fromL, costFromStation);
-        int toSt   = parseStationNo(toL, costToStation);
-        if (fromSt < 0 || toSt < 0) return;
-
-        // Call JNI fare function(s)
-        int adult  = getFare(fromL.code, fromSt, toL.code, toSt, ADULT.ordinal());
-        int child  = getFare(fromL.code, fromSt, toL.code, toSt, CHILD.ordinal());
-        int elderly= getFare(fromL.code, fromSt, toL.code, toSt, ELDERLY.ordinal());
+        FareTable fares = getFareTable();
+        int adult  = fares.fare(from, to, ADULT);
+        int child  = fares.fare(from, to, CHILD);
+        int elderly= fares.fare(from, to, ELDERLY);
 
         String[] labels = getFareRowLabels();
         addCostRow(labels[0], adult);
@@ -1542,6 +2052,280 @@ public class MainActivity extends AppCompatActivity {
         costTable.addView(row);
     }
 
+    void setupOriginUI(ArrayAdapter<LineItem> adapter) {
+        originStartLabel = findViewById(R.id.originStartLabel);
+        originLine = findViewById(R.id.originLine);
+        originStation = findViewById(R.id.originStation);
+        originTable = findViewById(R.id.originTable);
+        reachLimitRow = findViewById(R.id.reachLimitRow);
+        reachLimitLabel = findViewById(R.id.reachLimitLabel);
+        reachLimit = findViewById(R.id.reachLimit);
+
+        originLine.setAdapter(adapter);
+        updateOriginLabels();
+        refreshStationSpinner(originLine, originStation);
+
+        relabelReachLimits();
+        reachLimit.setSelection(2); // 20 mins
+        reachLimit.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override public void onItemSelected(AdapterView<?> parent, View view, int pos, long id) {
+                if (currentMode == Mode.REACHABLE) {
+                    renderReachTable(); // Same scan, just a different cut-off
+                }
+            }
+            @Override public void onNothingSelected(AdapterView<?> parent) {}
+        });
+
+        originLine.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override public void onItemSelected(AdapterView<?> parent, View view, int pos, long id) {
+                refreshStationSpinner(originLine, originStation);
+                if (isOriginMode()) {
+                    updateOriginUI();
+                }
+            }
+            @Override public void onNothingSelected(AdapterView<?> parent) {}
+        });
+
+        originStation.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override public void onItemSelected(AdapterView<?> parent, View view, int pos, long id) {
+                if (isOriginMode()) {
+                    updateOriginUI();
+                }
+            }
+            @Override public void onNothingSelected(AdapterView<?> parent) {}
+        });
+    }
+
+    void updateOriginLabels() {
+        if (originStartLabel != null) {
+            originStartLabel.setText(getStartLabel());
+        }
+
+        if (reachLimitLabel != null) {
+            switch (getLanguage()) {
+                case "en": reachLimitLabel.setText("Within"); break;
+                case "jp": reachLimitLabel.setText("所要時間"); break;
+                case "kr": reachLimitLabel.setText("소요 시간"); break;
+                default:   reachLimitLabel.setText("時間內");
+            }
+        }
+    }
+
+    boolean isOriginMode() {
+        return currentMode == Mode.FROM_STATION || currentMode == Mode.REACHABLE;
+    }
+
+    // Same limits in another language, so keep the selected one
+    void relabelReachLimits() {
+        if (reachLimit == null) {
+            return;
+        }
+
+        String lang = getLanguage();
+        String[] labels = new String[REACH_LIMITS.length];
+        for (int i = 0; i < REACH_LIMITS.length; ++i) {
+            labels[i] = REACH_LIMITS[i] + RouteFormatter.mins(lang);
+        }
+
+        int pos = reachLimit.getSelectedItemPosition();
+
+        ArrayAdapter<String> limitAdapter = new ArrayAdapter<>(this, R.layout.spinner_item_station, labels);
+        limitAdapter.setDropDownViewResource(R.layout.spinner_item_station);
+        reachLimit.setAdapter(limitAdapter);
+
+        if (pos >= 0 && pos < labels.length) {
+            reachLimit.setSelection(pos);
+        }
+    }
+
+    void renderOriginResults() {
+        if (currentMode == Mode.REACHABLE) {
+            renderReachTable();
+        } else if (currentMode == Mode.FROM_STATION) {
+            renderOriginTable();
+        }
+    }
+
+    void updateOriginUI() {
+        if (originTable == null) {
+            return;
+        }
+
+        int station = selectedStationId(originLine, originStation);
+
+        if (station < 0) {
+            originGeneration.incrementAndGet();
+            shownArrivals = null;
+            shownReach = null;
+            originTable.removeAllViews();
+            originTableLang = null;
+            return;
+        }
+
+        if (currentMode == Mode.REACHABLE) {
+            submitRouting(originGeneration, null, () -> engine.computeReachable(station), reach -> {
+                shownReach = reach;
+                renderReachTable();
+            });
+            return;
+        }
+
+        submitRouting(originGeneration, null, () -> engine.computeArrivalsFrom(station), arrivals -> {
+            shownArrivals = arrivals;
+            shownOriginId = station;
+            renderOriginTable();
+        });
+    }
+
+    void renderOriginTable() {
+        if (shownArrivals == null || originTable == null) {
+            return;
+        }
+
+        String lang = getLanguage();
+        String[] codes = catalog.codes;
+
+        if (!lang.equals(originTableLang)) {
+            buildOriginRows(codes, getStationNamesCached());
+            originTableLang = lang;
+        }
+
+        int dep = shownArrivals[codes.length];
+        int maxMins = 1;
+        for (int id = 0; id < codes.length; ++id) {
+            if (shownArrivals[id] >= 0) {
+                maxMins = Math.max(maxMins, shownArrivals[id] - dep);
+            }
+        }
+
+        FareTable fares = getFareTable();
+
+        for (int id = 0; id < codes.length; ++id) {
+            TextView[] cells = originCells[id];
+            int arr = shownArrivals[id];
+
+            if (arr < 0) {
+                cells[1].setText("––");
+                cells[2].setText("––");
+                originRows[id].setBackgroundColor(android.graphics.Color.TRANSPARENT);
+            } else {
+                cells[1].setText(RouteFormatter.timeStr(arr));
+                cells[2].setText((arr - dep) + RouteFormatter.mins(lang));
+                originRows[id].setBackgroundColor(heatColor(arr - dep, maxMins));
+            }
+
+            cells[3].setText(shownOriginId < 0 ? "––" : "$" + fares.fare(shownOriginId, id, user_age));
+        }
+    }
+
+    void buildOriginRows(String[] codes, String[] names) {
+        originTable.removeAllViews();
+        originRows = new LinearLayout[codes.length];
+        originCells = new TextView[codes.length][4];
+
+        for (int id = 0; id < codes.length; ++id) {
+            LinearLayout rowView = new LinearLayout(this);
+            rowView.setOrientation(LinearLayout.HORIZONTAL);
+
+            for (int j = 0; j < 4; j++) {
+                TextView tv = new TextView(this);
+                tv.setTextSize(14);
+                tv.setTextColor(getColor(R.color.custom_pink));
+                tv.setPadding(12, 6, 12, 6);
+                tv.setGravity(j == 0 ? Gravity.START : Gravity.END);
+
+                if (j == 0) {
+                    tv.setText(RouteFormatter.LINE_EMOJIS.get(RouteFormatter.lineOf(codes[id])) + " " + codes[id] + " " + names[id]);
+                }
+
+                LinearLayout.LayoutParams lp =
+                        new LinearLayout.LayoutParams(0, ViewGroup.LayoutParams.WRAP_CONTENT);
+
+                lp.weight = (j == 0) ? 3 : 1;
+                tv.setLayoutParams(lp);
+
+                originCells[id][j] = tv;
+                rowView.addView(tv);
+            }
+
+            originRows[id] = rowView;
+            originTable.addView(rowView);
+        }
+    }
+
+    void renderReachTable() {
+        if (shownReach == null || originTable == null) {
+            return;
+        }
+
+        String lang = getLanguage();
+        String[] codes = catalog.codes;
+        String[] names = getStationNamesCached();
+        int n = codes.length;
+        int dep = shownReach[2 * n];
+        int limit = REACH_LIMITS[Math.max(0, reachLimit.getSelectedItemPosition())];
+
+        // Soonest first
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 0; id < n; ++id) {
+            if (shownReach[id] >= 0 && shownReach[id] - dep <= limit) {
+                ids.add(id);
+            }
+        }
+        ids.sort((a, b) -> shownReach[a] != shownReach[b] ? Integer.compare(shownReach[a], shownReach[b]) : Integer.compare(a, b));
+
+        originTable.removeAllViews();
+        originTableLang = null; // From Here rebuilds its rows next time
+
+        for (int id : ids) {
+            int mins = shownReach[id] - dep;
+            String[] cols = {
+                    RouteFormatter.LINE_EMOJIS.get(RouteFormatter.lineOf(codes[id])) + " " + codes[id] + " " + names[id],
+                    RouteFormatter.timeStr(shownReach[id]),
+                    mins + RouteFormatter.mins(lang),
+                    interchangesLabel(shownReach[n + id], lang)
+            };
+
+            LinearLayout rowView = new LinearLayout(this);
+            rowView.setOrientation(LinearLayout.HORIZONTAL);
+            rowView.setBackgroundColor(heatColor(mins, limit));
+
+            for (int j = 0; j < cols.length; j++) {
+                TextView tv = new TextView(this);
+                tv.setText(cols[j]);
+                tv.setTextSize(14);
+                tv.setTextColor(getColor(R.color.custom_pink));
+                tv.setPadding(12, 6, 12, 6);
+                tv.setGravity(j == 0 ? Gravity.START : Gravity.END);
+
+                LinearLayout.LayoutParams lp =
+                        new LinearLayout.LayoutParams(0, ViewGroup.LayoutParams.WRAP_CONTENT);
+
+                lp.weight = (j == 0) ? 3 : 1;
+                tv.setLayoutParams(lp);
+
+                rowView.addView(tv);
+            }
+
+            originTable.addView(rowView);
+        }
+    }
+
+    static String interchangesLabel(int count, String lang) {
+        switch (lang) {
+            case "en": return count == 1 ? "1 change" : count + " changes";
+            case "jp": return "乗換" + count + "回";
+            case "kr": return "환승 " + count + "회";
+            default:   return "轉乘" + count + "次";
+        }
+    }
+
+    // Green for close, red for the furthest station reached
+    static int heatColor(int mins, int maxMins) {
+        float hue = 120f * (1f - Math.min(1f, (float) mins / maxMins));
+        return android.graphics.Color.HSVToColor(0x40, new float[]{hue, 0.8f, 0.9f});
+    }
+
     void displayRouteResult(String result) {
 
         LinearLayout container = findViewById(R.id.routeResultContainer);
@@ -1613,9 +2397,7 @@ public class MainActivity extends AppCompatActivity {
         container.addView(rowLayout);
 
         // Set adapter
-        ArrayAdapter<LineItem> adapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, getLines());
-        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-        lineSpinner.setAdapter(adapter);
+        lineSpinner.setAdapter(lineAdapter);
 
         refreshStationSpinner(lineSpinner, stationSpinner);
 
@@ -1678,13 +2460,7 @@ public class MainActivity extends AppCompatActivity {
 
         container.addView(rowLayout);
 
-        ArrayAdapter<LineItem> adapter =
-                new ArrayAdapter<>(this,
-                        android.R.layout.simple_spinner_item,
-                        getLines());
-
-        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-        lineSpinner.setAdapter(adapter);
+        lineSpinner.setAdapter(lineAdapter);
 
         refreshStationSpinner(lineSpinner, stationSpinner);
 
@@ -1715,9 +2491,7 @@ public class MainActivity extends AppCompatActivity {
         mustLinesContainer.removeAllViews();
         mustLineChecks.clear();
 
-        LineItem[] lines = getLines();
-
-        for (LineItem line : lines) {
+        for (LineItem line : catalog.lines) {
 
             CheckBox cb = new CheckBox(this);
 
@@ -1749,9 +2523,7 @@ public class MainActivity extends AppCompatActivity {
         avoidLinesContainer.removeAllViews();
         avoidLineChecks.clear();
 
-        LineItem[] lines = getLines();
-
-        for (LineItem line : lines) {
+        for (LineItem line : catalog.lines) {
 
             CheckBox cb = new CheckBox(this);
 
@@ -1776,67 +2548,38 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    List<String> getSelectedMustLines() {
+    List<Integer> getSelectedMustLines() {
 
-        List<String> result = new ArrayList<>();
-        LineItem[] lines = getLines();
+        List<Integer> result = new ArrayList<>(); // Line indices
 
         for (int i = 0; i < mustLineChecks.size(); i++) {
             if (mustLineChecks.get(i).isChecked()) {
-                result.add(lines[i].code);
+                result.add(i);
             }
         }
 
         return result;
     }
 
-    List<String> getSelectedAvoidLines() {
+    List<Integer> getSelectedAvoidLines() {
 
-        List<String> result = new ArrayList<>();
-        LineItem[] lines = getLines();
+        List<Integer> result = new ArrayList<>(); // Line indices
 
         for (int i = 0; i < avoidLineChecks.size(); i++) {
             if (avoidLineChecks.get(i).isChecked()) {
-                result.add(lines[i].code);
+                result.add(i);
             }
         }
 
         return result;
     }
 
-    List<String> getMustStations() {
-
-        List<String> result = new ArrayList<>();
-
-        for (StationRow row : mustStationRows) {
-
-            LineItem lineItem = (LineItem) row.lineSpinner.getSelectedItem();
-            int stationNo = parseStationNo(lineItem, row.stationSpinner);
-
-            if (lineItem != null && stationNo >= 0) {
-                result.add(lineItem.code + stationNo);
-            }
-        }
-
-        return result;
+    List<Integer> getMustStations() {
+        return getSelectedStations(mustStationRows);
     }
 
-
-    List<String> getAvoidStations() {
-
-        List<String> result = new ArrayList<>();
-
-        for (StationRow row : avoidStationRows) {
-
-            LineItem lineItem = (LineItem) row.lineSpinner.getSelectedItem();
-            int stationNo = parseStationNo(lineItem, row.stationSpinner);
-
-            if (lineItem != null && stationNo >= 0) {
-                result.add(lineItem.code + stationNo);
-            }
-        }
-
-        return result;
+    List<Integer> getAvoidStations() {
+        return getSelectedStations(avoidStationRows);
     }
 
     int getLineColor(String code) {
@@ -1854,20 +2597,17 @@ public class MainActivity extends AppCompatActivity {
 
     void applyCustomRoute() {
 
-        LineItem fromL = (LineItem) routeFromLine.getSelectedItem();
-        LineItem toL   = (LineItem) routeToLine.getSelectedItem();
-
-        int fromSt = parseStationNo(fromL, routeFromStation);
-        int toSt   = parseStationNo(toL, routeToStation);
+        int from = selectedStationId(routeFromLine, routeFromStation);
+        int to   = selectedStationId(routeToLine, routeToStation);
 
-        if (fromSt < 0 || toSt < 0) {
+        if (from < 0 || to < 0) {
             return;
         }
 
-        List<String> mustStations  = getMustStations();
-        List<String> avoidStations = getAvoidStations();
-        List<String> mustLines     = getSelectedMustLines();
-        List<String> avoidLines    = getSelectedAvoidLines();
+        List<Integer> mustStations  = getMustStations();
+        List<Integer> avoidStations = getAvoidStations();
+        List<Integer> mustLines     = getSelectedMustLines();
+        List<Integer> avoidLines    = getSelectedAvoidLines();
 
         boolean minimizeTime = minTimeCheck.isChecked();
         boolean minimizeTransfers = minTransferCheck.isChecked();
@@ -1884,15 +2624,14 @@ public class MainActivity extends AppCompatActivity {
             displayRouteResult("계산 중...");
         }
 
-        new Thread(() -> {
-
-            String result = computeCustomRoute(fromL.code, fromSt, toL.code, toSt, mustStations.toArray(new String[0]), avoidStations.toArray(new String[0]), mustLines.toArray(new String[0]), avoidLines.toArray(new String[0]), minimizeTime, minimizeTransfers, getLanguageInt(), user_age.ordinal());
+        AgeGroup age = user_age;
 
-            runOnUiThread(() -> {
-                displayRouteResult(result);
-            });
+        long minute = System.currentTimeMillis() / 60_000;
+        String query = "CUSTOM " + from + " " + to + " " + mustStations + " " + avoidStations + " " + mustLines + " " + avoidLines + " " + minimizeTime + " " + minimizeTransfers;
 
-        }).start();
+        submitRouting(routeGeneration, query,
+                () -> routeCache.get(minute, query, () -> engine.computeCustomRoute(from, to, toIntArray(mustStations), toIntArray(avoidStations), toIntArray(mustLines), toIntArray(avoidLines), minimizeTime, minimizeTransfers)),
+                results -> showRouteResults(results, age));
     }
 
     @Override
@@ -1901,26 +2640,23 @@ public class MainActivity extends AppCompatActivity {
         stopMinuteUpdates();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        routingHandler.removeCallbacks(debouncedRouteRecompute);
+
+        // Nothing left to show results in
+        routeGeneration.incrementAndGet();
+        manualGeneration.incrementAndGet();
+        engine.cancelRouting();
+        routingExecutor.shutdownNow();
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
-        if (currentMode == Mode.NEXT_TRAIN) {
+        if (currentMode == Mode.NEXT_TRAIN || isOriginMode()) {
             startMinuteUpdates();
         }
     }
-
-    public native void setDataDir(String path);
-    public native String[] getStationsDisplayList(String line_code, int lang);
-
-    public native LineItem[] getLines();
-
-    public native String[][] getNextTrainTable(String line_code, int station, int maxRows, int maxCols, int lang);
-
-    public native int getFare(String line1, int st1, String line2, int st2, int ageGroup);
-
-    public native String computeFastestRoute(String fromLine, int fromStation, String toLine, int toStation, int lang, int ticketType);
-    public native String computeLeastInterchangeRoute(String fromLine, int fromStation, String toLine, int toStation, int lang, int ticketType);
-    public native String computeCustomRoute(String fromLine, int fromStation, String toLine, int toStation, String[] mustStations, String[] avoidStations, String[] mustLines, String[] avoidLines, boolean minimizeTime, boolean minimizeTransfers, int lang_int, int ageGroup);
-
-    public native String computeManualPath(String[] stations, int lang, int ageGroup);
 }
\ No newline at end of file
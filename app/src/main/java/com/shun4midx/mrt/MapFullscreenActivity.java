@@ -1,12 +1,26 @@
 package com.shun4midx.mrt;
 
+import android.content.Intent;
 import android.os.Bundle;
 import android.widget.ImageButton;
 
 import androidx.appcompat.app.AppCompatActivity;
 
-import com.github.chrisbanes.photoview.PhotoView;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
 public class MapFullscreenActivity extends AppCompatActivity {
+    static final String EXTRA_MAP_RES = "mapRes";
+    static final String EXTRA_PICK_STATION = "pickStation"; // Taps on a station return it instead of only zooming
+    static final String EXTRA_CODES = "codes"; // String[], station id -> code, needed when picking
+    static final String EXTRA_STATION = "station"; // Result: the station id picked
+    static final String EXTRA_LONG_PRESS = "longPress"; // Result: picked with a long press, i.e. as the destination
+
+    static final String STATIONS_DIR = "map_stations"; // <map drawable name>.csv, badge centers in the image's pixels
+    static final float TAP_RADIUS_DP = 24; // How far from a badge's center a finger still picks it, on screen
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -15,9 +29,46 @@ public class MapFullscreenActivity extends AppCompatActivity {
         ImageButton btnClose = findViewById(R.id.btnClose);
         btnClose.setOnClickListener(v -> finish());
 
-        PhotoView map = findViewById(R.id.fullMap);
+        TiledMapView map = findViewById(R.id.fullMap);
+
+        int mapRes = getIntent().getIntExtra(EXTRA_MAP_RES, R.drawable.taipei_mrt_map_zh_en);
+        map.setMap(mapRes);
+
+        if (!getIntent().getBooleanExtra(EXTRA_PICK_STATION, false)) {
+            return;
+        }
+
+        String[] codes = getIntent().getStringArrayExtra(EXTRA_CODES);
+        StationGrid grid = codes != null ? loadStationGrid(mapRes, codes) : null;
+        if (grid == null) {
+            return;
+        }
+
+        float tapRadius = TAP_RADIUS_DP * getResources().getDisplayMetrics().density;
+
+        // The radius is fixed on screen, so it covers fewer map pixels the further in we're zoomed
+        map.setOnMapTapListener((mapX, mapY, viewToMap, longPress) -> {
+            int station = grid.nearest(mapX, mapY, tapRadius * viewToMap);
+            if (station < 0) {
+                return;
+            }
+
+            Intent result = new Intent();
+            result.putExtra(EXTRA_STATION, station);
+            result.putExtra(EXTRA_LONG_PRESS, longPress);
+            setResult(RESULT_OK, result);
+            finish();
+        });
+    }
+
+    // null if this map has no station table
+    StationGrid loadStationGrid(int mapRes, String[] codes) {
+        String path = STATIONS_DIR + "/" + getResources().getResourceEntryName(mapRes) + ".csv";
 
-        int mapRes = getIntent().getIntExtra("mapRes", 0);
-        map.setImageResource(mapRes);
+        try (Reader in = new InputStreamReader(getAssets().open(path), StandardCharsets.UTF_8)) {
+            return StationGrid.read(in, codes);
+        } catch (IOException e) {
+            return null;
+        }
     }
 }
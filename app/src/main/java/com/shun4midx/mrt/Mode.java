@@ -4,5 +4,7 @@ public enum Mode {
     NEXT_TRAIN,
     ROUTE_PLANNER,
     CUSTOM_PATH,
-    TRAIN_COST
+    TRAIN_COST,
+    FROM_STATION,
+    REACHABLE
 }
\ No newline at end of file
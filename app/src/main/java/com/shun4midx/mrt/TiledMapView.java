@@ -0,0 +1,405 @@
+package com.shun4midx.mrt;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.AttributeSet;
+import android.util.LruCache;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+import android.widget.OverScroller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// The MRT map, decoded a region at a time: a tile pyramid by power-of-two subsample, only the tiles on screen at the current zoom, kept in an LRU cache
+// Underneath sits one small subsampled copy of the whole map, so panning never shows a hole while tiles decode
+public class TiledMapView extends View {
+    static final int TILE_SIZE = 256; // Decoded pixels per tile side, whatever the level
+    static final int BASE_MAX_SIZE = 512; // Longest side of the whole-map underlay
+    static final float MAX_ZOOM = 4f; // Relative to fitting the view
+    static final float DOUBLE_TAP_ZOOM = 2.5f;
+    static final int MAX_CACHE_BYTES = 24 * 1024 * 1024;
+
+    // Maps have no alpha, so half the bytes per pixel
+    static final Bitmap.Config CONFIG = Bitmap.Config.RGB_565;
+
+    final Handler mainHandler = new Handler(Looper.getMainLooper());
+    final ExecutorService decodeExecutor = Executors.newSingleThreadExecutor();
+    final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    final LruCache<String, Bitmap> tiles = new LruCache<String, Bitmap>((int) Math.min(Runtime.getRuntime().maxMemory() / 8, MAX_CACHE_BYTES)) {
+        @Override
+        protected int sizeOf(String key, Bitmap tile) {
+            return tile.getByteCount();
+        }
+    };
+    final Set<String> pendingTiles = new HashSet<>(); // Queued or decoding, main thread only
+
+    BitmapRegionDecoder decoder; // Set on the main thread, only decoded from and recycled on the worker
+    int mapRes;
+    int imageWidth, imageHeight; // 0 until the decoder's open
+    Bitmap base;
+    volatile int wantedSample = 1; // Tiles of any other level still queued are skipped
+    volatile boolean detached;
+
+    // View pixels per map pixel, and where the map's top left sits in the view
+    float scale, minScale;
+    float transX, transY;
+
+    final ScaleGestureDetector scaleDetector;
+    final GestureDetector gestureDetector;
+    final OverScroller scroller;
+
+    final RectF tileDst = new RectF();
+
+    // Taps in map pixels, so whoever's listening never needs the current zoom or pan to hit-test
+    public interface OnMapTapListener {
+        void onMapTap(float mapX, float mapY, float viewToMap, boolean longPress); // viewToMap: map pixels per view pixel right now
+    }
+
+    OnMapTapListener tapListener;
+
+    public TiledMapView(Context context) {
+        this(context, null);
+    }
+
+    public TiledMapView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+
+        scroller = new OverScroller(context);
+
+        scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                zoomTo(scale * detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+                return true;
+            }
+        });
+
+        gestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(MotionEvent e) {
+                scroller.forceFinished(true);
+                return true;
+            }
+
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float dx, float dy) {
+                panBy(-dx, -dy);
+                return true;
+            }
+
+            @Override
+            public boolean onFling(MotionEvent e1, MotionEvent e2, float vx, float vy) {
+                int minX = Math.round(Math.min(getWidth() - imageWidth * scale, transX));
+                int minY = Math.round(Math.min(getHeight() - imageHeight * scale, transY));
+                scroller.fling(Math.round(transX), Math.round(transY), Math.round(vx), Math.round(vy),
+                        minX, Math.round(Math.max(0, transX)), minY, Math.round(Math.max(0, transY)));
+                postInvalidateOnAnimation();
+                return true;
+            }
+
+            @Override
+            public boolean onDoubleTap(MotionEvent e) {
+                float target = scale > minScale * 1.01f ? minScale : minScale * DOUBLE_TAP_ZOOM;
+                zoomTo(target, e.getX(), e.getY());
+                return true;
+            }
+
+            @Override
+            public boolean onSingleTapConfirmed(MotionEvent e) {
+                dispatchMapTap(e, false);
+                return performClick();
+            }
+
+            @Override
+            public void onLongPress(MotionEvent e) {
+                if (!scaleDetector.isInProgress()) {
+                    dispatchMapTap(e, true);
+                }
+            }
+        });
+    }
+
+    // ======== LOADING ======== //
+    // A drawable in drawable-nodpi, so it's decoded at its real size
+    public void setMap(int res) {
+        if (res == mapRes) {
+            return;
+        }
+        mapRes = res;
+
+        tiles.evictAll();
+        pendingTiles.clear();
+        imageWidth = imageHeight = 0;
+        base = null;
+        invalidate();
+
+        Resources resources = getResources();
+        decodeExecutor.execute(() -> {
+            BitmapRegionDecoder opened = openDecoder(resources, res);
+            Bitmap underlay = opened == null ? null : decodeBase(opened);
+
+            mainHandler.post(() -> {
+                if (res != mapRes || opened == null) {
+                    return;
+                }
+
+                if (decoder != null) {
+                    decodeExecutor.execute(decoder::recycle); // After the tiles already queued from it
+                }
+
+                decoder = opened;
+                imageWidth = opened.getWidth();
+                imageHeight = opened.getHeight();
+                base = underlay;
+                fitToView();
+            });
+        });
+    }
+
+    @SuppressWarnings("deprecation") // newInstance(InputStream) is API 31
+    static BitmapRegionDecoder openDecoder(Resources resources, int res) {
+        try (InputStream in = resources.openRawResource(res)) {
+            return BitmapRegionDecoder.newInstance(in, false);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    static Bitmap decodeBase(BitmapRegionDecoder decoder) {
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inPreferredConfig = CONFIG;
+        opts.inSampleSize = 1;
+        while (Math.max(decoder.getWidth(), decoder.getHeight()) / opts.inSampleSize > BASE_MAX_SIZE) {
+            opts.inSampleSize *= 2;
+        }
+        return decoder.decodeRegion(new Rect(0, 0, decoder.getWidth(), decoder.getHeight()), opts);
+    }
+
+    // The whole map for a preview reqWidth pixels wide, at the largest power-of-two subsample that still isn't narrower
+    public static Bitmap decodeThumbnail(Resources resources, int res, int reqWidth) {
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, res, opts);
+
+        int sample = 1;
+        while (opts.outWidth / (sample * 2) >= reqWidth) {
+            sample *= 2;
+        }
+
+        opts.inJustDecodeBounds = false;
+        opts.inSampleSize = sample;
+        opts.inPreferredConfig = CONFIG;
+        return BitmapFactory.decodeResource(resources, res, opts);
+    }
+
+    // ======== TAPS ======== //
+    public void setOnMapTapListener(OnMapTapListener listener) {
+        tapListener = listener;
+    }
+
+    void dispatchMapTap(MotionEvent e, boolean longPress) {
+        if (tapListener == null || imageWidth == 0) {
+            return;
+        }
+        tapListener.onMapTap((e.getX() - transX) / scale, (e.getY() - transY) / scale, 1 / scale, longPress);
+    }
+
+    // ======== VIEWPORT ======== //
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        fitToView();
+    }
+
+    void fitToView() {
+        if (imageWidth == 0 || getWidth() == 0) {
+            return;
+        }
+
+        minScale = Math.min((float) getWidth() / imageWidth, (float) getHeight() / imageHeight);
+        scale = minScale;
+        clampTranslation();
+        invalidate();
+    }
+
+    void zoomTo(float target, float focusX, float focusY) {
+        if (imageWidth == 0) {
+            return;
+        }
+
+        float next = Math.max(minScale, Math.min(target, minScale * MAX_ZOOM));
+
+        // Keep the map point under the focus where it is
+        transX = focusX - (focusX - transX) * next / scale;
+        transY = focusY - (focusY - transY) * next / scale;
+        scale = next;
+
+        clampTranslation();
+        invalidate();
+    }
+
+    void panBy(float dx, float dy) {
+        transX += dx;
+        transY += dy;
+        clampTranslation();
+        invalidate();
+    }
+
+    // Centered along an axis the map doesn't fill, otherwise no gap at either edge
+    void clampTranslation() {
+        float w = imageWidth * scale;
+        float h = imageHeight * scale;
+
+        transX = w <= getWidth() ? (getWidth() - w) / 2 : Math.max(getWidth() - w, Math.min(0, transX));
+        transY = h <= getHeight() ? (getHeight() - h) / 2 : Math.max(getHeight() - h, Math.min(0, transY));
+    }
+
+    @Override
+    public void computeScroll() {
+        if (scroller.computeScrollOffset()) {
+            transX = scroller.getCurrX();
+            transY = scroller.getCurrY();
+            clampTranslation();
+            postInvalidateOnAnimation();
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        boolean handled = scaleDetector.onTouchEvent(event);
+        handled |= gestureDetector.onTouchEvent(event);
+        return handled || super.onTouchEvent(event);
+    }
+
+    @Override
+    public boolean performClick() {
+        return super.performClick();
+    }
+
+    // ======== DRAWING ======== //
+    // Largest power of two no bigger than map pixels per view pixel, so a tile is never magnified from a coarser level than needed
+    static int sampleFor(float scale) {
+        int sample = 1;
+        while (sample * 2 <= 1 / scale) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    static String tileKey(int sample, int col, int row) {
+        return sample + "/" + col + "/" + row;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+
+        if (imageWidth == 0) {
+            return;
+        }
+
+        canvas.save();
+        canvas.translate(transX, transY);
+        canvas.scale(scale, scale);
+
+        if (base != null) {
+            tileDst.set(0, 0, imageWidth, imageHeight);
+            canvas.drawBitmap(base, null, tileDst, paint);
+        }
+
+        // The map pixels on screen
+        int left = Math.max(0, (int) (-transX / scale));
+        int top = Math.max(0, (int) (-transY / scale));
+        int right = Math.min(imageWidth, (int) Math.ceil((getWidth() - transX) / scale));
+        int bottom = Math.min(imageHeight, (int) Math.ceil((getHeight() - transY) / scale));
+
+        int sample = sampleFor(scale);
+        wantedSample = sample;
+        int span = TILE_SIZE * sample; // Map pixels per tile side at this level
+
+        for (int row = top / span; row * span < bottom; ++row) {
+            for (int col = left / span; col * span < right; ++col) {
+                String key = tileKey(sample, col, row);
+                Bitmap tile = tiles.get(key);
+
+                if (tile == null) {
+                    requestTile(key, sample, col, row);
+                    continue;
+                }
+
+                tileDst.set(col * span, row * span, Math.min(imageWidth, (col + 1) * span), Math.min(imageHeight, (row + 1) * span));
+                canvas.drawBitmap(tile, null, tileDst, paint);
+            }
+        }
+
+        canvas.restore();
+    }
+
+    void requestTile(String key, int sample, int col, int row) {
+        if (!pendingTiles.add(key)) {
+            return;
+        }
+
+        int span = TILE_SIZE * sample;
+        Rect region = new Rect(col * span, row * span, Math.min(imageWidth, (col + 1) * span), Math.min(imageHeight, (row + 1) * span));
+        BitmapRegionDecoder regionDecoder = decoder;
+        int res = mapRes;
+
+        decodeExecutor.execute(() -> {
+            Bitmap tile = null;
+            if (!detached && sample == wantedSample) { // Zoomed to another level since, don't spend the time
+                BitmapFactory.Options opts = new BitmapFactory.Options();
+                opts.inSampleSize = sample;
+                opts.inPreferredConfig = CONFIG;
+                tile = regionDecoder.decodeRegion(region, opts);
+            }
+
+            Bitmap decoded = tile;
+            mainHandler.post(() -> {
+                if (res != mapRes) {
+                    return;
+                }
+
+                pendingTiles.remove(key);
+                if (decoded != null) {
+                    tiles.put(key, decoded);
+                    invalidate();
+                }
+            });
+        });
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+
+        detached = true;
+        mainHandler.removeCallbacksAndMessages(null);
+        tiles.evictAll();
+        base = null;
+
+        // On the worker, so it can't pull the decoder out from under a tile being decoded
+        if (decoder != null) {
+            decodeExecutor.execute(decoder::recycle);
+            decoder = null;
+        }
+        decodeExecutor.shutdown();
+    }
+}
@@ -0,0 +1,106 @@
+package com.shun4midx.mrt;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.AssetManager;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+
+// Extracts arrival_times/generated from the APK into filesDir, but only when the installed APK changed since the last extraction
+final class TimetableAssets {
+    static final String ASSET_DIR = "arrival_times/generated";
+
+    private static final String PREFS = "settings";
+    private static final String VERSION_KEY = "timetable_assets_version";
+
+    private static CompletableFuture<File> extraction; // Guarded by the class lock
+
+    private TimetableAssets() {}
+
+    // prepare() on its own thread, once per process: every later caller (e.g. the Activity again after a rotation) gets the same future, so two copies never write into the same directory
+    // A failed extraction isn't kept, so the next call tries again
+    static synchronized CompletableFuture<File> prepareOnce(Context context) {
+        if (extraction == null || extraction.isCompletedExceptionally()) {
+            Context app = context.getApplicationContext();
+            CompletableFuture<File> future = new CompletableFuture<>();
+
+            new Thread(() -> {
+                try {
+                    future.complete(prepare(app));
+                } catch (IOException e) {
+                    future.completeExceptionally(e);
+                }
+            }, "timetable-assets").start();
+
+            extraction = future;
+        }
+
+        return extraction;
+    }
+
+    // Blocking, so call it off the UI thread. Returns the directory to pass to setDataDir
+    static File prepare(Context context) throws IOException {
+        File outDir = new File(context.getFilesDir(), ASSET_DIR);
+        String version = assetsVersion(context);
+
+        SharedPreferences prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+
+        if (version.equals(prefs.getString(VERSION_KEY, null)) && outDir.isDirectory()) {
+            return context.getFilesDir(); // Already extracted for this APK
+        }
+
+        // Forget the old version first, so a copy that gets interrupted is redone next launch
+        prefs.edit().remove(VERSION_KEY).commit();
+
+        copyAssetFolder(context.getAssets(), ASSET_DIR, outDir, new byte[64 * 1024]);
+
+        prefs.edit().putString(VERSION_KEY, version).commit();
+
+        return context.getFilesDir();
+    }
+
+    // The timetables only change with the APK, so its install time + version identify them
+    private static String assetsVersion(Context context) {
+        try {
+            PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            return info.versionName + ":" + info.lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return "";
+        }
+    }
+
+    private static void copyAssetFolder(AssetManager assets, String assetDir, File outDir, byte[] buf) throws IOException {
+        String[] files = assets.list(assetDir);
+        if (files == null) return;
+
+        if (!outDir.exists()) outDir.mkdirs();
+
+        for (String file : files) {
+            String assetPath = assetDir + "/" + file;
+            File outFile = new File(outDir, file);
+
+            String[] subFiles = assets.list(assetPath);
+            if (subFiles != null && subFiles.length > 0) {
+                // directory
+                copyAssetFolder(assets, assetPath, outFile, buf);
+            } else {
+                // file
+                try (InputStream in = assets.open(assetPath);
+                     OutputStream out = new FileOutputStream(outFile)) {
+
+                    int len;
+                    while ((len = in.read(buf)) > 0) {
+                        out.write(buf, 0, len);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+val hostNativeDir = rootProject.file("core/build/host-native") // Built by :core, see core/build.gradle.kts
+val dataDir = rootProject.file("app/src/main/assets")
+
+dependencies {
+    jmhImplementation(project(":core"))
+}
+
+// ./gradlew :benchmark:jmh, or -PjmhIncludes=RouteBenchmark.routeDefault for one benchmark. Results land in build/results/jmh/results.json
+// The default is the quick profile (Wednesday at PEAK and AFTER_MIDNIGHT, a few minutes per benchmark). -PjmhFull sweeps all 7 day types at all 3 times, hours long
+jmh {
+    jmhVersion.set(libs.versions.jmh.get())
+    benchmarkMode.set(listOf("thrpt", "sample")) // ops/s, and latency percentiles (p50, p99, ...)
+    timeUnit.set("us")
+    profilers.set(listOf("gc")) // Allocation rate, Java heap only: native allocations don't show up here
+    fork.set(1)
+    warmupIterations.set(2)
+    warmup.set("5s")
+    iterations.set(3)
+    timeOnIteration.set("10s")
+    resultFormat.set("JSON")
+    jvmArgsAppend.set(listOf(
+        "-Djava.library.path=" + hostNativeDir.absolutePath,
+        "-Dmrt.dataDir=" + dataDir.absolutePath
+    ))
+    (project.findProperty("jmhIncludes") as String?)?.let { includes.set(listOf(it)) }
+    if (project.hasProperty("jmhFull")) {
+        benchmarkParameters.put("dayType", objects.listProperty<String>().value(listOf("1", "2", "3", "4", "5", "6", "7")))
+        benchmarkParameters.put("time", objects.listProperty<String>().value(listOf("PEAK", "OFF_PEAK", "AFTER_MIDNIGHT")))
+    }
+}
+
+tasks.named("jmh") {
+    dependsOn(":core:buildHostNative")
+}
+
+// The native side on its own: candidatePaths, pathETA, loadStationSchedule, nextTrainTime and travelPrice timed separately.
+// ./gradlew :benchmark:nativeBench -PbenchArgs="3 870" for another day type and time
+val buildNativeBench by tasks.registering(Exec::class) {
+    dependsOn(":core:configureHostNative")
+    commandLine("cmake", "--build", hostNativeDir.absolutePath, "--target", "mrt_bench", "--parallel")
+}
+
+tasks.register<Exec>("nativeBench") {
+    dependsOn(buildNativeBench)
+    val args = (project.findProperty("benchArgs") as String?)?.split(" ") ?: emptyList()
+    commandLine(listOf(File(hostNativeDir, "mrt_bench").absolutePath, dataDir.absolutePath) + args)
+}
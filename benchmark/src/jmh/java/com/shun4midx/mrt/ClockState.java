@@ -0,0 +1,35 @@
+package com.shun4midx.mrt;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// The engine pinned to one day type and time of day. Timetables differ by day, and trains thin out off-peak and stop after midnight
+// By default only a weekday at peak and after midnight, the quick run for every engine change. -PjmhFull sweeps every day type and time, see build.gradle.kts
+@State(Scope.Benchmark)
+public class ClockState {
+    @Param({"3"})
+    public int dayType;
+
+    @Param({"PEAK", "AFTER_MIDNIGHT"})
+    public String time;
+
+    Network net;
+
+    static int nowMins(String time) {
+        switch (time) {
+            case "PEAK":           return 8 * 60 + 30;
+            case "OFF_PEAK":       return 14 * 60 + 30;
+            case "AFTER_MIDNIGHT": return 24 * 60 + 20; // Still the previous day's service, now_mins > 1440
+            default: throw new IllegalArgumentException(time);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        net = new Network();
+        net.engine.setClock(dayType, nowMins(time));
+    }
+}
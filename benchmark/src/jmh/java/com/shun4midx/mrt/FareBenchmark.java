@@ -0,0 +1,54 @@
+package com.shun4midx.mrt;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Fares don't depend on the clock, so no day/time params here. fareById is what routing results and the Train Cost screen use, fareByCode the code-keyed lookup
+public class FareBenchmark {
+    @State(Scope.Thread)
+    public static class Fares {
+        Network net;
+        FareTable fares;
+        int[][] pairs;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            net = new Network();
+            fares = net.engine.loadFareTable();
+            pairs = net.allPairs();
+        }
+
+        int[] take() {
+            int[] pair = pairs[next];
+            next = (next + 1) % pairs.length;
+            return pair;
+        }
+    }
+
+    static AgeGroup ageOf(int[] pair) {
+        return AgeGroup.values()[(pair[0] + pair[1]) % AgeGroup.values().length];
+    }
+
+    @Benchmark
+    public int fareById(Fares f) {
+        int[] pair = f.take();
+        return f.fares.fare(pair[0], pair[1], ageOf(pair));
+    }
+
+    @Benchmark
+    public int fareByCode(Fares f) {
+        int[] pair = f.take();
+        StationCatalog catalog = f.net.catalog;
+        int from = pair[0], to = pair[1];
+        return f.fares.fare(catalog.lines[catalog.lineOf[from]].code, catalog.numberOf[from], catalog.lines[catalog.lineOf[to]].code, catalog.numberOf[to], ageOf(pair));
+    }
+
+    @Benchmark
+    public FareTable loadFareTable(Fares f) {
+        return f.net.engine.loadFareTable(); // Once per app start, but it's the JNI side of fares
+    }
+}
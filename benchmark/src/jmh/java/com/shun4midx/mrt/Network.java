@@ -0,0 +1,55 @@
+package com.shun4midx.mrt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+// The engine and every station in it, shared by the benchmarks. Stations are engine ids, as every query takes them
+final class Network {
+    static final long SEED = 20260101L; // Same query order every run, so numbers compare across engine changes
+
+    final MrtEngine engine = new MrtEngine();
+    final StationCatalog catalog;
+    final String[] codes; // station id -> code
+
+    Network() {
+        engine.setDataDir(System.getProperty("mrt.dataDir"));
+
+        catalog = new StationCatalog(engine);
+        codes = catalog.codes;
+    }
+
+    int stationCount() {
+        return codes.length;
+    }
+
+    // Every ordered origin/destination pair, {from id, to id}, in a fixed shuffled order so no benchmark iteration only sees one corner of the map
+    int[][] allPairs() {
+        List<int[]> pairs = new ArrayList<>();
+
+        for (int i = 0; i < codes.length; ++i) {
+            for (int j = 0; j < codes.length; ++j) {
+                if (i != j) {
+                    pairs.add(new int[] {i, j});
+                }
+            }
+        }
+
+        Collections.shuffle(pairs, new Random(SEED));
+        return pairs.toArray(new int[0][]);
+    }
+
+    // Stations drawn for a must/avoid list, never one of the excluded ones and never twice
+    int[] randomStations(Random rng, int count, List<Integer> exclude) {
+        int[] out = new int[count];
+        for (int n = 0; n < count; ) {
+            int id = rng.nextInt(codes.length);
+            if (!exclude.contains(id)) {
+                exclude.add(id);
+                out[n++] = id;
+            }
+        }
+        return out;
+    }
+}
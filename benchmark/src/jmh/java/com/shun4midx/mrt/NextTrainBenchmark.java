@@ -0,0 +1,35 @@
+package com.shun4midx.mrt;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// The Next Train table's refresh: destinations, then the next few trains to each, one station per invocation around the whole network
+public class NextTrainBenchmark {
+    static final int PER_DEST = 4; // As MainActivity.NEXT_TRAIN_COLS
+    static final int MAX_DESTS = 16;
+
+    @State(Scope.Thread)
+    public static class Stations {
+        int[] out;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            out = new int[MAX_DESTS * PER_DEST];
+        }
+    }
+
+    @Benchmark
+    public int nextTrainTable(ClockState clock, Stations s) {
+        Network net = clock.net;
+        int id = s.next;
+        s.next = (s.next + 1) % net.stationCount();
+
+        int[] dests = net.engine.getNextTrainDests(net.catalog.lineOf[id]);
+        int rows = net.engine.getNextTrainMinutes(id, PER_DEST, s.out);
+        return dests.length + rows + s.out[0];
+    }
+}
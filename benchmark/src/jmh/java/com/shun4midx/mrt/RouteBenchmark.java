@@ -0,0 +1,184 @@
+package com.shun4midx.mrt;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// One query per invocation, each on the next origin/destination pair, so an iteration walks the whole network rather than repeating one route
+public class RouteBenchmark {
+    static final int MUST_STATIONS = 2;
+    static final int AVOID_STATIONS = 4;
+    static final int CUSTOM_PAIRS = 1000; // Custom constraints are checked against the engine at setup, so only this many pairs get them
+    static final int CUSTOM_DRAWS = 8; // Tries per pair at a set of constraints with a route at the benchmark's clock
+
+    // Custom route constraints for one pair, drawn once so the timed part is only the query
+    static final class Custom {
+        int[] mustStations, avoidStations, mustLines, avoidLines; // Lines as catalog line indices
+        boolean minimizeTime, minimizeTransfers;
+    }
+
+    @State(Scope.Thread)
+    public static class Queries {
+        int[][] pairs;
+        int next;
+
+        // Random constraints are often impossible (a must station only reachable through an avoided one, ...), which only times the no-route exit
+        // So pairs whose constraints have a route at this clock and pairs where none of the draws had one are timed apart
+        int[][] customPairs, noRoutePairs;
+        Custom[] custom, noRoute;
+        int nextCustom, nextNoRoute;
+
+        @Setup(Level.Trial)
+        public void setUp(ClockState clock) {
+            Network net = clock.net;
+            pairs = net.allPairs();
+
+            List<int[]> routed = new ArrayList<>(), unrouted = new ArrayList<>();
+            List<Custom> routedCustom = new ArrayList<>(), unroutedCustom = new ArrayList<>();
+
+            Random rng = new Random(Network.SEED);
+
+            for (int p = 0; p < Math.min(CUSTOM_PAIRS, pairs.length); ++p) {
+                Custom c = null;
+                boolean hasRoute = false;
+
+                for (int draw = 0; draw < CUSTOM_DRAWS && !hasRoute; ++draw) {
+                    c = drawCustom(net, rng, pairs[p], p % 2 == 0); // Half time-first, half transfers-first
+                    RouteResult[] routes = net.engine.computeCustomRoute(pairs[p][0], pairs[p][1],
+                            c.mustStations, c.avoidStations, c.mustLines, c.avoidLines, c.minimizeTime, c.minimizeTransfers);
+                    hasRoute = routes != null && routes.length > 0;
+                }
+
+                (hasRoute ? routed : unrouted).add(pairs[p]);
+                (hasRoute ? routedCustom : unroutedCustom).add(c);
+            }
+
+            customPairs = routed.toArray(new int[0][]);
+            custom = routedCustom.toArray(new Custom[0]);
+            noRoutePairs = unrouted.toArray(new int[0][]);
+            noRoute = unroutedCustom.toArray(new Custom[0]);
+        }
+
+        private static Custom drawCustom(Network net, Random rng, int[] pair, boolean minimizeTime) {
+            List<Integer> used = new ArrayList<>(Arrays.asList(pair[0], pair[1]));
+
+            Custom c = new Custom();
+            c.mustStations = net.randomStations(rng, MUST_STATIONS, used);
+            c.avoidStations = net.randomStations(rng, AVOID_STATIONS, used);
+            c.mustLines = new int[] {net.catalog.lineOf[used.get(2)]}; // The first must station's line
+
+            int avoid = rng.nextInt(net.catalog.lines.length);
+            boolean needed = false;
+            for (int i = 0; i < 2 + MUST_STATIONS; ++i) {
+                needed |= net.catalog.lineOf[used.get(i)] == avoid;
+            }
+            c.avoidLines = needed ? new int[0] : new int[] {avoid};
+
+            c.minimizeTime = minimizeTime;
+            c.minimizeTransfers = !minimizeTime;
+            return c;
+        }
+
+        int take() {
+            int p = next;
+            next = (next + 1) % pairs.length;
+            return p;
+        }
+
+        int takeCustom() {
+            int p = nextCustom;
+            nextCustom = (nextCustom + 1) % customPairs.length;
+            return p;
+        }
+
+        int takeNoRoute() {
+            int p = nextNoRoute;
+            nextNoRoute = (nextNoRoute + 1) % noRoutePairs.length;
+            return p;
+        }
+    }
+
+    // A station-by-station path per pair for manual path to evaluate: the least-interchange route on a weekday afternoon, found once per trial
+    @State(Scope.Thread)
+    public static class ManualPaths {
+        static final int DAY_TYPE = 3;
+        static final int NOW_MINS = 14 * 60;
+
+        int[][] paths;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp(ClockState clock) {
+            Network net = clock.net;
+            List<int[]> found = new ArrayList<>();
+
+            net.engine.setClock(DAY_TYPE, NOW_MINS);
+            for (int[] pair : net.allPairs()) {
+                RouteResult[] routes = net.engine.computeLeastInterchangeRoute(pair[0], pair[1]);
+                if (routes != null && routes.length > 0) {
+                    found.add(routes[0].stations);
+                }
+            }
+            net.engine.setClock(clock.dayType, ClockState.nowMins(clock.time)); // Back to the benchmark's own clock
+
+            paths = found.toArray(new int[0][]);
+        }
+
+        int[] take() {
+            int[] path = paths[next];
+            next = (next + 1) % paths.length;
+            return path;
+        }
+    }
+
+    @Benchmark
+    public RouteResult[] routeDefault(ClockState clock, Queries q) {
+        Network net = clock.net;
+        int[] pair = q.pairs[q.take()];
+        return net.engine.computeFastestRoute(pair[0], pair[1]);
+    }
+
+    @Benchmark
+    public RouteResult[] routeLeastInterchange(ClockState clock, Queries q) {
+        Network net = clock.net;
+        int[] pair = q.pairs[q.take()];
+        return net.engine.computeLeastInterchangeRoute(pair[0], pair[1]);
+    }
+
+    // Only constraints with a route at this clock. Returns null without querying if no pair has one (e.g. Sunday after midnight), so check the setup's pair counts before reading a tiny number
+    @Benchmark
+    public RouteResult[] routeCustom(ClockState clock, Queries q) {
+        if (q.customPairs.length == 0) {
+            return null;
+        }
+        int p = q.takeCustom();
+        return custom(clock.net, q.customPairs[p], q.custom[p]);
+    }
+
+    // The rest: how fast an impossible request comes back as "no such path". Same null caveat
+    @Benchmark
+    public RouteResult[] routeCustomNoRoute(ClockState clock, Queries q) {
+        if (q.noRoutePairs.length == 0) {
+            return null;
+        }
+        int p = q.takeNoRoute();
+        return custom(clock.net, q.noRoutePairs[p], q.noRoute[p]);
+    }
+
+    private static RouteResult[] custom(Network net, int[] pair, Custom c) {
+        return net.engine.computeCustomRoute(pair[0], pair[1],
+                c.mustStations, c.avoidStations, c.mustLines, c.avoidLines, c.minimizeTime, c.minimizeTransfers);
+    }
+
+    @Benchmark
+    public RouteResult[] manualPath(ClockState clock, ManualPaths m) {
+        return clock.net.engine.computeManualPath(m.take());
+    }
+}
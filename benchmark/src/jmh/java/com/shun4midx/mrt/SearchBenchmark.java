@@ -0,0 +1,60 @@
+package com.shun4midx.mrt;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// The station search box: one search per keystroke, so every query here is a name being typed out, in all four languages, plus a few typos
+public class SearchBenchmark {
+    static final int RESULTS = 6; // As many as the app shows
+
+    @State(Scope.Thread)
+    public static class Typing {
+        Network net;
+        StationSearch search;
+        String[] keystrokes;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            net = new Network();
+            search = new StationSearch(net.catalog);
+
+            List<String> typed = new ArrayList<>();
+            for (int lang = 0; lang < 4; ++lang) {
+                for (String name : net.catalog.names(lang)) {
+                    for (int len = 1; len <= name.length(); ++len) {
+                        typed.add(name.substring(0, len));
+                    }
+                }
+            }
+            for (String name : net.catalog.names(1)) {
+                if (name.length() > 4) {
+                    typed.add(name.substring(0, 2) + name.charAt(3) + name.charAt(2) + name.substring(4)); // Two letters swapped
+                }
+            }
+            keystrokes = typed.toArray(new String[0]);
+        }
+
+        String take() {
+            String q = keystrokes[next];
+            next = (next + 1) % keystrokes.length;
+            return q;
+        }
+    }
+
+    @Benchmark
+    public int[] keystroke(Typing t) {
+        return t.search.search(t.take(), RESULTS);
+    }
+
+    @Benchmark
+    public StationSearch buildIndex(Typing t) {
+        return new StationSearch(t.net.catalog); // Once per app start, off the UI thread
+    }
+}
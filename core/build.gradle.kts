@@ -0,0 +1,41 @@
+plugins {
+    `java-library`
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+tasks.withType<JavaCompile> {
+    options.encoding = "UTF-8" // Station names and labels
+}
+
+// The same CMake project the app builds with the NDK, built for this machine instead so the engine runs on a plain JVM
+val nativeSrc = rootProject.file("app/src/main/cpp")
+val hostNativeDir = layout.buildDirectory.dir("host-native") // The tests below and :benchmark load libmrt from here
+val dataDir = rootProject.file("app/src/main/assets") // arrival_times/generated, as setDataDir expects
+
+val configureHostNative by tasks.registering(Exec::class) {
+    inputs.file(File(nativeSrc, "CMakeLists.txt"))
+    outputs.file(hostNativeDir.map { it.file("CMakeCache.txt") })
+    commandLine("cmake", "-S", nativeSrc.absolutePath, "-B", hostNativeDir.get().asFile.absolutePath, "-DCMAKE_BUILD_TYPE=Release")
+}
+
+val buildHostNative by tasks.registering(Exec::class) {
+    dependsOn(configureHostNative)
+    inputs.dir(nativeSrc)
+    outputs.dir(hostNativeDir)
+    commandLine("cmake", "--build", hostNativeDir.get().asFile.absolutePath, "--target", "mrt", "--parallel")
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
+
+// ./gradlew :core:test runs src/test against the engine built for this machine and the timetables in app's assets
+tasks.test {
+    dependsOn(buildHostNative)
+    systemProperty("java.library.path", hostNativeDir.get().asFile.absolutePath)
+    systemProperty("mrt.dataDir", dataDir.absolutePath)
+}
@@ -0,0 +1,39 @@
+package com.shun4midx.mrt;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// The native fare table, loaded once. A fare is an index into a lower triangle plus an array read, no JNI involved
+public final class FareTable {
+    private final Map<String, Integer> ids = new HashMap<>(); // station code -> station id
+    private final byte[] classes; // lower triangle by station id: row i, col j <= i at i * (i + 1) / 2 + j
+    private final int[][] prices; // AgeGroup ordinal -> fare class -> price
+
+    // codes: station id -> code, as from getStationCodes()
+    public FareTable(String[] codes, byte[] classes, int[][] prices) {
+        for (int i = 0; i < codes.length; ++i) {
+            ids.put(codes[i], i);
+        }
+        this.classes = classes;
+        this.prices = prices;
+    }
+
+    // -1 for an unknown station
+    public int stationId(String line, int station) {
+        Integer id = ids.get(line + (station < 10 ? "0" : "") + station);
+        return id == null ? -1 : id;
+    }
+
+    public int fare(int id1, int id2, AgeGroup age) {
+        int hi = Math.max(id1, id2);
+        int lo = Math.min(id1, id2);
+        return prices[age.ordinal()][classes[hi * (hi + 1) / 2 + lo]];
+    }
+
+    // -1 if either station is unknown
+    public int fare(String line1, int st1, String line2, int st2, AgeGroup age) {
+        int id1 = stationId(line1, st1);
+        int id2 = stationId(line2, st2);
+        return (id1 < 0 || id2 < 0) ? -1 : fare(id1, id2, age);
+    }
+}
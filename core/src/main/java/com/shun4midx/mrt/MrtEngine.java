@@ -0,0 +1,107 @@
+package com.shun4midx.mrt;
+
+// The native routing and timetable engine (libmrt), with nothing Android in the way. The app, host tests and tools all go through here
+// Language ints are the engine's: 0 zh, 1 en, 2 jp, 3 kr. Queries are for the current Taipei time unless setClock pinned one
+// Every query is safe to call from several threads at once, each running on its own thread's scratch memory. setClock and cancelRouting only reach this engine's queries
+public final class MrtEngine {
+    static {
+        System.loadLibrary("mrt");
+    }
+
+    // Native engine context this engine's queries run against, 0 until setDataDir. Immutable on the native side, so queries from any number of threads can share it
+    private volatile long context;
+
+    // Points the engine at the assets (arrival_times/, ...) and maps the packed timetable if it's there
+    public void setDataDir(String path) {
+        context = openContext(path);
+    }
+
+    private static native long openContext(String path); // Same handle for the same path, never freed
+
+    // Native state of this engine alone: its pinned clock, its cancel generation and its next-train board. Never freed
+    private final long state = newState();
+
+    private static native long newState();
+
+    // Pins "now" for this engine's queries, e.g. dayType 1 (Monday) at 08:30 is setClock(1, 510). nowMins can pass 1440 for after midnight
+    public native void setClock(int dayType, int nowMins);
+
+    public void useRealClock() {
+        setClock(0, 0);
+    }
+
+    // Stations are station ids (getStationCodes order) and lines indices into getLines(), StationCatalog has both
+    public native LineItem[] getLines();
+
+    public native int[] getNextTrainDests(int line); // Station ids, in the row order of getNextTrainMinutes
+    // Fills out[d * perDest + j] with minutes until the jth next train to dest d, -1 if none (BR: first and last train as minutes since midnight). Returns the number of dests
+    public native int getNextTrainMinutes(int station, int perDest, int[] out);
+
+    public native byte[] getFareClassMatrix(); // Lower triangle by station id, see FareTable
+    public native int[] getFareClassPrices(int ageGroup); // fare class -> price
+
+    public FareTable loadFareTable() {
+        int[][] prices = new int[AgeGroup.values().length][];
+        for (AgeGroup age : AgeGroup.values()) {
+            prices[age.ordinal()] = getFareClassPrices(age.ordinal());
+        }
+        return new FareTable(getStationCodes(), getFareClassMatrix(), prices);
+    }
+
+    public native void cancelRouting(); // Stops this engine's running native searches at their next check
+    public native String[] getStationCodes(); // station id -> code, ids as in RouteResult
+    public native String[] getStationNames(int lang); // station id -> name
+    public native int[] getStationGroups(); // station id -> smallest id at the same physical station
+
+    // Which engine answers computeFastestRoute, in routing.h's order. All give the same earliest arrival except CANDIDATE_SEARCH, whose fixed budget may miss it
+    public enum RouteAlgorithm {
+        CANDIDATE_SEARCH,
+        CONNECTION_SCAN,
+        RAPTOR
+    }
+
+    // null if cancelRouting() came in while searching
+    public RouteResult[] computeFastestRoute(int from, int to) {
+        return computeFastestRoute(from, to, RouteAlgorithm.RAPTOR);
+    }
+
+    // The same query on another engine, to compare their answers and timings
+    public RouteResult[] computeFastestRoute(int from, int to, RouteAlgorithm algorithm) {
+        return RouteResult.unpack(packedFastestRoute(from, to, algorithm.ordinal()), 0);
+    }
+
+    public RouteResult[] computeLeastInterchangeRoute(int from, int to) {
+        return RouteResult.unpack(packedLeastInterchangeRoute(from, to), 0);
+    }
+
+    public RouteResult[] computeCustomRoute(int from, int to, int[] mustStations, int[] avoidStations, int[] mustLines, int[] avoidLines, boolean minimizeTime, boolean minimizeTransfers) {
+        return RouteResult.unpack(packedCustomRoute(from, to, mustStations, avoidStations, mustLines, avoidLines, minimizeTime, minimizeTransfers), 0);
+    }
+
+    public RouteResult[] computeManualPath(int[] stations) {
+        return RouteResult.unpack(packedManualPath(stations), 0);
+    }
+
+    // Every journey not beaten on departure, arrival and interchanges, leaving in the next windowMins. null if cancelled
+    public RouteProfile computeRouteProfile(int from, int to, int windowMins) {
+        int[] packed = packedRouteProfile(from, to, windowMins);
+        return packed == null ? null : new RouteProfile(packed[0], packed[1], RouteResult.unpack(packed, 2));
+    }
+
+    // All routes of a query in one int[], see RouteResult.unpack, so they cross JNI in one copy rather than a few arrays and an object each
+    private native int[] packedFastestRoute(int from, int to, int algorithm);
+    private native int[] packedLeastInterchangeRoute(int from, int to);
+    private native int[] packedCustomRoute(int from, int to, int[] mustStations, int[] avoidStations, int[] mustLines, int[] avoidLines, boolean minimizeTime, boolean minimizeTransfers);
+    private native int[] packedManualPath(int[] stations);
+    private native int[] packedRouteProfile(int from, int to, int windowMins); // fromMins, toMins, then the journeys
+
+    // station id -> earliest arrival leaving now (-1 unreachable), plus the departure minute as the last element. One scan for the whole network. null if cancelled
+    public native int[] computeArrivalsFrom(int station);
+    // Same, followed by station id -> fewest interchanges for that arrival, then the departure minute. null if cancelled
+    public native int[] computeReachable(int station);
+
+    // Latency histograms per query, stage timers and search counters, as plain text
+    public native String getTraceReport();
+    public native void resetTrace();
+    public native void traceFormatting(long nanos); // Formatting happens in Java, this files it under the "format" stage
+}
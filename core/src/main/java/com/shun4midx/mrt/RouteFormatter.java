@@ -0,0 +1,173 @@
+package com.shun4midx.mrt;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Turns RouteResults into the text prettify.cpp's pathDetailsToUser used to build natively
+public final class RouteFormatter {
+    static final Map<String, String> LINE_EMOJIS = new HashMap<>();
+
+    static {
+        LINE_EMOJIS.put("R", "🟥");
+        LINE_EMOJIS.put("O", "🟧");
+        LINE_EMOJIS.put("Y", "🟨");
+        LINE_EMOJIS.put("G", "🟩");
+        LINE_EMOJIS.put("BL", "🟦");
+        LINE_EMOJIS.put("BR", "🟫");
+    }
+
+    private final String[] codes; // station id -> code, e.g. "BR11"
+    private final String[] lines; // station id -> line code, e.g. "BR"
+    private final FareTable fares;
+
+    public RouteFormatter(String[] codes, FareTable fares) {
+        this.codes = codes;
+        this.fares = fares;
+        this.lines = new String[codes.length];
+
+        for (int i = 0; i < codes.length; ++i) {
+            lines[i] = lineOf(codes[i]);
+        }
+    }
+
+    // "BR11" -> "BR"
+    static String lineOf(String code) {
+        int digits = 0;
+        while (digits < code.length() && !Character.isDigit(code.charAt(digits))) {
+            ++digits;
+        }
+        return code.substring(0, digits);
+    }
+
+    // names: station id -> name in lang
+    public String format(RouteResult[] results, String lang, String[] names, AgeGroup age) {
+        if (results == null || results.length == 0) {
+            return noPath(lang);
+        }
+
+        StringBuilder sb = new StringBuilder();
+
+        for (RouteResult r : results) {
+            if (sb.length() > 0) {
+                sb.append("\n\n");
+            }
+            appendRoute(sb, r, lang, names, age);
+        }
+
+        return sb.toString();
+    }
+
+    static String noPath(String lang) {
+        switch (lang) {
+            case "en": return "No such path available";
+            case "jp": return "そのような道はありません";
+            case "kr": return "그런 길은 없어요";
+            case "zh":
+            default:   return "沒有這樣的路徑";
+        }
+    }
+
+    void appendRoute(StringBuilder sb, RouteResult r, String lang, String[] names, AgeGroup age) {
+        // Header: duration, fare, ticket, lines taken
+        sb.append(r.totalMins()).append(mins(lang)).append(" $").append(fares.fare(r.stations[0], r.stations[r.stations.length - 1], age)).append(" ").append(ticketLabel(age, lang));
+
+        String currLine = null;
+        for (int id : r.stations) {
+            if (!lines[id].equals(currLine)) {
+                currLine = lines[id];
+                sb.append(LINE_EMOJIS.get(currLine));
+            }
+        }
+        sb.append("\n");
+
+        boolean brownWarning = false;
+
+        for (int i = 0; i < r.stations.length; ++i) {
+            int id = r.stations[i];
+
+            sb.append(names[id]).append(" ").append(LINE_EMOJIS.get(lines[id])).append(" ").append(codes[id])
+                    .append(colon(lang))
+                    .append(stationTime(r.arriveMins[i], r.departMins[i], lang));
+
+            if (lines[id].equals("BR")) {
+                brownWarning = true;
+            }
+
+            if (i + 1 < r.stations.length || brownWarning) {
+                sb.append("\n");
+            }
+        }
+
+        if (brownWarning) {
+            switch (lang) {
+                case "en":
+                    sb.append("⚠️ The train arrival times for the brown line stations are the WORST CASE SCENARIO only and do not reflect current conditions.");
+                    break;
+                case "jp":
+                    sb.append("⚠️ 上記の文湖線（茶色の線）の列車の到着時間は最悪の状況下で計算されており、実際の路線状況を反映するものではありません。");
+                    break;
+                case "kr":
+                    sb.append("⚠️ 위에 표시된 원후선(갈색선) 열차 도착 시간은 최악의 상황을 가정하여 계산된 것이며 실제 운행 상황을 반영하지 않습니다.");
+                    break;
+                default:
+                    sb.append("⚠️ 以上顯示文湖線的列車到達時間，都是以最壞狀況計算，且並非反映現實路線狀況。");
+            }
+        }
+    }
+
+    static String stationTime(int arrive, int depart, String lang) {
+        switch (lang) {
+            case "en": return "Arriving at " + timeStr(arrive) + " / Departing at " + timeStr(depart);
+            case "jp": return timeStr(arrive) + "到着 / " + timeStr(depart) + "出発";
+            case "kr": return timeStr(arrive) + "도착 / " + timeStr(depart) + "출발";
+            default:   return timeStr(arrive) + "抵達 / " + timeStr(depart) + "離開";
+        }
+    }
+
+    static String ticketLabel(AgeGroup age, String lang) {
+        switch (age) {
+            case CHILD:
+                switch (lang) {
+                    case "en": return "Child ";
+                    case "jp": return "子供 ";
+                    case "kr": return "어린이 ";
+                    default:   return "兒童 ";
+                }
+            case ELDERLY:
+                switch (lang) {
+                    case "en": return "Elderly ";
+                    case "jp": return "高齢者 ";
+                    case "kr": return "노인 ";
+                    default:   return "敬老 ";
+                }
+            case ADULT:
+            default:
+                switch (lang) {
+                    case "en": return "Adult ";
+                    case "jp": return "大人 ";
+                    case "kr": return "성인 ";
+                    default:   return "成人 ";
+                }
+        }
+    }
+
+    static String mins(String lang) {
+        switch (lang) {
+            case "en": return " min";
+            case "jp": return "分";
+            case "kr": return "분";
+            default:   return "分鐘";
+        }
+    }
+
+    static String colon(String lang) {
+        return (lang.equals("en") || lang.equals("kr")) ? ": " : "：";
+    }
+
+    // Same as timeToStr: HH:MM, hours past 24 kept as is
+    static String timeStr(int mins) {
+        int hr = mins / 60;
+        int min = mins % 60;
+        return (hr < 10 ? "0" : "") + hr + ":" + (min < 10 ? "0" : "") + min;
+    }
+}
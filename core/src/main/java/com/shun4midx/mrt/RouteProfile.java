@@ -0,0 +1,39 @@
+package com.shun4midx.mrt;
+
+// Every journey worth taking between two stations over a departure window: none leaves earlier, arrives later and interchanges more than another
+// So a row that leaves a few minutes after the one before it and arrives just as early is the "leaving later costs nothing" case
+public final class RouteProfile {
+    public final int fromMins; // minutes since midnight, the window is [fromMins, toMins]
+    public final int toMins;
+    public final RouteResult[] journeys; // by departure, then fewest interchanges
+
+    public RouteProfile(int fromMins, int toMins, RouteResult[] journeys) {
+        this.fromMins = fromMins;
+        this.toMins = toMins;
+        this.journeys = journeys;
+    }
+
+    public static int departMins(RouteResult r) {
+        return r.arriveMins[0]; // When the user sets off from the origin, any wait for the first train comes after it
+    }
+
+    // What to take when leaving at mins: the earliest arrival among what's still to come, fewest interchanges on a tie. null if nothing is left
+    public RouteResult bestLeavingAt(int mins) {
+        RouteResult best = null;
+
+        for (RouteResult r : journeys) {
+            if (departMins(r) < mins) {
+                continue;
+            }
+
+            int arr = r.departMins[r.departMins.length - 1];
+            int bestArr = best == null ? Integer.MAX_VALUE : best.departMins[best.departMins.length - 1];
+
+            if (arr < bestArr || (arr == bestArr && r.interchanges < best.interchanges)) {
+                best = r;
+            }
+        }
+
+        return best;
+    }
+}
@@ -0,0 +1,46 @@
+package com.shun4midx.mrt;
+
+import java.util.Arrays;
+
+// One routed path as it comes out of native code. Formatting and fares happen in RouteFormatter, so a language or age switch can re-render without routing again
+public final class RouteResult {
+    public final int[] stations; // station ids, index into getStationCodes()/getStationNames()
+    public final int[] arriveMins; // minutes since midnight (can pass 24:00), when the user reaches each station
+    public final int[] departMins; // when they leave it
+    public final int interchanges;
+
+    public RouteResult(int[] stations, int[] arriveMins, int[] departMins, int interchanges) {
+        this.stations = stations;
+        this.arriveMins = arriveMins;
+        this.departMins = departMins;
+        this.interchanges = interchanges;
+    }
+
+    // Routes as libmrt packs them from offset: the count, then per route its stop count n, interchanges, n station ids, n arrivals, n departures. null (cancelled) stays null
+    static RouteResult[] unpack(int[] packed, int offset) {
+        if (packed == null) {
+            return null;
+        }
+
+        int at = offset;
+        RouteResult[] routes = new RouteResult[packed[at++]];
+
+        for (int r = 0; r < routes.length; ++r) {
+            int n = packed[at++];
+            int interchanges = packed[at++];
+
+            int[] stations = Arrays.copyOfRange(packed, at, at + n);
+            int[] arrive = Arrays.copyOfRange(packed, at + n, at + 2 * n);
+            int[] depart = Arrays.copyOfRange(packed, at + 2 * n, at + 3 * n);
+            at += 3 * n;
+
+            routes[r] = new RouteResult(stations, arrive, depart, interchanges);
+        }
+
+        return routes;
+    }
+
+    public int totalMins() {
+        return departMins[departMins.length - 1] - arriveMins[0];
+    }
+}
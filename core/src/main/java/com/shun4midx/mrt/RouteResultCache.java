@@ -0,0 +1,102 @@
+package com.shun4midx.mrt;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+// Route results for the current minute. A query only depends on what's asked and the departure minute, so asking again within the minute is free
+public final class RouteResultCache {
+    static final int MAX_ENTRIES = 64;
+
+    private long minute = Long.MIN_VALUE; // Entries all belong to this minute, cleared when it moves on
+    private final LinkedHashMap<String, RouteResult[]> entries = new LinkedHashMap<String, RouteResult[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, RouteResult[]> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final Map<String, CompletableFuture<RouteResult[]>> inFlight = new HashMap<>();
+
+    // Stats
+    private long hits, misses, coalesced;
+    private long computeNanos, maxComputeNanos;
+
+    // false for a query from a minute that's already over, which neither reads nor fills the cache
+    private boolean roll(long now) {
+        if (now > minute) {
+            minute = now;
+            entries.clear();
+        }
+        return now == minute;
+    }
+
+    public synchronized RouteResult[] getIfPresent(long minute, String query) {
+        RouteResult[] results = roll(minute) ? entries.get(query) : null;
+        if (results != null) {
+            ++hits;
+        }
+        return results;
+    }
+
+    // compute may return null when it got cancelled: passed on, but never cached. Identical queries running at once share one compute
+    public RouteResult[] get(long minute, String query, Supplier<RouteResult[]> compute) {
+        String key = minute + " " + query;
+        CompletableFuture<RouteResult[]> future;
+
+        synchronized (this) {
+            RouteResult[] results = roll(minute) ? entries.get(query) : null;
+            if (results != null) {
+                ++hits;
+                return results;
+            }
+
+            future = inFlight.get(key);
+            if (future != null) {
+                ++coalesced;
+            } else {
+                ++misses;
+                inFlight.put(key, new CompletableFuture<>());
+            }
+        }
+
+        if (future != null) {
+            return future.join();
+        }
+
+        long start = System.nanoTime();
+        RouteResult[] results = null;
+
+        try {
+            results = compute.get();
+            return results;
+        } finally {
+            long took = System.nanoTime() - start;
+
+            synchronized (this) {
+                computeNanos += took;
+                maxComputeNanos = Math.max(maxComputeNanos, took);
+
+                if (results != null && this.minute == minute) {
+                    entries.put(query, results);
+                }
+
+                future = inFlight.remove(key);
+            }
+
+            future.complete(results);
+        }
+    }
+
+    public synchronized double hitRate() {
+        long total = hits + misses + coalesced;
+        return total == 0 ? 0 : (double) (hits + coalesced) / total;
+    }
+
+    public synchronized String stats() {
+        return String.format(java.util.Locale.ROOT, "hits %d, misses %d, coalesced %d, hit rate %.2f, avg compute %.1fms, max %.1fms",
+                hits, misses, coalesced, hitRate(),
+                misses == 0 ? 0 : computeNanos / 1e6 / misses, maxComputeNanos / 1e6);
+    }
+}
@@ -0,0 +1,161 @@
+package com.shun4midx.mrt;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Every station, by the engine's dense id (as in RouteResult, FareTable and every query), read from the engine once
+// Names and spinner rows are per language, built the first time that language is asked for and kept
+public final class StationCatalog {
+    public static final String NO_STATION = "––"; // Row 0 of every station list
+
+    public final String[] codes; // station id -> code, e.g. "R10"
+    public final LineItem[] lines; // getLines() order, which is also the line index every query takes
+    public final int[] lineOf; // station id -> line index
+    public final int[] numberOf; // station id -> number on its line
+    public final int[] groupOf; // station id -> smallest id at the same physical station, its own id if not an interchange
+
+    private final int[][] byLine; // line index -> station ids in number order
+    private final int[] rowOf; // station id -> row in its line's station list
+
+    private final MrtEngine engine;
+    private final Map<Integer, String[]> namesByLang = new HashMap<>();
+    private final Map<Integer, String[][]> rowsByLang = new HashMap<>();
+
+    public StationCatalog(MrtEngine engine) {
+        this.engine = engine;
+
+        codes = engine.getStationCodes();
+        lines = engine.getLines();
+        groupOf = engine.getStationGroups();
+
+        int n = codes.length;
+        lineOf = new int[n];
+        numberOf = new int[n];
+        rowOf = new int[n];
+
+        int[] perLine = new int[lines.length];
+        for (int id = 0; id < n; ++id) {
+            int digits = firstDigit(codes[id]);
+            lineOf[id] = lineIndex(codes[id].substring(0, digits));
+            numberOf[id] = Integer.parseInt(codes[id].substring(digits));
+            ++perLine[lineOf[id]];
+        }
+
+        // Ids go by line then number, so each line's stations come out in number order
+        byLine = new int[lines.length][];
+        for (int l = 0; l < lines.length; ++l) {
+            byLine[l] = new int[perLine[l]];
+            perLine[l] = 0;
+        }
+        for (int id = 0; id < n; ++id) {
+            int l = lineOf[id];
+            rowOf[id] = perLine[l] + 1; // Row 0 is NO_STATION
+            byLine[l][perLine[l]++] = id;
+        }
+    }
+
+    private static int firstDigit(String code) {
+        int i = 0;
+        while (i < code.length() && !Character.isDigit(code.charAt(i))) {
+            ++i;
+        }
+        return i;
+    }
+
+    public int size() {
+        return codes.length;
+    }
+
+    // -1 for an unknown line code
+    public int lineIndex(String lineCode) {
+        for (int l = 0; l < lines.length; ++l) {
+            if (lines[l].code.equals(lineCode)) {
+                return l;
+            }
+        }
+        return -1;
+    }
+
+    public int[] stationsOn(int line) {
+        return byLine[line];
+    }
+
+    // -1 if there's no such station
+    public int id(int line, int number) {
+        for (int id : byLine[line]) {
+            if (numberOf[id] == number) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    // "R10" -> its id, -1 if there's no such station
+    public int idOf(String code) {
+        int digits = firstDigit(code);
+        if (digits == 0 || digits == code.length()) {
+            return -1;
+        }
+
+        int line = lineIndex(code.substring(0, digits));
+        if (line < 0) {
+            return -1;
+        }
+
+        try {
+            return id(line, Integer.parseInt(code.substring(digits)));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Row in stationRows(line, ...) to station id, -1 for NO_STATION or out of range
+    public int idAt(int line, int row) {
+        if (line < 0 || line >= lines.length || row < 1 || row > byLine[line].length) {
+            return -1;
+        }
+        return byLine[line][row - 1];
+    }
+
+    // Row of a station in its own line's list
+    public int rowOf(int id) {
+        return rowOf[id];
+    }
+
+    // Same physical station, e.g. R10 and BL12
+    public boolean sameStation(int id1, int id2) {
+        return groupOf[id1] == groupOf[id2];
+    }
+
+    // station id -> name. Language ints as in MrtEngine
+    public synchronized String[] names(int lang) {
+        String[] names = namesByLang.get(lang);
+        if (names == null) {
+            names = engine.getStationNames(lang);
+            namesByLang.put(lang, names);
+        }
+        return names;
+    }
+
+    // NO_STATION, then "R10 – 台北車站" for each station on the line in number order
+    public synchronized String[] stationRows(int line, int lang) {
+        String[][] rows = rowsByLang.get(lang);
+        if (rows == null) {
+            rows = new String[lines.length][];
+            rowsByLang.put(lang, rows);
+        }
+
+        if (rows[line] == null) {
+            String[] names = names(lang);
+            String[] lineRows = new String[byLine[line].length + 1];
+            lineRows[0] = NO_STATION;
+            for (int i = 0; i < byLine[line].length; ++i) {
+                int id = byLine[line][i];
+                lineRows[i + 1] = codes[id] + " – " + names[id];
+            }
+            rows[line] = lineRows;
+        }
+
+        return rows[line];
+    }
+}
@@ -0,0 +1,142 @@
+package com.shun4midx.mrt;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Where each station's badge sits on one map image, bucketed into a uniform grid so a tap only looks at the few cells within reach
+// Everything is in the image's own pixels, so panning or zooming never touches the index. The caller turns the tap into map pixels and its radius with it
+public final class StationGrid {
+    public static final int CELL_SIZE = 64; // Map pixels per cell side, a little over one badge spacing
+
+    private final float[] xs, ys; // station id -> badge center, NaN if the map doesn't show it
+    private final int cols, rows;
+    private final int[] cellStart; // cell -> first slot in cellIds, one extra entry so a cell ends where the next starts
+    private final int[] cellIds; // station ids, grouped by cell
+
+    // xs, ys: station id -> badge center in map pixels, NaN for a station not on the map
+    public StationGrid(float[] xs, float[] ys) {
+        this.xs = xs;
+        this.ys = ys;
+
+        float maxX = 0, maxY = 0;
+        for (int id = 0; id < xs.length; ++id) {
+            if (onMap(id)) {
+                maxX = Math.max(maxX, xs[id]);
+                maxY = Math.max(maxY, ys[id]);
+            }
+        }
+        cols = (int) (maxX / CELL_SIZE) + 1;
+        rows = (int) (maxY / CELL_SIZE) + 1;
+
+        // Count per cell, prefix sum, then fill
+        cellStart = new int[cols * rows + 1];
+        for (int id = 0; id < xs.length; ++id) {
+            if (onMap(id)) {
+                ++cellStart[cellOf(id) + 1];
+            }
+        }
+        for (int c = 0; c < cols * rows; ++c) {
+            cellStart[c + 1] += cellStart[c];
+        }
+
+        cellIds = new int[cellStart[cols * rows]];
+        int[] next = Arrays.copyOf(cellStart, cols * rows);
+        for (int id = 0; id < xs.length; ++id) {
+            if (onMap(id)) {
+                cellIds[next[cellOf(id)]++] = id;
+            }
+        }
+    }
+
+    // CSV of "station,x,y" under a header row, e.g. "R10,404,744". codes: station id -> code, as in StationCatalog.codes. Stations not in codes are skipped
+    // Only the codes, so the map screen can read its table from what it was handed without a catalog of its own
+    public static StationGrid read(Reader in, String[] codes) throws IOException {
+        Map<String, Integer> ids = new HashMap<>();
+        for (int id = 0; id < codes.length; ++id) {
+            ids.put(codes[id], id);
+        }
+
+        float[] xs = new float[codes.length];
+        float[] ys = new float[codes.length];
+        Arrays.fill(xs, Float.NaN);
+        Arrays.fill(ys, Float.NaN);
+
+        BufferedReader reader = new BufferedReader(in);
+        reader.readLine(); // Header
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] cols = line.trim().split(",");
+            if (cols.length < 3) {
+                continue;
+            }
+
+            Integer id = ids.get(cols[0]);
+            if (id == null) {
+                continue;
+            }
+
+            try {
+                xs[id] = Float.parseFloat(cols[1]);
+                ys[id] = Float.parseFloat(cols[2]);
+            } catch (NumberFormatException e) {
+                xs[id] = ys[id] = Float.NaN;
+            }
+        }
+
+        return new StationGrid(xs, ys);
+    }
+
+    private boolean onMap(int id) {
+        return !Float.isNaN(xs[id]) && xs[id] >= 0 && ys[id] >= 0;
+    }
+
+    private int cellOf(int id) {
+        return (int) (ys[id] / CELL_SIZE) * cols + (int) (xs[id] / CELL_SIZE);
+    }
+
+    public boolean contains(int id) {
+        return id >= 0 && id < xs.length && onMap(id);
+    }
+
+    public float x(int id) {
+        return xs[id];
+    }
+
+    public float y(int id) {
+        return ys[id];
+    }
+
+    // Closest station within radius of (x, y), all in map pixels. -1 if there's none
+    public int nearest(float x, float y, float radius) {
+        int col0 = Math.max(0, (int) Math.floor((x - radius) / CELL_SIZE));
+        int col1 = Math.min(cols - 1, (int) Math.floor((x + radius) / CELL_SIZE));
+        int row0 = Math.max(0, (int) Math.floor((y - radius) / CELL_SIZE));
+        int row1 = Math.min(rows - 1, (int) Math.floor((y + radius) / CELL_SIZE));
+
+        int best = -1;
+        float bestDist = radius * radius;
+
+        for (int row = row0; row <= row1; ++row) {
+            for (int col = col0; col <= col1; ++col) {
+                int cell = row * cols + col;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; ++i) {
+                    int id = cellIds[i];
+                    float dx = xs[id] - x;
+                    float dy = ys[id] - y;
+                    float dist = dx * dx + dy * dy;
+                    if (dist <= bestDist) {
+                        best = id;
+                        bestDist = dist;
+                    }
+                }
+            }
+        }
+
+        return best;
+    }
+}
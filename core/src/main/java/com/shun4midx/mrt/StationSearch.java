@@ -0,0 +1,316 @@
+package com.shun4midx.mrt;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Station lookup by code or by name in any of the four languages, built once from the catalog
+// Every name is folded (case, width, accents, spacing, Hangul into jamo so a half-typed syllable still matches) and indexed by its 1- and 2-char grams
+// A query only looks at names sharing enough grams with it, then ranks exact > prefix > word prefix > substring > within a typo or two
+public final class StationSearch {
+    // Lower is better
+    static final int EXACT = 0, PREFIX = 1, WORD_PREFIX = 2, SUBSTRING = 3, FUZZY = 4; // FUZZY + edits
+
+    private final String[] keys; // entry -> folded name or code
+    private final boolean[][] wordStarts; // entry -> folded offset -> a word starts there
+    private final int[] stationOf; // entry -> station id
+    private final Map<Integer, int[]> postings = new HashMap<>(); // gram -> entries containing it, ascending
+
+    // Scratch for one query at a time
+    private final int[] gramCount; // entry -> grams shared with the query
+    private final int[] seenAt; // entry -> query number it was last counted for
+    private final int[] touched;
+    private int queryNo;
+    private final int[] bestScore; // station id -> best score this query
+    private final int[] bestLength;
+    private final int[] scoredAt;
+
+    public StationSearch(StationCatalog catalog) {
+        List<String> keyList = new ArrayList<>();
+        List<boolean[]> startList = new ArrayList<>();
+        List<Integer> stationList = new ArrayList<>();
+
+        String[][] names = new String[4][];
+        for (int lang = 0; lang < names.length; ++lang) {
+            names[lang] = catalog.names(lang);
+        }
+
+        for (int id = 0; id < catalog.size(); ++id) {
+            List<String> seen = new ArrayList<>(); // zh and jp often share a name
+            addEntry(catalog.codes[id], id, seen, keyList, startList, stationList);
+            for (String[] byLang : names) {
+                addEntry(byLang[id], id, seen, keyList, startList, stationList);
+            }
+        }
+
+        int n = keyList.size();
+        keys = keyList.toArray(new String[0]);
+        wordStarts = startList.toArray(new boolean[0][]);
+        stationOf = new int[n];
+        for (int e = 0; e < n; ++e) {
+            stationOf[e] = stationList.get(e);
+        }
+
+        Map<Integer, List<Integer>> lists = new HashMap<>();
+        for (int e = 0; e < n; ++e) {
+            for (int gram : grams(keys[e], true)) {
+                lists.computeIfAbsent(gram, g -> new ArrayList<>()).add(e); // A key's grams are distinct
+            }
+        }
+        for (Map.Entry<Integer, List<Integer>> entry : lists.entrySet()) {
+            List<Integer> list = entry.getValue();
+            int[] ids = new int[list.size()];
+            for (int i = 0; i < ids.length; ++i) {
+                ids[i] = list.get(i);
+            }
+            postings.put(entry.getKey(), ids);
+        }
+
+        gramCount = new int[n];
+        seenAt = new int[n];
+        touched = new int[n];
+        bestScore = new int[catalog.size()];
+        bestLength = new int[catalog.size()];
+        scoredAt = new int[catalog.size()];
+    }
+
+    private static void addEntry(String name, int id, List<String> seen, List<String> keys, List<boolean[]> starts, List<Integer> stations) {
+        if (name == null) {
+            return;
+        }
+
+        StringBuilder folded = new StringBuilder();
+        List<Integer> startOffsets = new ArrayList<>();
+        fold(name, folded, startOffsets);
+
+        String key = folded.toString();
+        if (key.isEmpty() || seen.contains(key)) {
+            return;
+        }
+        seen.add(key);
+
+        boolean[] isStart = new boolean[key.length()];
+        for (int offset : startOffsets) {
+            isStart[offset] = true;
+        }
+
+        keys.add(key);
+        starts.add(isStart);
+        stations.add(id);
+    }
+
+    // ======== FOLDING ======== //
+    // Compatibility-decomposed (full width to ASCII, Hangul syllables and lone jamo to conjoining jamo), lower case, accents and anything but letters and digits dropped
+    static String fold(String s) {
+        StringBuilder out = new StringBuilder();
+        fold(s, out, null);
+        return out.toString();
+    }
+
+    private static void fold(String s, StringBuilder out, List<Integer> wordStarts) {
+        String decomposed = Normalizer.normalize(s, Normalizer.Form.NFKD).toLowerCase(Locale.ROOT);
+
+        boolean boundary = true;
+        for (int i = 0; i < decomposed.length(); ++i) {
+            char c = decomposed.charAt(i);
+
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue; // Tone marks, e.g. "Dàān"
+            }
+            if (!Character.isLetterOrDigit(c)) {
+                boundary = true;
+                continue;
+            }
+
+            if (c == '臺') {
+                c = '台'; // Both are in everyday use for Taipei
+            }
+
+            if (boundary && wordStarts != null) {
+                wordStarts.add(out.length());
+            }
+            out.append(c);
+            boundary = false;
+        }
+    }
+
+    // Distinct 2-char grams, plus the single chars when asked (a one-char query, e.g. "台", has no pairs)
+    private static List<Integer> grams(String key, boolean withSingles) {
+        List<Integer> out = new ArrayList<>();
+        for (int i = 0; i < key.length(); ++i) {
+            if (withSingles || key.length() == 1) {
+                addDistinct(out, key.charAt(i));
+            }
+            if (i + 1 < key.length()) {
+                addDistinct(out, (key.charAt(i) << 16) | key.charAt(i + 1)); // Never collides with a single char, the first is never 0
+            }
+        }
+        return out;
+    }
+
+    private static void addDistinct(List<Integer> out, int gram) {
+        if (!out.contains(gram)) {
+            out.add(gram);
+        }
+    }
+
+    // Typos forgiven for a folded query this long. Hangul jamo count one each, so a Korean name is about twice its syllables
+    static int allowedEdits(int length) {
+        return length >= 8 ? 2 : length >= 4 ? 1 : 0;
+    }
+
+    // ======== QUERY ======== //
+    // Station ids, best match first, at most limit of them. Empty for a blank query
+    public synchronized int[] search(String query, int limit) {
+        String q = fold(query);
+        if (q.isEmpty() || limit <= 0) {
+            return new int[0];
+        }
+
+        int edits = allowedEdits(q.length());
+        ++queryNo;
+
+        // Count shared grams per entry, only for entries that share any
+        List<Integer> qGrams = grams(q, false);
+        int touchedCount = 0;
+        for (int gram : qGrams) {
+            int[] entries = postings.get(gram);
+            if (entries == null) {
+                continue;
+            }
+            for (int e : entries) {
+                if (seenAt[e] != queryNo) {
+                    seenAt[e] = queryNo;
+                    gramCount[e] = 0;
+                    touched[touchedCount++] = e;
+                }
+                ++gramCount[e];
+            }
+        }
+
+        // Each edit breaks at most three of the query's pairs (a swap), so a match within edits keeps at least this many
+        int needed = Math.max(1, qGrams.size() - 3 * edits);
+
+        int[] stations = new int[Math.min(touchedCount, bestScore.length)];
+        int found = 0;
+        for (int t = 0; t < touchedCount; ++t) {
+            int e = touched[t];
+            if (gramCount[e] < needed) {
+                continue;
+            }
+
+            int score = score(e, q, edits);
+            if (score < 0) {
+                continue;
+            }
+
+            int id = stationOf[e];
+            if (scoredAt[id] != queryNo) {
+                scoredAt[id] = queryNo;
+                bestScore[id] = Integer.MAX_VALUE;
+                stations[found++] = id;
+            }
+            if (score < bestScore[id] || (score == bestScore[id] && keys[e].length() < bestLength[id])) {
+                bestScore[id] = score;
+                bestLength[id] = keys[e].length();
+            }
+        }
+
+        // Insertion sort, there are only ever a handful
+        for (int i = 1; i < found; ++i) {
+            int id = stations[i];
+            int j = i - 1;
+            while (j >= 0 && ranksBefore(id, stations[j])) {
+                stations[j + 1] = stations[j];
+                --j;
+            }
+            stations[j + 1] = id;
+        }
+
+        int[] out = new int[Math.min(found, limit)];
+        System.arraycopy(stations, 0, out, 0, out.length);
+        return out;
+    }
+
+    private boolean ranksBefore(int a, int b) {
+        if (bestScore[a] != bestScore[b]) {
+            return bestScore[a] < bestScore[b];
+        }
+        if (bestLength[a] != bestLength[b]) {
+            return bestLength[a] < bestLength[b]; // Closer to all of the name
+        }
+        return a < b;
+    }
+
+    // -1 if it doesn't match at all
+    private int score(int e, String q, int edits) {
+        String key = keys[e];
+
+        if (key.equals(q)) {
+            return EXACT;
+        }
+        if (key.startsWith(q)) {
+            return PREFIX;
+        }
+
+        int at = key.indexOf(q);
+        if (at >= 0) {
+            for (; at >= 0; at = key.indexOf(q, at + 1)) {
+                if (wordStarts[e][at]) {
+                    return WORD_PREFIX;
+                }
+            }
+            return SUBSTRING;
+        }
+
+        if (edits == 0) {
+            return -1;
+        }
+
+        int d = substringDistance(q, key, edits);
+        return d <= edits ? FUZZY + d : -1;
+    }
+
+    // Fewest edits (insert, delete, substitute, swap two neighbours) turning q into some substring of key, anything over max reported as max + 1
+    static int substringDistance(String q, String key, int max) {
+        int m = q.length();
+        int n = key.length();
+
+        // Rows over q, columns over key. Row 0 is all 0, a match may start anywhere in key
+        int[] prev2 = new int[n + 1];
+        int[] prev = new int[n + 1];
+        int[] cur = new int[n + 1];
+
+        for (int i = 1; i <= m; ++i) {
+            cur[0] = i;
+            int rowMin = cur[0];
+            for (int j = 1; j <= n; ++j) {
+                int cost = q.charAt(i - 1) == key.charAt(j - 1) ? 0 : 1;
+                int d = Math.min(Math.min(prev[j] + 1, cur[j - 1] + 1), prev[j - 1] + cost);
+                if (i > 1 && j > 1 && q.charAt(i - 1) == key.charAt(j - 2) && q.charAt(i - 2) == key.charAt(j - 1)) {
+                    d = Math.min(d, prev2[j - 2] + 1);
+                }
+                cur[j] = d;
+                rowMin = Math.min(rowMin, d);
+            }
+
+            if (rowMin > max) {
+                return max + 1; // Only grows from here
+            }
+
+            int[] spare = prev2;
+            prev2 = prev;
+            prev = cur;
+            cur = spare;
+        }
+
+        int best = max + 1;
+        for (int j = 0; j <= n; ++j) {
+            best = Math.min(best, prev[j]);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,256 @@
+package com.shun4midx.mrt;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+// The engine and :core's classes on a plain JVM: routes, next trains, profiles, fares, the route cache, the map's station grid and the station search
+// Against libmrt built for the host and the timetables in app's assets, see build.gradle.kts
+public class CoreUnitTest {
+    static final int MONDAY = 1;
+    static final int PEAK = 8 * 60 + 30;
+
+    static MrtEngine engine;
+    static StationCatalog catalog;
+    static String[] codes;
+
+    @BeforeClass
+    public static void loadEngine() {
+        engine = new MrtEngine();
+        engine.setDataDir(System.getProperty("mrt.dataDir"));
+        engine.setClock(MONDAY, PEAK);
+        catalog = new StationCatalog(engine);
+        codes = catalog.codes;
+    }
+
+    static String codeOf(int id) {
+        return codes[id];
+    }
+
+    static int id(String code) {
+        return Arrays.asList(codes).indexOf(code);
+    }
+
+    // Every time along a route is a real minute, and the user never leaves a station before reaching it or reaches the next before leaving
+    static void assertConsistent(RouteResult r) {
+        assertEquals(r.stations.length, r.arriveMins.length);
+        assertEquals(r.stations.length, r.departMins.length);
+        for (int i = 0; i < r.stations.length; ++i) {
+            assertTrue(r.arriveMins[i] <= r.departMins[i]);
+            if (i > 0) {
+                assertTrue(r.departMins[i - 1] <= r.arriveMins[i]);
+            }
+        }
+        assertTrue(r.interchanges >= 0);
+    }
+
+    @Test
+    public void stationCodes_areUniqueAndIncludeInterchanges() {
+        assertTrue(codes.length > 100);
+        assertEquals(codes.length, Arrays.stream(codes).distinct().count());
+        assertTrue(Arrays.asList(codes).contains("R10"));
+        assertTrue(Arrays.asList(codes).contains("BL12"));
+    }
+
+    @Test
+    public void catalog_rowsAndGroupsMatchTheCodes() {
+        int red = catalog.lineIndex("R");
+        assertEquals("R", catalog.lines[red].code);
+        assertEquals(StationCatalog.NO_STATION, catalog.stationRows(red, 1)[0]);
+        assertEquals(-1, catalog.idAt(red, 0));
+
+        for (int id = 0; id < codes.length; ++id) {
+            int line = catalog.lineOf[id];
+            assertEquals(id, catalog.idAt(line, catalog.rowOf(id)));
+            assertEquals(id, catalog.id(line, catalog.numberOf[id]));
+            assertTrue(catalog.stationRows(line, 1)[catalog.rowOf(id)].startsWith(codes[id] + " – "));
+        }
+
+        assertTrue(catalog.sameStation(id("R10"), id("BL12")));
+        assertFalse(catalog.sameStation(id("R10"), id("R11")));
+        assertSame(catalog.names(0), catalog.names(0)); // Loaded once per language
+    }
+
+    @Test
+    public void nextTrain_atPeakIsSoon() {
+        int[] dests = engine.getNextTrainDests(catalog.lineIndex("R"));
+        int perDest = 3;
+        int[] out = new int[dests.length * perDest];
+        int rows = engine.getNextTrainMinutes(id("R10"), perDest, out);
+
+        assertEquals(dests.length, rows);
+        int soonest = Integer.MAX_VALUE;
+        for (int d = 0; d < rows; ++d) {
+            for (int j = 1; j < perDest && out[d * perDest + j] >= 0; ++j) {
+                assertTrue(out[d * perDest + j - 1] <= out[d * perDest + j]);
+            }
+            if (out[d * perDest] >= 0) {
+                soonest = Math.min(soonest, out[d * perDest]);
+            }
+        }
+        assertTrue(soonest <= 10);
+    }
+
+    @Test
+    public void fastestRoute_runsBetweenTheAskedStations() {
+        RouteResult[] results = engine.computeFastestRoute(id("R10"), id("BL23"));
+        assertNotNull(results);
+        assertTrue(results.length > 0);
+
+        for (RouteResult r : results) {
+            assertConsistent(r);
+            assertTrue(r.arriveMins[0] >= PEAK);
+            assertTrue(codeOf(r.stations[0]).equals("R10") || codeOf(r.stations[0]).equals("BL12")); // Same station, either platform
+            assertEquals("BL23", codeOf(r.stations[r.stations.length - 1]));
+        }
+    }
+
+    @Test
+    public void fastestRoute_sameArrivalOnEveryExactEngine() {
+        for (String[] trip : new String[][] {{"R10", "BL23"}, {"R03", "O01"}, {"G01", "BR24"}}) {
+            int raptor = lastArrival(engine.computeFastestRoute(id(trip[0]), id(trip[1]), MrtEngine.RouteAlgorithm.RAPTOR));
+            int scan = lastArrival(engine.computeFastestRoute(id(trip[0]), id(trip[1]), MrtEngine.RouteAlgorithm.CONNECTION_SCAN));
+            int candidates = lastArrival(engine.computeFastestRoute(id(trip[0]), id(trip[1]), MrtEngine.RouteAlgorithm.CANDIDATE_SEARCH));
+
+            assertEquals(raptor, scan);
+            assertTrue(candidates >= raptor); // Heuristic, never better than exact
+            assertEquals(raptor, lastArrival(engine.computeFastestRoute(id(trip[0]), id(trip[1])))); // The default
+        }
+    }
+
+    static int lastArrival(RouteResult[] results) {
+        assertTrue(results.length > 0);
+        return results[0].arriveMins[results[0].arriveMins.length - 1];
+    }
+
+    @Test
+    public void leastInterchange_neverBeatenOnInterchanges() {
+        RouteResult[] fastest = engine.computeFastestRoute(id("R03"), id("O01"));
+        RouteResult[] fewest = engine.computeLeastInterchangeRoute(id("R03"), id("O01"));
+        assertTrue(fastest.length > 0 && fewest.length > 0);
+
+        for (RouteResult r : fastest) {
+            assertTrue(fewest[0].interchanges <= r.interchanges);
+        }
+    }
+
+    @Test
+    public void profile_isWithinTheWindowAndSorted() {
+        RouteProfile profile = engine.computeRouteProfile(id("R10"), id("G01"), 60);
+        assertNotNull(profile);
+        assertTrue(profile.journeys.length > 0);
+
+        int prev = Integer.MIN_VALUE;
+        for (RouteResult r : profile.journeys) {
+            assertConsistent(r);
+            int dep = RouteProfile.departMins(r);
+            assertTrue(dep >= profile.fromMins && dep <= profile.toMins);
+            assertTrue(dep >= prev);
+            prev = dep;
+        }
+        assertNotNull(profile.bestLeavingAt(profile.fromMins));
+    }
+
+    @Test
+    public void afterMidnight_stillRoutesOrSaysNoPath() {
+        engine.setClock(MONDAY, 24 * 60 + 10);
+        try {
+            RouteResult[] results = engine.computeFastestRoute(id("R10"), id("R03"));
+            assertNotNull(results);
+            for (RouteResult r : results) {
+                assertConsistent(r);
+            }
+        } finally {
+            engine.setClock(MONDAY, PEAK);
+        }
+    }
+
+    @Test
+    public void setClock_staysWithItsEngine() {
+        MrtEngine other = new MrtEngine();
+        other.setDataDir(System.getProperty("mrt.dataDir"));
+        other.setClock(MONDAY, PEAK + 60);
+
+        int[] mine = engine.computeArrivalsFrom(id("R10"));
+        int[] theirs = other.computeArrivalsFrom(id("R10"));
+        assertEquals(PEAK, mine[mine.length - 1]); // Departure minute
+        assertEquals(PEAK + 60, theirs[theirs.length - 1]);
+    }
+
+    @Test
+    public void fares_areSymmetricAndOrderedByAge() {
+        FareTable fares = engine.loadFareTable();
+        for (int i = 0; i < codes.length; i += 7) {
+            for (int j = 0; j < codes.length; j += 5) {
+                int adult = fares.fare(i, j, AgeGroup.ADULT);
+                assertTrue(adult > 0);
+                assertEquals(adult, fares.fare(j, i, AgeGroup.ADULT));
+                assertTrue(fares.fare(i, j, AgeGroup.CHILD) <= adult);
+            }
+        }
+        assertEquals(-1, fares.fare("R", 99, "BL", 12, AgeGroup.ADULT));
+    }
+
+    @Test
+    public void routeCache_computesOncePerMinute() {
+        RouteResultCache cache = new RouteResultCache();
+        AtomicInteger computes = new AtomicInteger();
+        RouteResult[] one = { new RouteResult(new int[] {0, 1}, new int[] {600, 603}, new int[] {601, 603}, 0) };
+
+        assertSame(one, cache.get(600, "q", () -> { computes.incrementAndGet(); return one; }));
+        assertSame(one, cache.get(600, "q", () -> { computes.incrementAndGet(); return one; }));
+        assertEquals(1, computes.get());
+
+        cache.get(601, "q", () -> { computes.incrementAndGet(); return one; }); // New minute, new departure
+        assertEquals(2, computes.get());
+
+        assertNull(cache.get(601, "cancelled", () -> null));
+        assertNull(cache.getIfPresent(601, "cancelled"));
+    }
+
+    @Test
+    public void mapStations_everyBadgePicksItsOwnStation() throws IOException {
+        for (String map : new String[] {"taipei_mrt_map_zh_en", "taipei_mrt_map_jp", "taipei_mrt_map_kr"}) {
+            StationGrid grid;
+            try (Reader in = new FileReader(System.getProperty("mrt.dataDir") + "/map_stations/" + map + ".csv")) {
+                grid = StationGrid.read(in, codes);
+            }
+
+            for (int id = 0; id < codes.length; ++id) {
+                assertTrue(map + " " + codes[id], grid.contains(id));
+                assertEquals(id, grid.nearest(grid.x(id), grid.y(id), 30));
+                assertEquals(id, grid.nearest(grid.x(id) + 3, grid.y(id) - 3, 30)); // A little off center still lands on it
+            }
+
+            assertEquals(-1, grid.nearest(-500, -500, 30));
+        }
+
+        assertEquals(-1, catalog.idOf("R99"));
+        assertEquals(-1, catalog.idOf("XX01"));
+    }
+
+    @Test
+    public void stationSearch_findsCodesNamesAndTypos() {
+        StationSearch search = new StationSearch(catalog);
+
+        assertEquals(id("BL12"), search.search("bl 12", 5)[0]);
+        assertTrue(catalog.sameStation(id("R10"), search.search("台北車站", 5)[0]));
+        assertTrue(catalog.sameStation(id("R10"), search.search("Taipei Main", 5)[0]));
+        assertTrue(catalog.sameStation(id("R10"), search.search("臺北車站", 5)[0]));
+        assertTrue(catalog.sameStation(id("R10"), search.search("台北駅", 5)[0]));
+        assertTrue(catalog.sameStation(id("BR10"), search.search("Zhongxaio Fuxing", 5)[0])); // Two letters swapped
+        assertEquals(id("R02"), search.search("샤", 5)[0]); // 샹산 half typed
+        assertEquals(id("R02"), search.search("ＸＩＡＮＧＳＨＡＮ", 5)[0]);
+
+        assertEquals(0, search.search("", 5).length);
+        assertEquals(0, search.search("qqqqqqq", 5).length);
+        assertTrue(search.search("a", 3).length <= 3);
+    }
+}
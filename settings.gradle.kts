@@ -16,12 +16,11 @@ dependencyResolutionManagement {
     repositories {
         google()
         mavenCentral()
-        maven {
-            url = uri("https://jitpack.io")
-        }
     }
 }
 
 rootProject.name = "Taipei MRT Scheduler"
 include(":app")
+include(":core")
+include(":benchmark")
  
\ No newline at end of file